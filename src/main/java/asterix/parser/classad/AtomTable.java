@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import asterix.parser.classad.CaseInsensitiveString;
+
+/**
+ * The table of interned attribute names. Each distinct spelling of a name is
+ * interned once as an immutable CaseInsensitiveString (an atom) whose hash is
+ * computed when it is created; spellings that differ only in case get the same
+ * id, so atoms compare with a single int comparison. Looking up a name that is
+ * already interned, or finding that no spelling of it is, neither locks nor
+ * allocates. The table only holds on to
+ * atoms weakly: a name is dropped once nothing refers to its atom, and its id
+ * is given to another name once no spelling of it is left, so that the ids stay
+ * about as many as the names in use.
+ */
+public class AtomTable {
+
+    // The ids of the spellings of a name
+    private static final class Name {
+        final String folded;
+        // CaseInsensitiveString.hash() of the spellings
+        final int hash;
+        final int id;
+        // guarded by lock
+        int spellings;
+
+        Name(String folded, int id) {
+            this.folded = folded;
+            this.hash = folded.hashCode();
+            this.id = id;
+        }
+    }
+
+    // A link of the chains of names. The chains are never relinked, only
+    // copied, so that find can walk them without locking.
+    private static final class Fold {
+        final Name name;
+        final Fold next;
+
+        Fold(Name name, Fold next) {
+            this.name = name;
+            this.next = next;
+        }
+    }
+
+    private static final class Entry extends WeakReference<CaseInsensitiveString> {
+        final Name name;
+        // String.hashCode() of the spelling
+        final int hash;
+        // written under lock
+        volatile Entry next;
+
+        Entry(CaseInsensitiveString atom, Name name, int hash, Entry next) {
+            super(atom, collected);
+            this.name = name;
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final Object lock = new Object();
+    // the entries of the atoms that were collected
+    private static final ReferenceQueue<CaseInsensitiveString> collected = new ReferenceQueue<CaseInsensitiveString>();
+    // readers may see a stale bucket, in which case they retry under the lock
+    private static volatile Entry[] table = new Entry[1024];
+    // guarded by lock
+    private static int count = 0;
+    // the names in use, by their hash; written under lock
+    private static volatile Fold[] names = new Fold[1024];
+    // guarded by lock
+    private static int nameCount = 0;
+    // the ids of the names that were dropped, given out again first
+    private static final Deque<Integer> freeIds = new ArrayDeque<Integer>();
+    private static int nextId = 0;
+
+    private AtomTable() {
+    }
+
+    public static CaseInsensitiveString intern(String name) {
+        int hash = name.hashCode();
+        CaseInsensitiveString atom = get(table, name, hash);
+        return atom != null ? atom : add(name, hash);
+    }
+
+    public static CaseInsensitiveString intern(char[] chars, int length) {
+        return intern(chars, 0, length);
+    }
+
+    public static CaseInsensitiveString intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        Entry[] t = table;
+        for (Entry e = t[hash & (t.length - 1)]; e != null; e = e.next) {
+            if (e.hash == hash) {
+                CaseInsensitiveString atom = e.get();
+                if (atom != null && matches(atom.get(), chars, offset, length)) {
+                    return atom;
+                }
+            }
+        }
+        return add(String.valueOf(chars, offset, length), hash);
+    }
+
+    public static CaseInsensitiveString intern(AMutableCharArrayString name) {
+        return intern(name.getValue(), name.getLength());
+    }
+
+    /**
+     * Returns the atom of name without interning it, unless a name that
+     * differs from it only in case is already interned. Returns null if no
+     * ClassAd can hold an attribute of that name under an atom key.
+     */
+    public static CaseInsensitiveString find(String name) {
+        int hash = name.hashCode();
+        CaseInsensitiveString atom = get(table, name, hash);
+        if (atom != null) {
+            return atom;
+        }
+        // a name no ad has neither locks nor allocates
+        int foldedHash = CaseInsensitiveString.hash(name);
+        if (getName(names, name, foldedHash) == null) {
+            return null;
+        }
+        synchronized (lock) {
+            // unless its last spelling was just collected
+            expunge();
+            return getName(names, name, foldedHash) != null ? add(name, hash) : null;
+        }
+    }
+
+    // The number of distinct names, ignoring case, that are in use. Ids are
+    // less than the largest number there has been.
+    public static int size() {
+        synchronized (lock) {
+            expunge();
+            return nameCount;
+        }
+    }
+
+    private static CaseInsensitiveString get(Entry[] t, String name, int hash) {
+        for (Entry e = t[hash & (t.length - 1)]; e != null; e = e.next) {
+            if (e.hash == hash) {
+                CaseInsensitiveString atom = e.get();
+                if (atom != null && atom.get().equals(name)) {
+                    return atom;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Name getName(Fold[] f, String name, int hash) {
+        for (Fold link = f[hash & (f.length - 1)]; link != null; link = link.next) {
+            Name n = link.name;
+            if (n.hash == hash && n.folded.length() == name.length()) {
+                int i = 0;
+                while (i < name.length() && n.folded.charAt(i) == CaseInsensitiveString.fold(name.charAt(i))) {
+                    i++;
+                }
+                if (i == name.length()) {
+                    return n;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, char[] chars, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CaseInsensitiveString add(String name, int hash) {
+        synchronized (lock) {
+            expunge();
+            Entry[] t = table;
+            CaseInsensitiveString atom = get(t, name, hash);
+            if (atom != null) {
+                return atom;
+            }
+            int foldedHash = CaseInsensitiveString.hash(name);
+            Name n = getName(names, name, foldedHash);
+            if (n == null) {
+                n = new Name(fold(name), freeIds.isEmpty() ? nextId++ : freeIds.pop());
+                addName(n);
+            }
+            n.spellings++;
+            atom = new CaseInsensitiveString(name, n.id, foldedHash);
+            if (++count > t.length * 3 / 4) {
+                t = grow(t);
+            }
+            int bucket = hash & (t.length - 1);
+            t[bucket] = new Entry(atom, n, hash, t[bucket]);
+            table = t;
+            return atom;
+        }
+    }
+
+    // Relinks the entries into a table twice as large. A reader that follows
+    // a relinked entry may miss an atom, and then looks again under the lock.
+    private static Entry[] grow(Entry[] t) {
+        Entry[] bigger = new Entry[t.length * 2];
+        for (Entry head : t) {
+            Entry next;
+            for (Entry e = head; e != null; e = next) {
+                next = e.next;
+                int bucket = e.hash & (bigger.length - 1);
+                e.next = bigger[bucket];
+                bigger[bucket] = e;
+            }
+        }
+        return bigger;
+    }
+
+    // Called under lock
+    private static void addName(Name n) {
+        Fold[] f = names;
+        if (++nameCount > f.length * 3 / 4) {
+            Fold[] bigger = new Fold[f.length * 2];
+            for (Fold head : f) {
+                for (Fold link = head; link != null; link = link.next) {
+                    int bucket = link.name.hash & (bigger.length - 1);
+                    bigger[bucket] = new Fold(link.name, bigger[bucket]);
+                }
+            }
+            f = bigger;
+        }
+        int bucket = n.hash & (f.length - 1);
+        f[bucket] = new Fold(n, f[bucket]);
+        names = f;
+    }
+
+    // Copies the links before the one of n. Called under lock.
+    private static void removeName(Name n) {
+        Fold[] f = names;
+        int bucket = n.hash & (f.length - 1);
+        f[bucket] = unlink(f[bucket], n);
+        nameCount--;
+        names = f;
+    }
+
+    private static Fold unlink(Fold link, Name n) {
+        return link.name == n ? link.next : new Fold(link.name, unlink(link.next, n));
+    }
+
+    // Unlinks the entries of the atoms that were collected, and frees the ids
+    // of the names that have no spelling left. Called under lock.
+    private static void expunge() {
+        for (Object ref = collected.poll(); ref != null; ref = collected.poll()) {
+            Entry dead = (Entry) ref;
+            Entry[] t = table;
+            int bucket = dead.hash & (t.length - 1);
+            if (t[bucket] == dead) {
+                t[bucket] = dead.next;
+            } else {
+                for (Entry e = t[bucket]; e != null; e = e.next) {
+                    if (e.next == dead) {
+                        e.next = dead.next;
+                        break;
+                    }
+                }
+            }
+            count--;
+            Name n = dead.name;
+            if (--n.spellings == 0) {
+                removeName(n);
+                freeIds.push(n.id);
+            }
+        }
+    }
+
+    // Two names are equal ignoring case exactly when their folded forms are equal
+    private static String fold(String name) {
+        char[] folded = new char[name.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = CaseInsensitiveString.fold(name.charAt(i));
+        }
+        return new String(folded);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdShape;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+
+/**
+ * An inline cache of ClassAd.lookupInScope for one attribute reference. It
+ * remembers the shapes of the ads the last successful lookup went through, up
+ * the parent scopes, and the slot of the name in the last of them. A lookup
+ * that starts in an ad of the same shape, whose parents have the same shapes,
+ * takes the value from the slot without searching. Any change of the names of
+ * one of the ads changes its shape and so misses the cache.
+ */
+final class AttributeLookupCache {
+    // lookups that go further up than this are not cached
+    private static final int MAX_DEPTH = 4;
+
+    private static final class Entry {
+        final CaseInsensitiveString name;
+        // the shapes from the ad the lookup starts in to the ad that has the name
+        final ClassAdShape[] shapes;
+        final int slot;
+
+        Entry(CaseInsensitiveString name, ClassAdShape[] shapes, int slot) {
+            this.name = name;
+            this.shapes = shapes;
+            this.slot = slot;
+        }
+    }
+
+    // replaced as a whole, so that a reader sees a consistent entry
+    private Entry entry;
+
+    /**
+     * Looks name up from start like lookupInScope, if the cache knows where it
+     * is. Returns false on a miss, in which case neither tree nor state are
+     * changed.
+     */
+    boolean lookup(ClassAd start, CaseInsensitiveString name, ExprTreeHolder tree, EvalState state) {
+        Entry e = entry;
+        if (e == null || e.name != name) {
+            return false;
+        }
+        ClassAd ad = start;
+        int depth = e.shapes.length - 1;
+        for (int i = 0; i < depth; i++) {
+            // as lookupInScope, which stops at the root and at chained parents
+            if (ad.getShape() != e.shapes[i] || ad.getChainedParentAd() != null || ad == state.getRootAd()) {
+                return false;
+            }
+            ad = ad.parentScope;
+            if (ad == null || ad == start) {
+                return false;
+            }
+        }
+        if (ad.getShape() != e.shapes[depth]) {
+            return false;
+        }
+        ExprTree value = ad.lookupSlot(e.slot);
+        if (value == null) {
+            return false;
+        }
+        state.setCurAd(ad);
+        tree.setInnerTree(value);
+        return true;
+    }
+
+    /**
+     * Remembers where a lookup of name from start found it, given the state
+     * that lookupInScope left, whose current ad is the ad that has it.
+     */
+    void update(ClassAd start, CaseInsensitiveString name, EvalState state) {
+        ClassAd found = state.getCurAd();
+        ClassAdShape[] shapes = new ClassAdShape[MAX_DEPTH + 1];
+        boolean special = ClassAd.getSpecialAttrNames().contains(name.get());
+        ClassAd ad = start;
+        int depth = 0;
+        while (ad != found) {
+            if (special || depth == MAX_DEPTH || ad.getChainedParentAd() != null || ad == state.getRootAd()
+                    || ad.getShape() == null) {
+                return;
+            }
+            shapes[depth++] = ad.getShape();
+            ad = ad.parentScope;
+            if (ad == null || ad == start) {
+                return;
+            }
+        }
+        ClassAdShape shape = found.getShape();
+        // a value found in a chained parent has no slot in the ad
+        int slot = shape == null ? -1 : shape.slotOf(name);
+        if (slot < 0) {
+            return;
+        }
+        shapes[depth] = shape;
+        ClassAdShape[] path = new ClassAdShape[depth + 1];
+        System.arraycopy(shapes, 0, path, 0, depth + 1);
+        entry = new Entry(name, path, slot);
+    }
+}
@@ -20,8 +20,12 @@ package asterix.parser.classad;
 
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import asterix.parser.classad.AMutableCharArrayString;
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.AttributeLookupCache;
 import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.CaseInsensitiveString;
 import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.EvalCache;
 import asterix.parser.classad.EvalState;
 import asterix.parser.classad.ExprList;
 import asterix.parser.classad.ExprTree;
@@ -36,12 +40,16 @@ public class AttributeReference extends ExprTree {
     private ExprTree expr;
     private boolean absolute;
     private AMutableCharArrayString attributeStr;
+    // attributeStr interned, found on first lookup
+    private CaseInsensitiveString attributeName;
+    // where the last lookups found the name, created on first lookup
+    private AttributeLookupCache lookupCache;
     private ClassAd current = new ClassAd(false, false);
     private ExprList adList = new ExprList();
     private Value val = new Value();
     private MutableBoolean rVal = new MutableBoolean(false);
     private AttributeReference tempAttrRef;
-    private EvalState tstate = new EvalState();
+    private EvalState tstate;
 
     public ExprTree getExpr() {
         return expr;
@@ -51,6 +59,14 @@ public class AttributeReference extends ExprTree {
         this.expr = expr == null ? null : expr.self();
     }
 
+    public String getAttributeName() {
+        return attributeStr.toString();
+    }
+
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
     public AttributeReference() {
         expr = null;
         attributeStr = null;
@@ -106,6 +122,7 @@ public class AttributeReference extends ExprTree {
         } else {
             attributeStr.setValue(ref.attributeStr);
         }
+        attributeName = ref.attributeName;
         if (ref.expr != null) {
             expr = ref.expr.copy();
         }
@@ -185,6 +202,8 @@ public class AttributeReference extends ExprTree {
                 return (EvalResult.EVAL_ERROR);
             }
 
+            // adList is kept from the last evaluation of this reference
+            adList.clear();
             if (!val.isClassAdValue(current) && !val.isListValue(adList)) {
                 return (EvalResult.EVAL_ERROR);
             }
@@ -209,7 +228,11 @@ public class AttributeReference extends ExprTree {
                     // Create new EvalState, within this scope, because
                     // attrRef is only temporary, so we do not want to
                     // cache the evaluated result in the outer state object.
-                    tstate.reset();
+                    if (tstate == null) {
+                        tstate = new EvalState();
+                    } else {
+                        tstate.reset();
+                    }
                     tstate.setScopes(state.getCurAd());
                     rVal.setValue(wantSig ? tempAttrRef.publicEvaluate(tstate, val, sig) : tempAttrRef.publicEvaluate(
                             tstate, val));
@@ -247,21 +270,39 @@ public class AttributeReference extends ExprTree {
         if (current == null) {
             return EvalResult.EVAL_UNDEF;
         }
-        int rc = current.lookupInScope(attributeStr.toString(), tree, state);
+        if (attributeName == null) {
+            attributeName = AtomTable.intern(attributeStr);
+        }
+        if (lookupCache == null) {
+            lookupCache = new AttributeLookupCache();
+        }
+        if (lookupCache.lookup(current, attributeName, tree, state)) {
+            return EvalResult.EVAL_OK;
+        }
+        int rc = current.lookupInScope(attributeName, tree, state);
+        if (rc == EvalResult.EVAL_OK.ordinal()) {
+            lookupCache.update(current, attributeName, state);
+        }
         if (expr == null && !absolute && rc == EvalResult.EVAL_UNDEF.ordinal() && current.getAlternateScope() != null) {
-            rc = current.getAlternateScope().lookupInScope(attributeStr.toString(), tree, state);
+            rc = current.getAlternateScope().lookupInScope(attributeName, tree, state);
         }
         return EvalResult.values()[rc];
     }
 
     @Override
     public boolean publicEvaluate(EvalState state, Value val) throws HyracksDataException {
-        ExprTreeHolder tree = new ExprTreeHolder();
-        ExprTreeHolder dummy = new ExprTreeHolder();
-        ClassAd curAd = new ClassAd(state.getCurAd());
+        state.pushFrame();
+        boolean rval = evaluate(state, val, state.newHolder());
+        state.popFrame();
+        return rval;
+    }
+
+    private boolean evaluate(EvalState state, Value val, ExprTreeHolder tree) throws HyracksDataException {
+        // the lookup moves the current ad to the ad it finds the attribute in
+        ClassAd curAd = state.getCurAd();
         boolean rval;
         // find the expression and the evalstate
-        switch (findExpr(state, tree, dummy, false)) {
+        switch (findExpr(state, tree, null, false)) {
             case EVAL_FAIL:
                 return false;
             case EVAL_ERROR:
@@ -278,10 +319,16 @@ public class AttributeReference extends ExprTree {
                     state.setCurAd(curAd);
                     return false;
                 }
+                EvalCache cache = state.getCache();
                 state.decrementDepth();
-                rval = tree.publicEvaluate(state, val);
+                // a list built from a list of ads is not the value of an attribute
+                if (cache != null && tree.getKind() != NodeKind.EXPR_LIST_NODE) {
+                    rval = cache.evaluate(attributeName, tree, state, val);
+                } else {
+                    rval = tree.publicEvaluate(state, val);
+                }
                 state.incrementDepth();
-                state.getCurAd().setValue(curAd);
+                state.setCurAd(curAd);
                 return rval;
             }
             default:
@@ -292,7 +339,7 @@ public class AttributeReference extends ExprTree {
     public boolean privateEvaluate(EvalState state, Value val, ExprTreeHolder sig) throws HyracksDataException {
         ExprTreeHolder tree = new ExprTreeHolder();
         ExprTreeHolder exprSig = new ExprTreeHolder();
-        ClassAd curAd = new ClassAd(state.getCurAd());
+        ClassAd curAd = state.getCurAd();
         MutableBoolean rval = new MutableBoolean(true);
         switch (findExpr(state, tree, exprSig, true)) {
             case EVAL_FAIL:
@@ -307,7 +354,7 @@ public class AttributeReference extends ExprTree {
             case EVAL_OK: {
                 if (state.getDepthRemaining() <= 0) {
                     val.setErrorValue();
-                    state.getCurAd().setValue(curAd);
+                    state.setCurAd(curAd);
                     return false;
                 }
                 state.decrementDepth();
@@ -319,7 +366,7 @@ public class AttributeReference extends ExprTree {
                 throw new HyracksDataException("ClassAd:  Should not reach here");
         }
         sig.setInnerTree((new AttributeReference(exprSig, attributeStr, absolute)));
-        state.getCurAd().setValue(curAd);
+        state.setCurAd(curAd);
         return rval.booleanValue();
     }
 
@@ -331,6 +378,10 @@ public class AttributeReference extends ExprTree {
         ClassAd curAd;
         boolean rval;
         ntree.setInnerTree(null); // Just to be safe...  wenger 2003-12-11.
+        if (state.isFoldingConstants()) {
+            ntree.setInnerTree(copy());
+            return true;
+        }
         // find the expression and the evalstate
         curAd = state.getCurAd();
         switch (findExpr(state, tree, dummy, false)) {
@@ -338,7 +389,7 @@ public class AttributeReference extends ExprTree {
                 return false;
             case EVAL_ERROR:
                 val.setErrorValue();
-                state.getCurAd().setValue(curAd);
+                state.setCurAd(curAd);
                 return true;
             case EVAL_UNDEF:
                 if (expr != null && state.isFlattenAndInline()) {
@@ -346,7 +397,7 @@ public class AttributeReference extends ExprTree {
                     Value expr_val = new Value();
                     if (state.getDepthRemaining() <= 0) {
                         val.setErrorValue();
-                        state.getCurAd().setValue(curAd);
+                        state.setCurAd(curAd);
                         return false;
                     }
                     state.decrementDepth();
@@ -355,13 +406,13 @@ public class AttributeReference extends ExprTree {
                     if (rval && expr_ntree.getInnerTree() != null) {
                         ntree.setInnerTree(createAttributeReference(expr_ntree, attributeStr));
                         if (ntree.getInnerTree() != null) {
-                            state.getCurAd().setValue(curAd);
+                            state.setCurAd(curAd);
                             return true;
                         }
                     }
                 }
                 ntree.setInnerTree(copy());
-                state.getCurAd().setValue(curAd);
+                state.setCurAd(curAd);
                 return true;
             case EVAL_OK: {
                 // Don't flatten or inline a classad that's referred to
@@ -374,7 +425,7 @@ public class AttributeReference extends ExprTree {
 
                 if (state.getDepthRemaining() <= 0) {
                     val.setErrorValue();
-                    state.getCurAd().setValue(curAd);
+                    state.setCurAd(curAd);
                     return false;
                 }
                 state.decrementDepth();
@@ -392,7 +443,7 @@ public class AttributeReference extends ExprTree {
                     val.setUndefinedValue();
                 }
 
-                state.getCurAd().setValue(curAd);
+                state.setCurAd(curAd);
                 return rval;
             }
             default:
@@ -423,6 +474,7 @@ public class AttributeReference extends ExprTree {
     public void setValue(ExprTree tree, AMutableCharArrayString attrStr, boolean absolut) {
         this.absolute = absolut;
         this.attributeStr = attrStr;
+        this.attributeName = null;
         this.expr = tree == null ? null : tree.self();
     }
 
@@ -433,46 +485,17 @@ public class AttributeReference extends ExprTree {
 
     @Override
     public boolean privateEvaluate(EvalState state, Value val) throws HyracksDataException {
-        ExprTreeHolder tree = new ExprTreeHolder();
-        ExprTreeHolder dummy = new ExprTreeHolder();
-        ClassAd curAd;
-        boolean rval;
-
-        // find the expression and the evalstate
-        curAd = state.getCurAd();
-        switch (findExpr(state, tree, dummy, false)) {
-            case EVAL_FAIL:
-                return false;
-            case EVAL_ERROR:
-                val.setErrorValue();
-                state.getCurAd().setValue(curAd);
-                return true;
-            case EVAL_UNDEF:
-                val.setUndefinedValue();
-                state.getCurAd().setValue(curAd);
-                return true;
-
-            case EVAL_OK: {
-                if (state.getDepthRemaining() <= 0) {
-                    val.setErrorValue();
-                    state.getCurAd().setValue(curAd);
-                    return false;
-                }
-                state.decrementDepth();
-                rval = tree.publicEvaluate(state, val);
-                state.incrementDepth();
-                state.getCurAd().setValue(curAd);
-                return rval;
-            }
-            default:
-                throw new HyracksDataException("ClassAd:  Should not reach here");
-        }
+        state.pushFrame();
+        boolean rval = evaluate(state, val, state.newHolder());
+        state.popFrame();
+        return rval;
     }
 
     @Override
     public void reset() {
-        if (expr != null) {
-            expr.reset();
-        }
+        // expr comes from the parser pools and may already be in use elsewhere
+        expr = null;
+        absolute = false;
+        attributeName = null;
     }
 }
@@ -0,0 +1,558 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.Arrays;
+
+import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdBatch;
+import asterix.parser.classad.ClassAdColumn;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Operation;
+import asterix.parser.classad.Value;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Evaluates an expression over all the ads of a ClassAdBatch, one node of the
+ * expression at a time, giving a column with the value of the expression in
+ * each ad. Literals become constant columns and attribute references the
+ * columns of the batch. Operations on columns of integers, reals and booleans
+ * run as loops over the arrays of the columns; on other rows they fall back
+ * to Operation, so that undefined and error values, promotions and
+ * conversions are those of Operation. Nodes that aren't operations on
+ * columns, like function calls, are evaluated in each ad.
+ *
+ * An evaluator keeps scratch values and is not thread-safe.
+ */
+public class BatchEvaluator {
+    private final Value val1 = new Value();
+    private final Value val2 = new Value();
+    private final Value val3 = new Value();
+    private final Value result = new Value();
+    private final AMutableInt32 opKind = new AMutableInt32(0);
+
+    public ClassAdColumn evaluate(ExprTree expr, ClassAdBatch batch) throws HyracksDataException {
+        ExprTree tree = expr.self();
+        switch (tree.getKind()) {
+            case LITERAL_NODE:
+                return evaluateLiteral((Literal) tree, batch.size());
+            case ATTRREF_NODE: {
+                AttributeReference ref = (AttributeReference) tree;
+                if (ref.getExpr() == null && !ref.isAbsolute() && !isSpecial(ref.getAttributeName())) {
+                    return batch.getColumn(ref.getAttributeName());
+                }
+                return evaluateEach(tree, batch);
+            }
+            case OP_NODE:
+                return evaluateOperation((Operation) tree, batch);
+            default:
+                return evaluateEach(tree, batch);
+        }
+    }
+
+    // The names that refer to ads rather than attributes
+    private static boolean isSpecial(String name) {
+        for (String special : ClassAd.getSpecialAttrNames()) {
+            if (special.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ClassAdColumn evaluateLiteral(Literal lit, int size) throws HyracksDataException {
+        ClassAdColumn column = new ClassAdColumn(size);
+        lit.GetValue(result);
+        switch (result.getValueType()) {
+            case BOOLEAN_VALUE:
+                Arrays.fill(column.longs(), result.getBoolVal() ? 1 : 0);
+                column.setAll(ClassAdColumn.BOOLEAN);
+                break;
+            case INTEGER_VALUE:
+                Arrays.fill(column.longs(), result.getLongVal());
+                column.setAll(ClassAdColumn.INTEGER);
+                break;
+            case REAL_VALUE:
+                Arrays.fill(column.doubles(), result.getDoubleVal());
+                column.setAll(ClassAdColumn.REAL);
+                break;
+            default:
+                for (int i = 0; i < size; i++) {
+                    column.setValue(i, result);
+                }
+        }
+        return column;
+    }
+
+    // Evaluates tree in each ad of the batch
+    private ClassAdColumn evaluateEach(ExprTree tree, ClassAdBatch batch) throws HyracksDataException {
+        ClassAdColumn column = new ClassAdColumn(batch.size());
+        ExprTreeHolder holder = new ExprTreeHolder(tree);
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getAd(i).evaluateExpr(holder, result)) {
+                column.setValue(i, result);
+            } else {
+                column.setError(i);
+            }
+        }
+        return column;
+    }
+
+    private ClassAdColumn evaluateOperation(Operation op, ClassAdBatch batch) throws HyracksDataException {
+        ExprTreeHolder child1 = new ExprTreeHolder();
+        ExprTreeHolder child2 = new ExprTreeHolder();
+        ExprTreeHolder child3 = new ExprTreeHolder();
+        op.getComponents(opKind, child1, child2, child3);
+        int kind = opKind.getIntegerValue();
+        if (kind == Operation.OpKind_PARENTHESES_OP) {
+            return evaluate(child1.getInnerTree(), batch);
+        }
+        if (kind == Operation.OpKind_SUBSCRIPT_OP || child1.getInnerTree() == null) {
+            // subscripts evaluate list items in the scope of the ad
+            return evaluateEach(op, batch);
+        }
+        ClassAdColumn c1 = evaluate(child1.getInnerTree(), batch);
+        ClassAdColumn c2 = child2.getInnerTree() == null ? null : evaluate(child2.getInnerTree(), batch);
+        ClassAdColumn c3 = child3.getInnerTree() == null ? null : evaluate(child3.getInnerTree(), batch);
+        ClassAdColumn out = new ClassAdColumn(batch.size());
+        if (!operateUniform(kind, c1, c2, c3, out)) {
+            boolean strict = Operation.isStrictOperator(kind);
+            for (int i = 0; i < out.size(); i++) {
+                if (!(strict && propagateExceptional(c1, c2, c3, out, i)) && !operateRow(kind, c1, c2, c3, out, i)) {
+                    operate(kind, c1, c2, c3, out, i);
+                }
+            }
+        }
+        return out;
+    }
+
+    // Operates on whole columns whose rows all have the same type. Returns
+    // false if the operation and the types have no such loop.
+    private static boolean operateUniform(int kind, ClassAdColumn c1, ClassAdColumn c2, ClassAdColumn c3,
+            ClassAdColumn out) throws HyracksDataException {
+        int n = out.size();
+        byte t1 = c1.getUniformType();
+        byte t2 = c2 == null ? ClassAdColumn.MIXED : c2.getUniformType();
+        if (kind == Operation.OpKind_TERNARY_OP) {
+            if (t1 != ClassAdColumn.BOOLEAN) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                out.copyRow(i, c1.longs[i] != 0 ? c2 : c3, i);
+            }
+            return true;
+        }
+        if (c2 == null) {
+            if (kind == Operation.OpKind_UNARY_MINUS_OP && t1 == ClassAdColumn.INTEGER) {
+                long[] a = c1.longs;
+                long[] r = out.longs();
+                for (int i = 0; i < n; i++) {
+                    r[i] = -a[i];
+                }
+                out.setAll(ClassAdColumn.INTEGER);
+                return true;
+            } else if (kind == Operation.OpKind_UNARY_MINUS_OP && t1 == ClassAdColumn.REAL) {
+                double[] a = c1.doubles;
+                double[] r = out.doubles();
+                for (int i = 0; i < n; i++) {
+                    r[i] = -a[i];
+                }
+                out.setAll(ClassAdColumn.REAL);
+                return true;
+            } else if (kind == Operation.OpKind_LOGICAL_NOT_OP && t1 == ClassAdColumn.BOOLEAN) {
+                long[] a = c1.longs;
+                long[] r = out.longs();
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] ^ 1;
+                }
+                out.setAll(ClassAdColumn.BOOLEAN);
+                return true;
+            }
+            return false;
+        }
+        if (t1 == ClassAdColumn.MIXED || t2 == ClassAdColumn.MIXED) {
+            return false;
+        }
+        if (kind == Operation.OpKind_LOGICAL_AND_OP || kind == Operation.OpKind_LOGICAL_OR_OP) {
+            if (t1 != ClassAdColumn.BOOLEAN || t2 != ClassAdColumn.BOOLEAN) {
+                return false;
+            }
+            long[] a = c1.longs;
+            long[] b = c2.longs;
+            long[] r = out.longs();
+            if (kind == Operation.OpKind_LOGICAL_AND_OP) {
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] & b[i];
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] | b[i];
+                }
+            }
+            out.setAll(ClassAdColumn.BOOLEAN);
+            return true;
+        }
+        if (kind == Operation.OpKind_META_EQUAL_OP || kind == Operation.OpKind_META_NOT_EQUAL_OP) {
+            // no promotions: values of different types are not the same
+            if (t1 != t2 || !isNumeric(t1)) {
+                return false;
+            }
+            kind = kind == Operation.OpKind_META_EQUAL_OP ? Operation.OpKind_EQUAL_OP : Operation.OpKind_NOT_EQUAL_OP;
+        }
+        boolean comparison = kind >= Operation.OpKind_LESS_THAN_OP && kind <= Operation.OpKind_GREATER_THAN_OP;
+        boolean arithmetic = kind == Operation.OpKind_ADDITION_OP || kind == Operation.OpKind_SUBTRACTION_OP
+                || kind == Operation.OpKind_MULTIPLICATION_OP;
+        if (!isNumeric(t1) || !isNumeric(t2) || !(comparison || arithmetic
+                || (kind == Operation.OpKind_DIVISION_OP && (t1 == ClassAdColumn.REAL || t2 == ClassAdColumn.REAL)))) {
+            return false;
+        }
+        if (t1 != ClassAdColumn.REAL && t2 != ClassAdColumn.REAL) {
+            // booleans are promoted to integers
+            long[] a = c1.longs;
+            long[] b = c2.longs;
+            long[] r = out.longs();
+            if (comparison) {
+                compare(kind, a, b, r, n);
+                out.setAll(ClassAdColumn.BOOLEAN);
+            } else {
+                arithmetic(kind, a, b, r, n);
+                out.setAll(ClassAdColumn.INTEGER);
+            }
+        } else {
+            double[] a = toDoubles(c1, t1);
+            double[] b = toDoubles(c2, t2);
+            if (comparison) {
+                compare(kind, a, b, out.longs(), n);
+                out.setAll(ClassAdColumn.BOOLEAN);
+            } else {
+                arithmetic(kind, a, b, out.doubles(), n);
+                out.setAll(ClassAdColumn.REAL);
+            }
+        }
+        return true;
+    }
+
+    // Sets row i to error or undefined if an operand is, the way strict
+    // operators do. Returns false if no operand is.
+    private static boolean propagateExceptional(ClassAdColumn c1, ClassAdColumn c2, ClassAdColumn c3,
+            ClassAdColumn out, int i) {
+        if (c1.isError(i) || (c2 != null && c2.isError(i)) || (c3 != null && c3.isError(i))) {
+            out.setError(i);
+            return true;
+        }
+        if (c1.isUndefined(i) || (c2 != null && c2.isUndefined(i)) || (c3 != null && c3.isUndefined(i))) {
+            out.setUndefined(i);
+            return true;
+        }
+        return false;
+    }
+
+    // Operates on row i of operands of the types that have loops. Returns false
+    // for other types.
+    private static boolean operateRow(int kind, ClassAdColumn c1, ClassAdColumn c2, ClassAdColumn c3,
+            ClassAdColumn out, int i) throws HyracksDataException {
+        byte t1 = c1.types[i];
+        if (kind == Operation.OpKind_TERNARY_OP) {
+            if (t1 != ClassAdColumn.BOOLEAN) {
+                return false;
+            }
+            out.copyRow(i, c1.longs[i] != 0 ? c2 : c3, i);
+            return true;
+        }
+        if (c2 == null) {
+            if (kind == Operation.OpKind_UNARY_MINUS_OP && t1 == ClassAdColumn.INTEGER) {
+                out.setLong(i, -c1.longs[i]);
+            } else if (kind == Operation.OpKind_UNARY_MINUS_OP && t1 == ClassAdColumn.REAL) {
+                out.setDouble(i, -c1.doubles[i]);
+            } else if (kind == Operation.OpKind_LOGICAL_NOT_OP && t1 == ClassAdColumn.BOOLEAN) {
+                out.setBoolean(i, c1.longs[i] == 0);
+            } else {
+                return false;
+            }
+            return true;
+        }
+        byte t2 = c2.types[i];
+        if (kind == Operation.OpKind_LOGICAL_AND_OP || kind == Operation.OpKind_LOGICAL_OR_OP) {
+            boolean or = kind == Operation.OpKind_LOGICAL_OR_OP;
+            if (t1 == ClassAdColumn.BOOLEAN && (c1.longs[i] != 0) == or) {
+                // the second operand is not looked at, whatever its type
+                out.setBoolean(i, or);
+                return true;
+            }
+            if (t1 != ClassAdColumn.BOOLEAN || t2 != ClassAdColumn.BOOLEAN) {
+                return false;
+            }
+            boolean a = c1.longs[i] != 0;
+            boolean b = c2.longs[i] != 0;
+            out.setBoolean(i, kind == Operation.OpKind_LOGICAL_AND_OP ? a && b : a || b);
+            return true;
+        }
+        if (!isNumeric(t1) || !isNumeric(t2)) {
+            return false;
+        }
+        if (kind == Operation.OpKind_META_EQUAL_OP || kind == Operation.OpKind_META_NOT_EQUAL_OP) {
+            if (t1 != t2) {
+                out.setBoolean(i, kind == Operation.OpKind_META_NOT_EQUAL_OP);
+                return true;
+            }
+            kind = kind == Operation.OpKind_META_EQUAL_OP ? Operation.OpKind_EQUAL_OP : Operation.OpKind_NOT_EQUAL_OP;
+        }
+        boolean comparison = kind >= Operation.OpKind_LESS_THAN_OP && kind <= Operation.OpKind_GREATER_THAN_OP;
+        boolean arithmetic = kind >= Operation.OpKind_ADDITION_OP && kind <= Operation.OpKind_MODULUS_OP;
+        if (!comparison && !arithmetic) {
+            return false;
+        }
+        if (t1 != ClassAdColumn.REAL && t2 != ClassAdColumn.REAL) {
+            long a = c1.longs[i];
+            long b = c2.longs[i];
+            if (comparison) {
+                out.setBoolean(i, compare(kind, Long.compare(a, b)));
+            } else if ((kind == Operation.OpKind_DIVISION_OP || kind == Operation.OpKind_MODULUS_OP) && b == 0) {
+                out.setError(i);
+            } else {
+                out.setLong(i, arithmetic(kind, a, b));
+            }
+        } else {
+            double a = t1 == ClassAdColumn.REAL ? c1.doubles[i] : c1.longs[i];
+            double b = t2 == ClassAdColumn.REAL ? c2.doubles[i] : c2.longs[i];
+            if (comparison) {
+                out.setBoolean(i, compare(kind, a, b));
+            } else if (kind == Operation.OpKind_MODULUS_OP) {
+                out.setError(i);
+            } else {
+                out.setDouble(i, arithmetic(kind, a, b));
+            }
+        }
+        return true;
+    }
+
+    // Operates on row i with Operation
+    private void operate(int kind, ClassAdColumn c1, ClassAdColumn c2, ClassAdColumn c3, ClassAdColumn out, int i)
+            throws HyracksDataException {
+        c1.getValue(i, val1);
+        if (c2 != null) {
+            c2.getValue(i, val2);
+        } else {
+            val2.setUndefinedValue();
+        }
+        if (c3 != null) {
+            c3.getValue(i, val3);
+        } else {
+            val3.setUndefinedValue();
+        }
+        Operation.privateDoOperation(kind, val1, val2, val3, true, c2 != null, c3 != null, result);
+        out.setValue(i, result);
+    }
+
+    private static boolean isNumeric(byte type) {
+        return type == ClassAdColumn.INTEGER || type == ClassAdColumn.REAL || type == ClassAdColumn.BOOLEAN;
+    }
+
+    private static double[] toDoubles(ClassAdColumn column, byte type) {
+        if (type == ClassAdColumn.REAL) {
+            return column.doubles;
+        }
+        long[] longs = column.longs;
+        double[] doubles = new double[longs.length];
+        for (int i = 0; i < longs.length; i++) {
+            doubles[i] = longs[i];
+        }
+        return doubles;
+    }
+
+    private static void compare(int kind, long[] a, long[] b, long[] r, int n) {
+        switch (kind) {
+            case Operation.OpKind_LESS_THAN_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] < b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_LESS_OR_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] <= b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_NOT_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] != b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] == b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_GREATER_OR_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] >= b[i] ? 1 : 0;
+                }
+                return;
+            default:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] > b[i] ? 1 : 0;
+                }
+        }
+    }
+
+    private static void compare(int kind, double[] a, double[] b, long[] r, int n) {
+        switch (kind) {
+            case Operation.OpKind_LESS_THAN_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] < b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_LESS_OR_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] <= b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_NOT_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] != b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] == b[i] ? 1 : 0;
+                }
+                return;
+            case Operation.OpKind_GREATER_OR_EQUAL_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] >= b[i] ? 1 : 0;
+                }
+                return;
+            default:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] > b[i] ? 1 : 0;
+                }
+        }
+    }
+
+    // + - * only: division and modulus of integers check for 0
+    private static void arithmetic(int kind, long[] a, long[] b, long[] r, int n) {
+        switch (kind) {
+            case Operation.OpKind_ADDITION_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] + b[i];
+                }
+                return;
+            case Operation.OpKind_SUBTRACTION_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] - b[i];
+                }
+                return;
+            default:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] * b[i];
+                }
+        }
+    }
+
+    // + - * /: the modulus of reals is an error
+    private static void arithmetic(int kind, double[] a, double[] b, double[] r, int n) {
+        switch (kind) {
+            case Operation.OpKind_ADDITION_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] + b[i];
+                }
+                return;
+            case Operation.OpKind_SUBTRACTION_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] - b[i];
+                }
+                return;
+            case Operation.OpKind_MULTIPLICATION_OP:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] * b[i];
+                }
+                return;
+            default:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] / b[i];
+                }
+        }
+    }
+
+    private static boolean compare(int kind, int comparison) {
+        switch (kind) {
+            case Operation.OpKind_LESS_THAN_OP:
+                return comparison < 0;
+            case Operation.OpKind_LESS_OR_EQUAL_OP:
+                return comparison <= 0;
+            case Operation.OpKind_NOT_EQUAL_OP:
+                return comparison != 0;
+            case Operation.OpKind_EQUAL_OP:
+                return comparison == 0;
+            case Operation.OpKind_GREATER_OR_EQUAL_OP:
+                return comparison >= 0;
+            default:
+                return comparison > 0;
+        }
+    }
+
+    // Not compare(kind, Double.compare(a, b)), which orders NaN and -0.0
+    private static boolean compare(int kind, double a, double b) {
+        switch (kind) {
+            case Operation.OpKind_LESS_THAN_OP:
+                return a < b;
+            case Operation.OpKind_LESS_OR_EQUAL_OP:
+                return a <= b;
+            case Operation.OpKind_NOT_EQUAL_OP:
+                return a != b;
+            case Operation.OpKind_EQUAL_OP:
+                return a == b;
+            case Operation.OpKind_GREATER_OR_EQUAL_OP:
+                return a >= b;
+            default:
+                return a > b;
+        }
+    }
+
+    private static long arithmetic(int kind, long a, long b) {
+        switch (kind) {
+            case Operation.OpKind_ADDITION_OP:
+                return a + b;
+            case Operation.OpKind_SUBTRACTION_OP:
+                return a - b;
+            case Operation.OpKind_MULTIPLICATION_OP:
+                return a * b;
+            case Operation.OpKind_DIVISION_OP:
+                return a / b;
+            default:
+                return a % b;
+        }
+    }
+
+    private static double arithmetic(int kind, double a, double b) {
+        switch (kind) {
+            case Operation.OpKind_ADDITION_OP:
+                return a + b;
+            case Operation.OpKind_SUBTRACTION_OP:
+                return a - b;
+            case Operation.OpKind_MULTIPLICATION_OP:
+                return a * b;
+            default:
+                return a / b;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.nio.ByteBuffer;
+
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdBinaryFormat;
+import asterix.parser.classad.ClassAdBinaryReader;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.Value;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * A ClassAd in the binary format of ClassAdBinaryFormat, read in place. Only
+ * the attributes that are looked up, or that the evaluated attributes
+ * reference, are decoded; each of them is decoded once.
+ */
+public class BinaryClassAd {
+
+    // The decoded part of the ad. Its attributes are decoded on lookup, so
+    // that evaluation finds them through the usual scoping rules.
+    private final class DecodedAd extends ClassAd {
+        @Override
+        public ExprTree lookup(CaseInsensitiveString name) {
+            ExprTree tree = super.lookup(name);
+            if (tree == null) {
+                try {
+                    tree = decode(name.get());
+                    if (tree != null) {
+                        insert(name, tree, false);
+                    }
+                } catch (HyracksDataException e) {
+                    // as for a lazy attribute that doesn't parse
+                    tree = null;
+                }
+            }
+            return tree;
+        }
+    }
+
+    private final ClassAdBinaryReader reader;
+    private final int count;
+    // the position of the first entry of the root ad and of its values
+    private final int entries;
+    private final int values;
+    private final DecodedAd decoded = new DecodedAd();
+
+    public BinaryClassAd(ByteBuffer buffer) throws HyracksDataException {
+        reader = new ClassAdBinaryReader(buffer);
+        int root = reader.getRoot();
+        if (reader.readByte(root) != ClassAdBinaryFormat.CLASSAD) {
+            throw new HyracksDataException("The root of a binary ClassAd is not a ClassAd");
+        }
+        count = reader.readVarInt(root + 1);
+        entries = reader.position();
+        values = entries + count * ClassAdBinaryFormat.ENTRY_SIZE;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the expression of the attribute name, decoded from the buffer,
+     * or null if the ad has no such attribute. The expression has no parent
+     * scope.
+     */
+    public ExprTree lookup(String name) throws HyracksDataException {
+        return decode(name);
+    }
+
+    /**
+     * Evaluates the attribute name like ClassAd.evaluateAttr, decoding only
+     * the attributes the evaluation needs.
+     */
+    public boolean evaluateAttr(String name, Value val) throws HyracksDataException {
+        return decoded.evaluateAttr(name, val);
+    }
+
+    // Decodes the whole ad
+    public ClassAd toClassAd() throws HyracksDataException {
+        return reader.readClassAd();
+    }
+
+    private ExprTree decode(String name) throws HyracksDataException {
+        int hash = ClassAdBinaryFormat.hash(name);
+        for (int i = 0, entry = entries; i < count; i++, entry += ClassAdBinaryFormat.ENTRY_SIZE) {
+            if (reader.readInt(entry) == hash && reader.getName(reader.readInt(entry + 4)).equalsIgnoreCase(name)) {
+                return reader.readExpr(values + reader.readInt(entry + 8));
+            }
+        }
+        return null;
+    }
+}
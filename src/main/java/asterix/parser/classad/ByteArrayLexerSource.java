@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import asterix.parser.classad.Lexer;
+import asterix.parser.classad.LexerSource;
+
+/**
+ * A LexerSource over UTF-8 encoded bytes. ASCII bytes are handed to the lexer
+ * as they are; multi-byte sequences are decoded only when the lexer reaches
+ * them (in practice, inside string literals). Positions are byte offsets into
+ * the source, so the text of a range is obtained with {@link #getString(int, int)}
+ * rather than through {@link #getBuffer()}.
+ */
+public class ByteArrayLexerSource extends LexerSource {
+
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    // either array or byteBuffer is set
+    private byte[] array;
+    private ByteBuffer byteBuffer;
+    private int start;
+    private int offset;
+    private int end;
+    // number of bytes consumed by the last readCharacter()
+    private int lastLength;
+    // low surrogate of a supplementary character whose high surrogate was returned
+    private char pendingLowSurrogate;
+
+    public ByteArrayLexerSource() {
+        array = null;
+        byteBuffer = null;
+    }
+
+    public ByteArrayLexerSource(byte[] input) {
+        setNewSource(input, 0, input.length);
+    }
+
+    public ByteArrayLexerSource(byte[] input, int offset, int length) {
+        setNewSource(input, offset, length);
+    }
+
+    public void setNewSource(byte[] input, int offset, int length) {
+        this.array = input;
+        this.byteBuffer = null;
+        this.start = offset;
+        this.offset = offset;
+        this.end = offset + length;
+        this.lastLength = 0;
+        this.pendingLowSurrogate = 0;
+    }
+
+    // Lexes the remaining bytes of the buffer. The buffer position is not modified.
+    public void setNewSource(ByteBuffer input) {
+        if (input.hasArray()) {
+            setNewSource(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        } else {
+            this.array = null;
+            this.byteBuffer = input;
+            this.start = input.position();
+            this.offset = start;
+            this.end = input.limit();
+            this.lastLength = 0;
+            this.pendingLowSurrogate = 0;
+        }
+    }
+
+    @Override
+    public int getPosition() {
+        return offset;
+    }
+
+    private int byteAt(int i) {
+        return (array != null ? array[i] : byteBuffer.get(i)) & 0xFF;
+    }
+
+    private boolean isContinuation(int i) {
+        return i < end && (byteAt(i) & 0xC0) == 0x80;
+    }
+
+    @Override
+    public char readCharacter() {
+        if (pendingLowSurrogate != 0) {
+            previousCharacter = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+            // the four bytes were consumed when the high surrogate was read
+            lastLength = 0;
+            return previousCharacter;
+        }
+        if (offset >= end) {
+            lastLength = 0;
+            previousCharacter = Lexer.EOF;
+            return previousCharacter;
+        }
+        int b = byteAt(offset);
+        if (b < 0x80) {
+            lastLength = 1;
+            offset++;
+            previousCharacter = (char) b;
+            return previousCharacter;
+        }
+        previousCharacter = decode(b);
+        offset += lastLength;
+        return previousCharacter;
+    }
+
+    // Decodes the multi-byte sequence starting at offset and sets lastLength.
+    // Malformed input decodes to U+FFFD one byte at a time.
+    private char decode(int b) {
+        int cp;
+        if (b >= 0xC2 && b <= 0xDF && isContinuation(offset + 1)) {
+            lastLength = 2;
+            return (char) (((b & 0x1F) << 6) | (byteAt(offset + 1) & 0x3F));
+        } else if (b >= 0xE0 && b <= 0xEF && isContinuation(offset + 1) && isContinuation(offset + 2)) {
+            cp = ((b & 0x0F) << 12) | ((byteAt(offset + 1) & 0x3F) << 6) | (byteAt(offset + 2) & 0x3F);
+            if (cp >= 0x800 && !Character.isSurrogate((char) cp)) {
+                lastLength = 3;
+                return (char) cp;
+            }
+        } else if (b >= 0xF0 && b <= 0xF4 && isContinuation(offset + 1) && isContinuation(offset + 2)
+                && isContinuation(offset + 3)) {
+            cp = ((b & 0x07) << 18) | ((byteAt(offset + 1) & 0x3F) << 12) | ((byteAt(offset + 2) & 0x3F) << 6)
+                    | (byteAt(offset + 3) & 0x3F);
+            if (cp >= 0x10000 && cp <= Character.MAX_CODE_POINT) {
+                lastLength = 4;
+                pendingLowSurrogate = Character.lowSurrogate(cp);
+                return Character.highSurrogate(cp);
+            }
+        }
+        lastLength = 1;
+        return REPLACEMENT_CHARACTER;
+    }
+
+    // Only a single character is ever put back by the lexer
+    @Override
+    public void unreadCharacter() {
+        if (previousCharacter == Lexer.EOF) {
+            return;
+        }
+        if (pendingLowSurrogate != 0) {
+            // unreading a high surrogate: give back the whole sequence
+            pendingLowSurrogate = 0;
+            offset -= lastLength;
+        } else if (Character.isLowSurrogate(previousCharacter)) {
+            // unreading a low surrogate: it is returned again by the next read
+            pendingLowSurrogate = previousCharacter;
+        } else if (offset > start) {
+            offset -= lastLength;
+        }
+        lastLength = 0;
+    }
+
+    @Override
+    public boolean atEnd() {
+        return offset >= end && pendingLowSurrogate == 0;
+    }
+
+    public int getCurrentLocation() {
+        return offset;
+    }
+
+    @Override
+    public char[] getBuffer() {
+        return null;
+    }
+
+    @Override
+    public String getString(int position, int length) {
+        if (array != null) {
+            return new String(array, position, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = byteBuffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
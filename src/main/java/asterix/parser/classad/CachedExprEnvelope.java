@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprCache;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Value;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * The value of an attribute that is shared through the ExprCache. The
+ * envelope carries the parent scope of the ad it is in; the shared tree is
+ * never changed and is only evaluated in the scope of the envelope.
+ */
+public class CachedExprEnvelope extends ExprTree {
+    private final ExprCache cache;
+    private final ExprCache.Entry entry;
+    // set by the cache; tells it the envelope was collected unreleased
+    ExprCache.EnvelopeRef ref;
+    private boolean released = false;
+
+    CachedExprEnvelope(ExprCache cache, ExprCache.Entry entry) {
+        this.cache = cache;
+        this.entry = entry;
+    }
+
+    // Gives up this envelope's reference to the cached value
+    public void release() {
+        if (!released) {
+            released = true;
+            cache.release(ref);
+        }
+    }
+
+    @Override
+    public void reset() {
+        release();
+    }
+
+    @Override
+    public ExprTree self() {
+        return entry.tree;
+    }
+
+    @Override
+    public ExprTree copy() throws HyracksDataException {
+        return cache.copy(entry);
+    }
+
+    @Override
+    public NodeKind getKind() {
+        return entry.tree.getKind();
+    }
+
+    @Override
+    public boolean sameAs(ExprTree other) {
+        return entry.tree.sameAs(other);
+    }
+
+    @Override
+    public boolean privateEvaluate(EvalState state, Value val) throws HyracksDataException {
+        return entry.tree.privateEvaluate(state, val);
+    }
+
+    @Override
+    public boolean privateEvaluate(EvalState state, Value val, ExprTreeHolder sig) throws HyracksDataException {
+        return entry.tree.privateEvaluate(state, val, sig);
+    }
+
+    @Override
+    public boolean privateFlatten(EvalState state, Value val, ExprTreeHolder flat, AMutableInt32 op)
+            throws HyracksDataException {
+        return entry.tree.privateFlatten(state, val, flat, op);
+    }
+
+    // The shared tree has no parent scope of its own
+    @Override
+    protected void privateSetParentScope(ClassAd scope) {
+    }
+}
@@ -20,8 +20,17 @@ package asterix.parser.classad;
 
 import asterix.parser.classad.CaseInsensitiveString;
 
+/**
+ * An attribute name that compares and hashes ignoring case. Instances made by
+ * AtomTable are atoms: they cannot be changed, and two atoms are equal exactly
+ * when their ids are equal.
+ */
 public class CaseInsensitiveString implements Comparable<CaseInsensitiveString> {
     private String aString;
+    private int hash;
+    private boolean hashed;
+    // the AtomTable id, or -1 if this is not an atom
+    private final int id;
 
     public String get() {
         return aString;
@@ -33,15 +42,36 @@ public class CaseInsensitiveString implements Comparable<CaseInsensitiveString>
     }
 
     public void set(String aString) {
+        if (id >= 0) {
+            throw new UnsupportedOperationException("atoms can't be changed");
+        }
         this.aString = aString;
+        this.hashed = false;
     }
 
     public CaseInsensitiveString(String aString) {
         this.aString = aString;
+        this.id = -1;
     }
-    
+
     public CaseInsensitiveString() {
         this.aString = null;
+        this.id = -1;
+    }
+
+    CaseInsensitiveString(String aString, int id, int hash) {
+        this.aString = aString;
+        this.id = id;
+        this.hash = hash;
+        this.hashed = true;
+    }
+
+    public boolean isAtom() {
+        return id >= 0;
+    }
+
+    public int getId() {
+        return id;
     }
 
     public int compareTo(CaseInsensitiveString o) {
@@ -50,13 +80,39 @@ public class CaseInsensitiveString implements Comparable<CaseInsensitiveString>
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof CaseInsensitiveString) ? aString.equalsIgnoreCase(((CaseInsensitiveString) o).aString)
-                : false;
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CaseInsensitiveString)) {
+            return false;
+        }
+        CaseInsensitiveString other = (CaseInsensitiveString) o;
+        if (id >= 0 && other.id >= 0) {
+            return id == other.id;
+        }
+        return aString.equalsIgnoreCase(other.aString);
     }
 
     @Override
     public int hashCode() {
-        return aString.toLowerCase().hashCode();
+        if (!hashed) {
+            hash = hash(aString);
+            hashed = true;
+        }
+        return hash;
+    }
+
+    // Characters that String.equalsIgnoreCase considers equal fold to the same character
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static int hash(String aString) {
+        int h = 0;
+        for (int i = 0; i < aString.length(); i++) {
+            h = 31 * h + fold(aString.charAt(i));
+        }
+        return h;
     }
 
 }
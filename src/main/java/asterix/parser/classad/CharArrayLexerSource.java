@@ -27,6 +27,8 @@ public class CharArrayLexerSource extends LexerSource {
 
     private char[] input;
     private int offset;
+    // the end of the input in the array
+    private int limit;
 
     public int getPosition() {
         return offset;
@@ -44,11 +46,19 @@ public class CharArrayLexerSource extends LexerSource {
     private void SetNewSource(char[] input, int offset2) {
         this.input = input;
         this.offset = offset2;
+        this.limit = input == null ? 0 : input.length;
+    }
+
+    // Lexes input[offset, limit) only
+    public void setNewSource(char[] input, int offset, int limit) {
+        this.input = input;
+        this.offset = offset;
+        this.limit = limit;
     }
 
     @Override
     public char readCharacter() throws IOException {
-        if (offset == input.length) {
+        if (offset == limit) {
             previousCharacter = Lexer.EOF;
             return previousCharacter;
         } else {
@@ -67,7 +77,7 @@ public class CharArrayLexerSource extends LexerSource {
     }
 
     public boolean atEnd() {
-        return offset == input.length;
+        return offset == limit;
     }
 
     public int GetCurrentLocation() {
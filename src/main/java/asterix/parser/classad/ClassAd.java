@@ -25,15 +25,22 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import asterix.parser.classad.AMutableCharArrayString;
+import asterix.parser.classad.AtomTable;
 import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.CachedExprEnvelope;
 import asterix.parser.classad.CaseInsensitiveString;
 import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdAttrMap;
 import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ClassAdShape;
 import asterix.parser.classad.ClassAdUnParser;
 import asterix.parser.classad.Common;
+import asterix.parser.classad.EvalCache;
 import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprCache;
 import asterix.parser.classad.ExprList;
 import asterix.parser.classad.ExprTree;
 import asterix.parser.classad.ExprTreeHolder;
@@ -48,7 +55,6 @@ import org.apache.asterix.om.base.AMutableInt32;
 import org.apache.asterix.om.base.AMutableInt64;
 import org.apache.asterix.om.base.AMutableString;
 import asterix.parser.classad.Value.NumberFactor;
-import asterix.parser.classad.object.pool.CaseInsensitiveStringPool;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 
 public class ClassAd extends ExprTree {
@@ -112,7 +118,6 @@ public class ClassAd extends ExprTree {
     private static final int CLASSAD_VERSION_PATCH = 0;
     private static final String CLASSAD_VERSION = "8.0.0";
     public static final ArrayList<String> specialAttrNames = new ArrayList<String>();
-    private static final CaseInsensitiveStringPool StringPool = new CaseInsensitiveStringPool();
     static {
         specialAttrNames.add(ATTR_TOPLEVEL);
         specialAttrNames.add(ATTR_ROOT);
@@ -121,12 +126,26 @@ public class ClassAd extends ExprTree {
     }
     public static final FunctionCall curr_time_expr = FunctionCall.createFunctionCall("time", new ExprList());
 
+    // the cache insert(name, tree) shares values through, if any
+    private ExprCache exprCache;
+    // set once a value shared through a cache is inserted, until clear()
+    private boolean sharesValues;
+
     private ClassAd alternateScope;
     //private boolean doDirtyTracking;
-    private Map<CaseInsensitiveString, ExprTree> attrList = new HashMap<CaseInsensitiveString, ExprTree>();
+    private Map<CaseInsensitiveString, ExprTree> attrList = new ClassAdAttrMap();
     private ClassAd chainedParentAd;
+    // the parser of insert(String) and parseValue, and the ad insert(String)
+    // parses quoted names into, created when first needed
     private ClassAdParser parser = null;
     private ClassAd newAd = null;
+    // the state of the evaluations started by this ad, claimed by the thread
+    // that evaluates with it, which also uses it for the evaluations nested
+    // in its own; another thread that evaluates the ad meanwhile uses a new one
+    private EvalState evalState;
+    private volatile Thread evaluator;
+    private static final AtomicReferenceFieldUpdater<ClassAd, Thread> EVALUATOR = AtomicReferenceFieldUpdater
+            .newUpdater(ClassAd.class, Thread.class, "evaluator");
 
     /*
      *  Constructors
@@ -134,8 +153,6 @@ public class ClassAd extends ExprTree {
     public ClassAd() {
         chainedParentAd = null;
         alternateScope = null;
-        newAd = new ClassAd(false, false);
-        parser = new ClassAdParser();
     }
 
     public ClassAd(boolean initializeParser, boolean initializeNewAd) {
@@ -173,7 +190,13 @@ public class ClassAd extends ExprTree {
         this.alternateScope = alternateScope;
     }
 
+    // Attributes that were parsed lazily are parsed before the list is handed out
     public Map<CaseInsensitiveString, ExprTree> getAttrList() {
+        for (Entry<CaseInsensitiveString, ExprTree> attr : attrList.entrySet()) {
+            if (attr.getValue() instanceof LazyExprTree) {
+                attr.setValue(((LazyExprTree) attr.getValue()).materialize());
+            }
+        }
         return attrList;
     }
 
@@ -235,6 +258,7 @@ public class ClassAd extends ExprTree {
             //this.doDirtyTracking = false;
             for (Entry<CaseInsensitiveString, ExprTree> attr : ad.attrList.entrySet()) {
                 ExprTree tree = attr.getValue().copy();
+                sharesValues |= tree instanceof CachedExprEnvelope;
                 attrList.put(attr.getKey(), tree);
                 // if (ad.doDirtyTracking && ad.IsAttributeDirty(attr.getKey())) {
                 //   dirtyAttrList.add(attr.getKey());
@@ -248,7 +272,8 @@ public class ClassAd extends ExprTree {
     public boolean update(ClassAd ad) throws HyracksDataException {
         for (Entry<CaseInsensitiveString, ExprTree> attr : ad.attrList.entrySet()) {
             ExprTree tree = attr.getValue().copy();
-            attrList.put(attr.getKey(), tree);
+            sharesValues |= tree instanceof CachedExprEnvelope;
+            release(attrList.put(attr.getKey(), tree));
             // if (ad.doDirtyTracking && ad.IsAttributeDirty(attr.getKey())) {
             //   dirtyAttrList.add(attr.getKey());
             //}
@@ -310,6 +335,12 @@ public class ClassAd extends ExprTree {
 
     public void clear() {
         unchain();
+        if (sharesValues) {
+            for (ExprTree tree : attrList.values()) {
+                release(tree);
+            }
+            sharesValues = false;
+        }
         attrList.clear();
         if (alternateScope != null) {
             alternateScope.clear();
@@ -489,8 +520,14 @@ public class ClassAd extends ExprTree {
                 // We don't handle quoted attribute names for caching here.
                 // Hand the name-value-pair off to the parser as a one-attribute
                 // ad and merge the results into this ad.
+                if (newAd == null) {
+                    newAd = new ClassAd(false, false);
+                }
                 newAd.clear();
                 name = "[" + serialized_nvp.toString() + "]";
+                if (parser == null) {
+                    createParser();
+                }
                 if (parser.parseClassAd(name, newAd, true)) {
                     return update(newAd);
                 } else {
@@ -500,6 +537,9 @@ public class ClassAd extends ExprTree {
 
             ExprTree newTree;
             // we did not hit in the cache... parse the expression
+            if (parser == null) {
+                createParser();
+            }
             newTree = parser.ParseExpression(szValue);
             if (newTree != null) {
                 // if caching is enabled, and we got to here then we know that the 
@@ -508,9 +548,9 @@ public class ClassAd extends ExprTree {
                 if (newTree.getKind() != NodeKind.LITERAL_NODE) {
                     Literal lit = parser.getLiteral();
                     lit.getValue().setStringValue(szValue);
-                    bRet = insert(name, lit, false);
+                    bRet = insert(name, lit, true);
                 } else {
-                    bRet = insert(name, newTree, false);
+                    bRet = insert(name, newTree, true);
                 }
             }
 
@@ -519,26 +559,102 @@ public class ClassAd extends ExprTree {
     }
 
     public boolean insert(String attrName, ExprTree expr) throws HyracksDataException {
-        return insert(attrName, expr.isTreeHolder() ? ((ExprTreeHolder) expr).getInnerTree() : expr, false);
+        return insert(attrName, expr, true);
     }
 
+    /**
+     * Inserts an attribute. If cache is true, the ad has an ExprCache (see
+     * setExprCache) and the cache already has the same value for the same
+     * name, the attribute shares the cached tree instead of keeping its own;
+     * otherwise a copy of the tree is cached for the ads that come next.
+     */
     public boolean insert(String attrName, ExprTree pRef, boolean cache) throws HyracksDataException {
-        boolean bRet = false;
-        ExprTree tree = pRef;
         // sanity checks
         if (attrName.isEmpty() || pRef == null) {
             throw new HyracksDataException();
         }
-        CaseInsensitiveString pstrAttr = StringPool.get();
-        pstrAttr.set(attrName);
-
-        if (tree != null) {
-            // parent of the expression is this classad
-            tree.setParentScope(this);
-            attrList.put(pstrAttr, tree);
-            bRet = true;
+        return insert(AtomTable.intern(attrName), pRef, cache ? exprCache : null);
+    }
+
+    public boolean insert(CaseInsensitiveString attrName, ExprTree expr) throws HyracksDataException {
+        return insert(attrName, expr, exprCache);
+    }
+
+    public boolean insert(CaseInsensitiveString attrName, ExprTree expr, boolean cache) throws HyracksDataException {
+        return insert(attrName, expr, cache ? exprCache : null);
+    }
+
+    // Inserts an attribute, sharing its value through cache if it isn't null
+    public boolean insert(CaseInsensitiveString attrName, ExprTree expr, ExprCache cache) throws HyracksDataException {
+        if (attrName.get().isEmpty() || expr == null) {
+            throw new HyracksDataException();
         }
-        return (bRet);
+        // keys must be atoms; a pooled name would change under the map
+        CaseInsensitiveString atom = attrName.isAtom() ? attrName : AtomTable.intern(attrName.get());
+        ExprTree tree = expr.isTreeHolder() ? ((ExprTreeHolder) expr).getInnerTree() : expr;
+        if (cache != null) {
+            ExprTree shared = cache.cache(atom, tree, null);
+            if (shared != null) {
+                tree = shared;
+            }
+        }
+        if (tree instanceof CachedExprEnvelope) {
+            sharesValues = true;
+        }
+        // parent of the expression is this classad
+        tree.setParentScope(this);
+        release(attrList.put(atom, tree));
+        return true;
+    }
+
+    // Gives up the reference of a replaced or deleted value to a cached tree
+    private static void release(ExprTree tree) {
+        if (tree instanceof CachedExprEnvelope) {
+            ((CachedExprEnvelope) tree).release();
+        }
+    }
+
+    /**
+     * Sets the cache that insert shares the values of this ad through, or
+     * null not to share them. The ads of a cache must be evaluated by one
+     * thread at a time.
+     */
+    public void setExprCache(ExprCache cache) {
+        exprCache = cache;
+    }
+
+    public ExprCache getExprCache() {
+        return exprCache;
+    }
+
+    /**
+     * Inserts an attribute whose value is parsed from exprText only when it is
+     * first looked up, evaluated or iterated over.
+     */
+    public boolean insertLazy(String attrName, String exprText) throws HyracksDataException {
+        if (attrName.isEmpty()) {
+            throw new HyracksDataException();
+        }
+        return insertLazy(AtomTable.intern(attrName), exprText);
+    }
+
+    public boolean insertLazy(CaseInsensitiveString attrName, String exprText) throws HyracksDataException {
+        if (attrName.get().isEmpty() || exprText == null) {
+            throw new HyracksDataException();
+        }
+        CaseInsensitiveString atom = attrName.isAtom() ? attrName : AtomTable.intern(attrName.get());
+        // the parent scope is set when the value is parsed
+        attrList.put(atom, new LazyExprTree(this, exprText));
+        return true;
+    }
+
+    // Parses the value of a lazy attribute. Like the trees built by
+    // insert(String), the tree belongs to this ad's parser until clear().
+    public ExprTree parseValue(String exprText) throws IOException {
+        if (parser == null) {
+            createParser();
+        }
+        return parser.parseExpression(exprText, true);
     }
 
     public boolean deepInsert(ExprTree scopeExpr, String name, ExprTree tree) throws HyracksDataException {
@@ -552,11 +668,14 @@ public class ClassAd extends ExprTree {
 
     // --- begin lookup methods
     public ExprTree lookup(String name) {
-        CaseInsensitiveString aString = StringPool.get();
-        aString.set(name);
-        ExprTree expr = lookup(aString);
-        StringPool.put(aString);
-        return expr;
+        return lookup(key(name));
+    }
+
+    // The key of an attribute name. Names that were never interned can only
+    // be keys of attribute lists that were built outside of insert().
+    private static CaseInsensitiveString key(String name) {
+        CaseInsensitiveString atom = AtomTable.find(name);
+        return atom != null ? atom : new CaseInsensitiveString(name);
     }
 
     public ExprTree lookup(CaseInsensitiveString name) {
@@ -565,7 +684,11 @@ public class ClassAd extends ExprTree {
             System.out.println(entry.getKey() + ":" + entry.getValue().getKind());
         }*/
         ExprTree attr = attrList.get(name);
-        if (attr != null) {
+        if (attr instanceof LazyExprTree) {
+            attr = ((LazyExprTree) attr).materialize();
+            attrList.put(name, attr);
+            return attr;
+        } else if (attr != null) {
             return attr;
         } else if (chainedParentAd != null) {
             return chainedParentAd.lookup(name);
@@ -589,27 +712,34 @@ public class ClassAd extends ExprTree {
     }
 
     public int lookupInScope(String name, ExprTreeHolder expr, EvalState state) {
+        return lookupInScope(key(name), expr, state);
+    }
 
+    public int lookupInScope(CaseInsensitiveString attrName, ExprTreeHolder expr, EvalState state) {
+
+        String name = attrName.get();
+        boolean special = getSpecialAttrNames().contains(name);
         ClassAd current = this;
-        ClassAd superScope = new ClassAd();
+        ClassAd superScope;
         expr.setInnerTree(null);
 
         while (expr.getInnerTree() == null && current != null) {
             // lookups/eval's being done in the 'current' ad
-            state.getCurAd().setValue(current);
+            state.setCurAd(current);
 
             // lookup in current scope
-            expr.setInnerTree(current.lookup(name));
+            expr.setInnerTree(current.lookup(attrName));
             if ((expr.getInnerTree() != null)) {
                 return EvalResult.EVAL_OK.ordinal();
             }
 
-            if (state.getRootAd().equals(current)) {
+            // the root is the ad itself, not an ad with the same attributes
+            if (state.getRootAd() == current) {
                 superScope = null;
             } else {
                 superScope = current.parentScope;
             }
-            if (!getSpecialAttrNames().contains(name)) {
+            if (!special) {
                 // continue searching from the superScope ...
                 current = superScope;
                 if (current == this) { // NAC - simple loop checker
@@ -643,18 +773,14 @@ public class ClassAd extends ExprTree {
 
     // --- begin deletion methods 
     public boolean delete(String name) throws HyracksDataException {
-        CaseInsensitiveString aString = StringPool.get();
-        aString.set(name);
-        boolean success = delete(aString);
-        StringPool.put(aString);
-        return success;
+        return delete(key(name));
     }
 
     public boolean delete(CaseInsensitiveString name) throws HyracksDataException {
         boolean deleted_attribute;
         deleted_attribute = false;
         if (attrList.containsKey(name)) {
-            attrList.remove(name);
+            release(attrList.remove(name));
             deleted_attribute = true;
         }
         // If the attribute is in the chained parent, we delete define it
@@ -675,21 +801,15 @@ public class ClassAd extends ExprTree {
         ClassAd ad = privateGetDeepScope(scopeExpr);
         if (ad == null)
             return (false);
-        CaseInsensitiveString aString = StringPool.get();
-        aString.set(name);;
-        boolean success = ad.delete(aString);
-        StringPool.put(aString);
-        return success;
+        return ad.delete(key(name));
     }
 
     // --- end deletion methods
 
     // --- begin removal methods
     public ExprTree remove(String name) throws HyracksDataException {
-        ExprTree tree = null;
-        if (attrList.containsKey(name)) {
-            tree = attrList.remove(name);
-        }
+        ExprTree tree = attrList.remove(key(name));
+        release(tree);
 
         // If the attribute is in the chained parent, we delete define it
         // here as undefined, whether or not it was defined here.  This is
@@ -806,6 +926,10 @@ public class ClassAd extends ExprTree {
         ClassAd oldAd;
 
         tree.setInnerTree(null); // Just to be safe...  wenger 2003-12-11.
+        if (state.isFoldingConstants()) {
+            tree.setInnerTree(this);
+            return true;
+        }
 
         oldAd = state.getCurAd();
         state.setCurAd(this);
@@ -829,7 +953,7 @@ public class ClassAd extends ExprTree {
                     return false;
                 }
             }
-            newAd.attrList.put(entry.getKey(), etree);
+            newAd.attrList.put(entry.getKey(), etree.getInnerTree());
             eval.clear();
         }
 
@@ -839,22 +963,82 @@ public class ClassAd extends ExprTree {
     }
 
     public boolean evaluateAttr(String attr, Value val) throws HyracksDataException {
-        EvalState state = new EvalState();
-        ExprTreeHolder tree = new ExprTreeHolder();
-        state.setScopes(this);
-        switch (lookupInScope(attr, tree, state)) {
-            case ExprTree.EVAL_FAIL_Int:
-                return false;
-            case ExprTree.EVAL_OK_Int:
-                return (tree.publicEvaluate(state, val));
-            case ExprTree.EVAL_UNDEF_Int:
-                val.setUndefinedValue();
-                return (true);
-            case ExprTree.EVAL_ERROR_Int:
-                val.setErrorValue();
-                return (true);
-            default:
-                return false;
+        EvalState state = beginEvaluation();
+        try {
+            ExprTreeHolder tree = state.newHolder();
+            CaseInsensitiveString name = key(attr);
+            switch (lookupInScope(name, tree, state)) {
+                case ExprTree.EVAL_FAIL_Int:
+                    return false;
+                case ExprTree.EVAL_OK_Int: {
+                    EvalCache cache = state.getCache();
+                    if (cache != null && name.isAtom()) {
+                        return cache.evaluate(name, tree, state, val);
+                    }
+                    return (tree.publicEvaluate(state, val));
+                }
+                case ExprTree.EVAL_UNDEF_Int:
+                    val.setUndefinedValue();
+                    return (true);
+                case ExprTree.EVAL_ERROR_Int:
+                    val.setErrorValue();
+                    return (true);
+                default:
+                    return false;
+            }
+        } finally {
+            endEvaluation(state);
+        }
+    }
+
+    /**
+     * Starts caching the values of the attributes evaluated by the evaluations
+     * this ad starts, such as evaluateAttr, until stopCachingValues(): each
+     * attribute is then evaluated once, however many others refer to it, and
+     * a cycle of references fails at once (see EvalState.startCaching()).
+     * Neither this ad nor the ads in its scope may change meanwhile, and only
+     * the thread that starts caching may start and stop it.
+     */
+    public void startCachingValues() {
+        if (evalState == null) {
+            evalState = new EvalState();
+        }
+        evalState.startCaching();
+    }
+
+    public void stopCachingValues() {
+        if (evalState != null) {
+            evalState.stopCaching();
+        }
+    }
+
+    private EvalState beginEvaluation() {
+        EvalState state;
+        Thread current = Thread.currentThread();
+        if (evaluator == current) {
+            // nested in an evaluation of this ad
+            state = evalState;
+            state.enter(this);
+        } else if (EVALUATOR.compareAndSet(this, null, current)) {
+            if (evalState == null) {
+                evalState = new EvalState();
+            }
+            state = evalState;
+            state.restart();
+            state.setScopes(this);
+        } else {
+            // another thread is evaluating the ad
+            state = new EvalState();
+            state.setScopes(this);
+        }
+        state.pushFrame();
+        return state;
+    }
+
+    private void endEvaluation(EvalState state) {
+        state.popFrame();
+        if (state == evalState && !state.leave()) {
+            evaluator = null;
         }
     }
 
@@ -876,9 +1060,12 @@ public class ClassAd extends ExprTree {
     }
 
     public boolean evaluateExpr(ExprTreeHolder tree, Value val) throws HyracksDataException {
-        EvalState state = new EvalState();
-        state.setScopes(this);
-        return (tree.publicEvaluate(state, val));
+        EvalState state = beginEvaluation();
+        try {
+            return (tree.publicEvaluate(state, val));
+        } finally {
+            endEvaluation(state);
+        }
     }
 
     public boolean evaluateExpr(ExprTreeHolder tree, Value val, ExprTreeHolder sig) throws HyracksDataException {
@@ -953,6 +1140,8 @@ public class ClassAd extends ExprTree {
         if (expr.isTreeHolder()) {
             expr = ((ExprTreeHolder) expr).getInnerTree();
         }
+        // shared values are walked through their envelopes
+        expr = expr.self();
         switch (expr.getKind()) {
             case LITERAL_NODE:
                 // no external references here
@@ -1123,6 +1312,7 @@ public class ClassAd extends ExprTree {
 
     public boolean privateGetExternalReferences(ExprTree expr, ClassAd ad, EvalState state,
             Map<ClassAd, TreeSet<String>> refs) throws HyracksDataException {
+        expr = expr.self();
         switch (expr.getKind()) {
             case LITERAL_NODE:
                 // no external references here
@@ -1281,6 +1471,7 @@ public class ClassAd extends ExprTree {
     public boolean privateGetInternalReferences(ExprTree expr, ClassAd ad, EvalState state, TreeSet<String> refs,
             boolean fullNames) throws HyracksDataException {
 
+        expr = expr.self();
         switch (expr.getKind()) {
         //nothing to be found here!
             case LITERAL_NODE: {
@@ -1527,6 +1718,7 @@ public class ClassAd extends ExprTree {
         this.alternateScope = value.alternateScope;
         this.chainedParentAd = value.chainedParentAd;
         this.parentScope = value.parentScope;
+        this.sharesValues = value.sharesValues;
         this.size = value.size;
     }
 
@@ -1534,6 +1726,22 @@ public class ClassAd extends ExprTree {
         return attrList.size();
     }
 
+    // The shape of the attribute list, or null if it was set to a map that has none
+    ClassAdShape getShape() {
+        return attrList instanceof ClassAdAttrMap ? ((ClassAdAttrMap) attrList).getShape() : null;
+    }
+
+    // The value in a slot of the shape, like lookup() of the name of the slot
+    ExprTree lookupSlot(int slot) {
+        ClassAdAttrMap map = (ClassAdAttrMap) attrList;
+        ExprTree attr = map.getSlot(slot);
+        if (attr instanceof LazyExprTree) {
+            attr = ((LazyExprTree) attr).materialize();
+            map.setSlot(slot, attr);
+        }
+        return attr;
+    }
+
     public static void valStr(AMutableCharArrayString szUnparsedValue, ExprTree pTree) {
         szUnparsedValue.appendString(pTree.toString());
     }
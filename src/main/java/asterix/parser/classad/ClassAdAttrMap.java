@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAdShape;
+import asterix.parser.classad.ExprTree;
+
+/**
+ * The attribute list of a ClassAd: a ClassAdShape, shared with the other ads
+ * that have the same names, and the values in the slots of the shape. Entries
+ * are iterated in the order their names were first inserted. Keys that are
+ * not atoms are interned when they are put.
+ */
+public class ClassAdAttrMap extends AbstractMap<CaseInsensitiveString, ExprTree> {
+    private static final ExprTree[] NO_VALUES = new ExprTree[0];
+
+    private ClassAdShape shape = ClassAdShape.EMPTY;
+    private ExprTree[] values = NO_VALUES;
+
+    public ClassAdShape getShape() {
+        return shape;
+    }
+
+    @Override
+    public int size() {
+        return shape.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof CaseInsensitiveString && shape.slotOf((CaseInsensitiveString) key) >= 0;
+    }
+
+    @Override
+    public ExprTree get(Object key) {
+        if (!(key instanceof CaseInsensitiveString)) {
+            return null;
+        }
+        int slot = shape.slotOf((CaseInsensitiveString) key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    ExprTree getSlot(int slot) {
+        return values[slot];
+    }
+
+    void setSlot(int slot, ExprTree value) {
+        values[slot] = value;
+    }
+
+    @Override
+    public ExprTree put(CaseInsensitiveString key, ExprTree value) {
+        int slot = shape.slotOf(key);
+        if (slot >= 0) {
+            ExprTree old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+        slot = shape.size();
+        if (slot == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, slot * 2));
+        }
+        shape = shape.add(key);
+        values[slot] = value;
+        return null;
+    }
+
+    @Override
+    public ExprTree remove(Object key) {
+        if (!(key instanceof CaseInsensitiveString)) {
+            return null;
+        }
+        int slot = shape.slotOf((CaseInsensitiveString) key);
+        return slot < 0 ? null : removeSlot(slot);
+    }
+
+    private ExprTree removeSlot(int slot) {
+        ExprTree old = values[slot];
+        int size = shape.size();
+        System.arraycopy(values, slot + 1, values, slot, size - slot - 1);
+        values[size - 1] = null;
+        shape = shape.remove(slot);
+        return old;
+    }
+
+    // Keeps the slots, for the next attributes of a reused ad
+    @Override
+    public void clear() {
+        Arrays.fill(values, 0, shape.size(), null);
+        shape = ClassAdShape.EMPTY;
+    }
+
+    @Override
+    public Set<Map.Entry<CaseInsensitiveString, ExprTree>> entrySet() {
+        return new AbstractSet<Map.Entry<CaseInsensitiveString, ExprTree>>() {
+            @Override
+            public Iterator<Map.Entry<CaseInsensitiveString, ExprTree>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return shape.size();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<CaseInsensitiveString, ExprTree>> {
+        private int next;
+        // the slot of the entry returned last, or -1 once it was removed
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < shape.size();
+        }
+
+        @Override
+        public Map.Entry<CaseInsensitiveString, ExprTree> next() {
+            if (next >= shape.size()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new SlotEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeSlot(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private final class SlotEntry implements Map.Entry<CaseInsensitiveString, ExprTree> {
+        private final CaseInsensitiveString key;
+        private final int slot;
+
+        SlotEntry(int slot) {
+            this.key = shape.getName(slot);
+            this.slot = slot;
+        }
+
+        @Override
+        public CaseInsensitiveString getKey() {
+            return key;
+        }
+
+        @Override
+        public ExprTree getValue() {
+            return values[slot];
+        }
+
+        @Override
+        public ExprTree setValue(ExprTree value) {
+            ExprTree old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && (values[slot] == null ? e.getValue() == null
+                    : values[slot].equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ (values[slot] == null ? 0 : values[slot].hashCode());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdColumn;
+import asterix.parser.classad.Value;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Ads kept together so that BatchEvaluator can evaluate an expression over all
+ * of them at once. The values of each attribute are kept as a ClassAdColumn,
+ * built the first time the attribute is used: a row holds the value the
+ * attribute evaluates to in its ad, like a reference to the attribute in an
+ * expression evaluated in the ad. The ads are kept as they are added, so they
+ * must not change afterwards; in particular an ad that a parser reuses must be
+ * copied.
+ */
+public class ClassAdBatch {
+    private final List<ClassAd> ads = new ArrayList<ClassAd>();
+    private final Map<CaseInsensitiveString, ClassAdColumn> columns = new HashMap<CaseInsensitiveString, ClassAdColumn>();
+
+    public void add(ClassAd ad) {
+        ads.add(ad);
+        // the columns built so far don't have a row for the ad
+        columns.clear();
+    }
+
+    public int size() {
+        return ads.size();
+    }
+
+    public ClassAd getAd(int row) {
+        return ads.get(row);
+    }
+
+    public void clear() {
+        ads.clear();
+        columns.clear();
+    }
+
+    /**
+     * The values of the attribute name in each ad. Rows of the ads that don't
+     * have the attribute are undefined.
+     */
+    public ClassAdColumn getColumn(String name) throws HyracksDataException {
+        CaseInsensitiveString atom = AtomTable.intern(name);
+        ClassAdColumn column = columns.get(atom);
+        if (column == null) {
+            column = new ClassAdColumn(ads.size());
+            Value val = new Value();
+            for (int i = 0; i < ads.size(); i++) {
+                if (ads.get(i).evaluateAttr(name, val)) {
+                    column.setValue(i, val);
+                } else {
+                    column.setError(i);
+                }
+            }
+            columns.put(atom, column);
+        }
+        return column;
+    }
+}
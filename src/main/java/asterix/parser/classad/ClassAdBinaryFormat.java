@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+/**
+ * The binary encoding of a ClassAd, written by ClassAdBinaryWriter and read by
+ * ClassAdBinaryReader and BinaryClassAd.
+ *
+ * <pre>
+ * ad file   := MAGIC VERSION names node
+ * names     := varint count, then count times: varint length, UTF-8 bytes
+ * node      := tag, then by tag:
+ *   UNDEFINED, ERROR, TRUE, FALSE
+ *   INTEGER   zigzag varlong
+ *   REAL      8 bytes
+ *   STRING    varint length, UTF-8 bytes
+ *   ABS_TIME  zigzag varlong millis, varint name of the time zone id
+ *   REL_TIME  zigzag varlong millis
+ *   FACTOR    factor ordinal byte, then the INTEGER or REAL node it scales
+ *   ATTR_REF  varint name                      (attr)
+ *   ABS_REF   varint name                      (.attr)
+ *   SCOPE_REF varint name, node                (node.attr)
+ *   OP        varint operator, byte of the operands present, operands
+ *   FUNCTION  varint name, varint count, arguments
+ *   LIST      varint count, items
+ *   CLASSAD   varint count, count entries of (int hash, int name, int
+ *             offset), then the values; offsets are from the end of the
+ *             entries, so an attribute is found without reading the others
+ * </pre>
+ *
+ * Names are indexes in the names of the file. The hash of an entry is
+ * hash(name), so that lookups ignore case like ClassAd does.
+ */
+final class ClassAdBinaryFormat {
+    static final int MAGIC = 0x43414442; // "CADB"
+    static final byte VERSION = 1;
+
+    static final byte UNDEFINED = 0;
+    static final byte ERROR = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte INTEGER = 4;
+    static final byte REAL = 5;
+    static final byte STRING = 6;
+    static final byte ABS_TIME = 7;
+    static final byte REL_TIME = 8;
+    static final byte FACTOR = 9;
+    static final byte ATTR_REF = 10;
+    static final byte ABS_REF = 11;
+    static final byte SCOPE_REF = 12;
+    static final byte OP = 13;
+    static final byte FUNCTION = 14;
+    static final byte LIST = 15;
+    static final byte CLASSAD = 16;
+
+    // the size of an entry of a CLASSAD node
+    static final int ENTRY_SIZE = 12;
+
+    private ClassAdBinaryFormat() {
+    }
+
+    // A hash of name that ignores case
+    static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + Character.toLowerCase(name.charAt(i));
+        }
+        return h;
+    }
+}
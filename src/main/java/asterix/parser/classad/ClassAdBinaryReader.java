@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import asterix.parser.classad.AMutableCharArrayString;
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdBinaryFormat;
+import asterix.parser.classad.ClassAdTime;
+import asterix.parser.classad.ExprList;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.FunctionCall;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Operation;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.NumberFactor;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Reads ClassAds written by ClassAdBinaryWriter. The reader reads the buffer
+ * from its position at construction and leaves the position alone, so that
+ * the same buffer can be read by several readers. Names are decoded the
+ * first time they are used.
+ */
+public class ClassAdBinaryReader {
+    private final ByteBuffer buffer;
+    // the positions of the names in the buffer, and the names decoded so far
+    private final int[] namePositions;
+    private final String[] names;
+    private final CaseInsensitiveString[] atoms;
+    // the position of the root node
+    private final int root;
+    private int pos;
+
+    public ClassAdBinaryReader(ByteBuffer buffer) throws HyracksDataException {
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.pos = buffer.position();
+        if (buffer.remaining() < 5 || readInt() != ClassAdBinaryFormat.MAGIC) {
+            throw new HyracksDataException("Not a binary ClassAd");
+        }
+        byte version = readByte();
+        if (version != ClassAdBinaryFormat.VERSION) {
+            throw new HyracksDataException("Unsupported binary ClassAd version " + version);
+        }
+        int count = readVarInt();
+        namePositions = new int[count];
+        names = new String[count];
+        atoms = new CaseInsensitiveString[count];
+        for (int i = 0; i < count; i++) {
+            namePositions[i] = pos;
+            int length = readVarInt();
+            pos += length;
+        }
+        root = pos;
+    }
+
+    public ClassAd readClassAd() throws HyracksDataException {
+        pos = root;
+        ExprTree tree = readExpr();
+        if (tree.getKind() != ExprTree.NodeKind.CLASSAD_NODE) {
+            throw new HyracksDataException("The root of a binary ClassAd is not a ClassAd");
+        }
+        return (ClassAd) tree;
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    // Reads the node at position pos of the buffer
+    ExprTree readExpr(int pos) throws HyracksDataException {
+        this.pos = pos;
+        return readExpr();
+    }
+
+    byte readByte(int at) {
+        return buffer.get(at);
+    }
+
+    int readInt(int at) {
+        return buffer.getInt(at);
+    }
+
+    int readVarInt(int at) {
+        pos = at;
+        return readVarInt();
+    }
+
+    // The position that follows the last value read
+    int position() {
+        return pos;
+    }
+
+    String getName(int index) {
+        if (names[index] == null) {
+            int at = pos;
+            pos = namePositions[index];
+            int length = readVarInt();
+            byte[] utf8 = new byte[length];
+            for (int i = 0; i < length; i++) {
+                utf8[i] = buffer.get(pos + i);
+            }
+            names[index] = new String(utf8, StandardCharsets.UTF_8);
+            pos = at;
+        }
+        return names[index];
+    }
+
+    CaseInsensitiveString getAtom(int index) {
+        if (atoms[index] == null) {
+            atoms[index] = AtomTable.intern(getName(index));
+        }
+        return atoms[index];
+    }
+
+    private ExprTree readExpr() throws HyracksDataException {
+        byte tag = readByte();
+        switch (tag) {
+            case ClassAdBinaryFormat.ATTR_REF:
+            case ClassAdBinaryFormat.ABS_REF:
+                return AttributeReference.createAttributeReference(null,
+                        new AMutableCharArrayString(getName(readVarInt())), tag == ClassAdBinaryFormat.ABS_REF);
+            case ClassAdBinaryFormat.SCOPE_REF: {
+                String name = getName(readVarInt());
+                return AttributeReference.createAttributeReference(readExpr(), new AMutableCharArrayString(name),
+                        false);
+            }
+            case ClassAdBinaryFormat.OP: {
+                int opKind = readVarInt();
+                int present = readByte();
+                ExprTree[] children = new ExprTree[3];
+                for (int i = 0; i < children.length; i++) {
+                    if ((present & (1 << i)) != 0) {
+                        children[i] = readExpr();
+                    }
+                }
+                return Operation.createOperation(opKind, children[0], children[1], children[2]);
+            }
+            case ClassAdBinaryFormat.FUNCTION: {
+                String name = getName(readVarInt());
+                return FunctionCall.createFunctionCall(name, readExprList());
+            }
+            case ClassAdBinaryFormat.LIST:
+                return readExprList();
+            case ClassAdBinaryFormat.CLASSAD: {
+                ClassAd ad = new ClassAd();
+                int count = readVarInt();
+                int entry = pos;
+                pos += count * ClassAdBinaryFormat.ENTRY_SIZE;
+                for (int i = 0; i < count; i++) {
+                    CaseInsensitiveString name = getAtom(buffer.getInt(entry + 4));
+                    ad.insert(name, readExpr(), false);
+                    entry += ClassAdBinaryFormat.ENTRY_SIZE;
+                }
+                return ad;
+            }
+            case ClassAdBinaryFormat.FACTOR: {
+                NumberFactor factor = NumberFactor.values()[readByte()];
+                return Literal.createLiteral(readValue(readByte()), factor);
+            }
+            default:
+                return Literal.createLiteral(readValue(tag), NumberFactor.NO_FACTOR);
+        }
+    }
+
+    private ExprList readExprList() throws HyracksDataException {
+        int count = readVarInt();
+        ExprList list = new ExprList();
+        for (int i = 0; i < count; i++) {
+            list.add(readExpr());
+        }
+        return list;
+    }
+
+    private Value readValue(byte tag) throws HyracksDataException {
+        Value val = new Value();
+        switch (tag) {
+            case ClassAdBinaryFormat.UNDEFINED:
+                val.setUndefinedValue();
+                break;
+            case ClassAdBinaryFormat.ERROR:
+                val.setErrorValue();
+                break;
+            case ClassAdBinaryFormat.TRUE:
+                val.setBooleanValue(true);
+                break;
+            case ClassAdBinaryFormat.FALSE:
+                val.setBooleanValue(false);
+                break;
+            case ClassAdBinaryFormat.INTEGER:
+                val.setIntegerValue(readVarLong());
+                break;
+            case ClassAdBinaryFormat.REAL:
+                val.setRealValue(Double.longBitsToDouble(buffer.getLong(pos)));
+                pos += 8;
+                break;
+            case ClassAdBinaryFormat.STRING: {
+                int length = readVarInt();
+                byte[] utf8 = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    utf8[i] = buffer.get(pos + i);
+                }
+                pos += length;
+                val.setStringValue(new String(utf8, StandardCharsets.UTF_8));
+                break;
+            }
+            case ClassAdBinaryFormat.ABS_TIME: {
+                long ms = readVarLong();
+                ClassAdTime time = new ClassAdTime(getName(readVarInt()));
+                time.setValue(ms, true);
+                val.setAbsoluteTimeValue(time);
+                break;
+            }
+            case ClassAdBinaryFormat.REL_TIME:
+                val.setRelativeTimeValue(readVarLong());
+                break;
+            default:
+                throw new HyracksDataException("Unknown binary ClassAd tag " + tag + " at " + (pos - 1));
+        }
+        return val;
+    }
+
+    private byte readByte() {
+        return buffer.get(pos++);
+    }
+
+    private int readInt() {
+        int v = buffer.getInt(pos);
+        pos += 4;
+        return v;
+    }
+
+    private int readVarInt() {
+        int v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = readByte();
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+
+    private long readVarLong() {
+        long z = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = readByte();
+            z |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (z >>> 1) ^ -(z & 1);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdBinaryFormat;
+import asterix.parser.classad.ExprList;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.FunctionCall;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Operation;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.NumberFactor;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Writes ClassAds in the binary format of ClassAdBinaryFormat. A writer can
+ * be reused for any number of ads, one at a time.
+ */
+public class ClassAdBinaryWriter {
+    private byte[] bytes = new byte[1024];
+    private int length;
+    private final List<String> names = new ArrayList<String>();
+    private final Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+    private final AMutableInt32 opKind = new AMutableInt32(0);
+
+    public byte[] write(ClassAd ad) throws HyracksDataException {
+        length = 0;
+        names.clear();
+        nameIndexes.clear();
+        writeAd(ad);
+        // the names are only known once the ad is written
+        byte[] body = Arrays.copyOf(bytes, length);
+        length = 0;
+        writeInt(ClassAdBinaryFormat.MAGIC);
+        writeByte(ClassAdBinaryFormat.VERSION);
+        writeVarInt(names.size());
+        for (String name : names) {
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            writeBytes(utf8);
+        }
+        writeBytes(body);
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private void writeExpr(ExprTree expr) throws HyracksDataException {
+        ExprTree tree = expr.self();
+        switch (tree.getKind()) {
+            case LITERAL_NODE:
+                writeLiteral((Literal) tree);
+                return;
+            case ATTRREF_NODE: {
+                AttributeReference ref = (AttributeReference) tree;
+                if (ref.getExpr() != null) {
+                    writeByte(ClassAdBinaryFormat.SCOPE_REF);
+                    writeName(ref.getAttributeName());
+                    writeExpr(ref.getExpr());
+                } else {
+                    writeByte(ref.isAbsolute() ? ClassAdBinaryFormat.ABS_REF : ClassAdBinaryFormat.ATTR_REF);
+                    writeName(ref.getAttributeName());
+                }
+                return;
+            }
+            case OP_NODE: {
+                ExprTreeHolder[] children = { new ExprTreeHolder(), new ExprTreeHolder(), new ExprTreeHolder() };
+                ((Operation) tree).getComponents(opKind, children[0], children[1], children[2]);
+                writeByte(ClassAdBinaryFormat.OP);
+                writeVarInt(opKind.getIntegerValue());
+                int present = 0;
+                for (int i = 0; i < children.length; i++) {
+                    if (children[i].getInnerTree() != null) {
+                        present |= 1 << i;
+                    }
+                }
+                writeByte((byte) present);
+                for (ExprTreeHolder child : children) {
+                    if (child.getInnerTree() != null) {
+                        writeExpr(child.getInnerTree());
+                    }
+                }
+                return;
+            }
+            case FN_CALL_NODE: {
+                FunctionCall call = (FunctionCall) tree;
+                ExprList args = call.getArguments();
+                writeByte(ClassAdBinaryFormat.FUNCTION);
+                writeName(call.getFunctionName());
+                writeVarInt(args.size());
+                for (ExprTree arg : args.getExprList()) {
+                    writeExpr(arg);
+                }
+                return;
+            }
+            case CLASSAD_NODE:
+                writeAd((ClassAd) tree);
+                return;
+            case EXPR_LIST_NODE: {
+                ExprList list = (ExprList) tree;
+                writeByte(ClassAdBinaryFormat.LIST);
+                writeVarInt(list.size());
+                for (ExprTree item : list.getExprList()) {
+                    writeExpr(item);
+                }
+                return;
+            }
+            default:
+                throw new HyracksDataException("Can't write an expression of kind " + tree.getKind());
+        }
+    }
+
+    private void writeAd(ClassAd ad) throws HyracksDataException {
+        Map<CaseInsensitiveString, ExprTree> attrs = ad.getAttrList();
+        writeByte(ClassAdBinaryFormat.CLASSAD);
+        writeVarInt(attrs.size());
+        int entry = length;
+        int start = length + attrs.size() * ClassAdBinaryFormat.ENTRY_SIZE;
+        ensure(start);
+        length = start;
+        for (Entry<CaseInsensitiveString, ExprTree> attr : attrs.entrySet()) {
+            String name = attr.getKey().get();
+            putInt(entry, ClassAdBinaryFormat.hash(name));
+            putInt(entry + 4, nameIndex(name));
+            putInt(entry + 8, length - start);
+            entry += ClassAdBinaryFormat.ENTRY_SIZE;
+            writeExpr(attr.getValue());
+        }
+    }
+
+    private void writeLiteral(Literal lit) throws HyracksDataException {
+        Value val = lit.getValue();
+        if (lit.getFactor() != NumberFactor.NO_FACTOR) {
+            writeByte(ClassAdBinaryFormat.FACTOR);
+            writeByte((byte) lit.getFactor().ordinal());
+        }
+        switch (val.getValueType()) {
+            case UNDEFINED_VALUE:
+                writeByte(ClassAdBinaryFormat.UNDEFINED);
+                return;
+            case ERROR_VALUE:
+                writeByte(ClassAdBinaryFormat.ERROR);
+                return;
+            case BOOLEAN_VALUE:
+                writeByte(val.getBoolVal() ? ClassAdBinaryFormat.TRUE : ClassAdBinaryFormat.FALSE);
+                return;
+            case INTEGER_VALUE:
+                writeByte(ClassAdBinaryFormat.INTEGER);
+                writeVarLong(val.getLongVal());
+                return;
+            case REAL_VALUE:
+                writeByte(ClassAdBinaryFormat.REAL);
+                writeLong(Double.doubleToRawLongBits(val.getDoubleVal()));
+                return;
+            case STRING_VALUE: {
+                byte[] utf8 = val.getStringVal().getBytes(StandardCharsets.UTF_8);
+                writeByte(ClassAdBinaryFormat.STRING);
+                writeVarInt(utf8.length);
+                writeBytes(utf8);
+                return;
+            }
+            case ABSOLUTE_TIME_VALUE:
+                writeByte(ClassAdBinaryFormat.ABS_TIME);
+                writeVarLong(val.getTimeVal().getRelativeTime());
+                writeName(val.getTimeVal().getTimeZone().getID());
+                return;
+            case RELATIVE_TIME_VALUE:
+                writeByte(ClassAdBinaryFormat.REL_TIME);
+                writeVarLong(val.getTimeVal().getRelativeTime());
+                return;
+            default:
+                throw new HyracksDataException("Can't write a literal of type " + val.getValueType());
+        }
+    }
+
+    private int nameIndex(String name) {
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndexes.put(name, index);
+        }
+        return index;
+    }
+
+    private void writeName(String name) {
+        writeVarInt(nameIndex(name));
+    }
+
+    private void ensure(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+
+    private void writeByte(byte b) {
+        ensure(length + 1);
+        bytes[length++] = b;
+    }
+
+    private void writeBytes(byte[] b) {
+        ensure(length + b.length);
+        System.arraycopy(b, 0, bytes, length, b.length);
+        length += b.length;
+    }
+
+    private void putInt(int at, int v) {
+        bytes[at] = (byte) (v >>> 24);
+        bytes[at + 1] = (byte) (v >>> 16);
+        bytes[at + 2] = (byte) (v >>> 8);
+        bytes[at + 3] = (byte) v;
+    }
+
+    private void writeInt(int v) {
+        ensure(length + 4);
+        putInt(length, v);
+        length += 4;
+    }
+
+    private void writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    private void writeVarInt(int v) {
+        while ((v & ~0x7F) != 0) {
+            writeByte((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        writeByte((byte) v);
+    }
+
+    // zigzag, so that small negative numbers are short too
+    private void writeVarLong(long v) {
+        long z = (v << 1) ^ (v >> 63);
+        while ((z & ~0x7FL) != 0) {
+            writeByte((byte) ((z & 0x7F) | 0x80));
+            z >>>= 7;
+        }
+        writeByte((byte) z);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * One value for each ad of a ClassAdBatch. Each row has a value type;
+ * integers and booleans are kept in a long array, reals in a double array and
+ * strings as codes in a dictionary of the distinct strings of the column.
+ * Values of the other types are kept as Values. The arrays are allocated
+ * when a row first needs them.
+ */
+public class ClassAdColumn {
+    private static final ValueType[] TYPES = ValueType.values();
+    private static final byte UNDEFINED = (byte) ValueType.UNDEFINED_VALUE.ordinal();
+    private static final byte ERROR = (byte) ValueType.ERROR_VALUE.ordinal();
+    static final byte BOOLEAN = (byte) ValueType.BOOLEAN_VALUE.ordinal();
+    static final byte INTEGER = (byte) ValueType.INTEGER_VALUE.ordinal();
+    static final byte REAL = (byte) ValueType.REAL_VALUE.ordinal();
+    private static final byte STRING = (byte) ValueType.STRING_VALUE.ordinal();
+    // the uniform type of a column whose rows have different types
+    static final byte MIXED = -1;
+
+    private final int size;
+    // the value type of each row, undefined at first
+    final byte[] types;
+    long[] longs;
+    double[] doubles;
+    private int[] codes;
+    private List<String> dictionary;
+    private Map<String, Integer> dictionaryCodes;
+    private Value[] values;
+    // the type of all rows, computed when first needed
+    private byte uniformType;
+    private boolean uniformTypeKnown;
+
+    public ClassAdColumn(int size) {
+        this.size = size;
+        this.types = new byte[size];
+        Arrays.fill(types, UNDEFINED);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ValueType getType(int row) {
+        return TYPES[types[row]];
+    }
+
+    public boolean isUndefined(int row) {
+        return types[row] == UNDEFINED;
+    }
+
+    public boolean isError(int row) {
+        return types[row] == ERROR;
+    }
+
+    // True if the row is the boolean true, the way a constraint is satisfied
+    public boolean isTrue(int row) {
+        return types[row] == BOOLEAN && longs[row] != 0;
+    }
+
+    public boolean getBoolean(int row) {
+        return longs[row] != 0;
+    }
+
+    public long getLong(int row) {
+        return longs[row];
+    }
+
+    public double getDouble(int row) {
+        return doubles[row];
+    }
+
+    public String getString(int row) {
+        return dictionary.get(codes[row]);
+    }
+
+    // The number of distinct strings of the column
+    public int getDictionarySize() {
+        return dictionary == null ? 0 : dictionary.size();
+    }
+
+    // Copies the value of row to val
+    public void getValue(int row, Value val) throws HyracksDataException {
+        switch (TYPES[types[row]]) {
+            case UNDEFINED_VALUE:
+                val.setUndefinedValue();
+                return;
+            case ERROR_VALUE:
+                val.setErrorValue();
+                return;
+            case BOOLEAN_VALUE:
+                val.setBooleanValue(longs[row] != 0);
+                return;
+            case INTEGER_VALUE:
+                val.setIntegerValue(longs[row]);
+                return;
+            case REAL_VALUE:
+                val.setRealValue(doubles[row]);
+                return;
+            case STRING_VALUE:
+                val.setStringValue(dictionary.get(codes[row]));
+                return;
+            default:
+                val.copyFrom(values[row]);
+        }
+    }
+
+    public void setUndefined(int row) {
+        setType(row, UNDEFINED);
+    }
+
+    public void setError(int row) {
+        setType(row, ERROR);
+    }
+
+    public void setBoolean(int row, boolean b) {
+        longs()[row] = b ? 1 : 0;
+        setType(row, BOOLEAN);
+    }
+
+    public void setLong(int row, long l) {
+        longs()[row] = l;
+        setType(row, INTEGER);
+    }
+
+    public void setDouble(int row, double d) {
+        doubles()[row] = d;
+        setType(row, REAL);
+    }
+
+    public void setString(int row, String s) {
+        if (codes == null) {
+            codes = new int[size];
+            dictionary = new ArrayList<String>();
+            dictionaryCodes = new HashMap<String, Integer>();
+        }
+        Integer code = dictionaryCodes.get(s);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(s);
+            dictionaryCodes.put(s, code);
+        }
+        codes[row] = code;
+        setType(row, STRING);
+    }
+
+    // Sets row to a copy of val
+    public void setValue(int row, Value val) throws HyracksDataException {
+        switch (val.getValueType()) {
+            case UNDEFINED_VALUE:
+                setUndefined(row);
+                return;
+            case ERROR_VALUE:
+                setError(row);
+                return;
+            case BOOLEAN_VALUE:
+                setBoolean(row, val.getBoolVal());
+                return;
+            case INTEGER_VALUE:
+                setLong(row, val.getLongVal());
+                return;
+            case REAL_VALUE:
+                setDouble(row, val.getDoubleVal());
+                return;
+            case STRING_VALUE:
+                setString(row, val.getStringVal());
+                return;
+            default:
+                if (values == null) {
+                    values = new Value[size];
+                }
+                values[row] = new Value(val);
+                setType(row, (byte) val.getValueType().ordinal());
+        }
+    }
+
+    // Sets row to the value of row from of column
+    void copyRow(int row, ClassAdColumn column, int from) throws HyracksDataException {
+        byte type = column.types[from];
+        if (type == BOOLEAN || type == INTEGER) {
+            longs()[row] = column.longs[from];
+            setType(row, type);
+        } else if (type == REAL) {
+            setDouble(row, column.doubles[from]);
+        } else if (type == STRING) {
+            setString(row, column.getString(from));
+        } else if (type == UNDEFINED || type == ERROR) {
+            setType(row, type);
+        } else {
+            if (values == null) {
+                values = new Value[size];
+            }
+            // values are not changed once set, so they can be shared
+            values[row] = column.values[from];
+            setType(row, type);
+        }
+    }
+
+    /**
+     * The type of all the rows as the ordinal of its ValueType, or MIXED.
+     * Kernels of BatchEvaluator check it to run their loops over the arrays
+     * without looking at the type of each row.
+     */
+    byte getUniformType() {
+        if (!uniformTypeKnown) {
+            uniformType = size == 0 ? UNDEFINED : types[0];
+            for (int i = 1; i < size; i++) {
+                if (types[i] != uniformType) {
+                    uniformType = MIXED;
+                    break;
+                }
+            }
+            uniformTypeKnown = true;
+        }
+        return uniformType;
+    }
+
+    // Sets the type of all the rows, whose values were written to the arrays
+    void setAll(byte type) {
+        Arrays.fill(types, type);
+        uniformType = type;
+        uniformTypeKnown = true;
+    }
+
+    long[] longs() {
+        if (longs == null) {
+            longs = new long[size];
+        }
+        return longs;
+    }
+
+    double[] doubles() {
+        if (doubles == null) {
+            doubles = new double[size];
+        }
+        return doubles;
+    }
+
+    private void setType(int row, byte type) {
+        types[row] = type;
+        uniformTypeKnown = false;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a ClassAd file into byte ranges that each hold whole records, so the
+ * ranges can be parsed independently. In the new format a record ends with the
+ * ']' that closes a top-level '['; brackets inside string literals, quoted
+ * attribute names and comments are ignored. In the old format a record ends
+ * with a blank line. All the characters that matter are ASCII, and UTF-8
+ * continuation bytes never collide with ASCII, so the file is scanned as bytes.
+ */
+public class ClassAdFileSplitter {
+
+    public static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int SCAN_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int NO_COMMENT = 0;
+    private static final int LINE_COMMENT = 1;
+    private static final int BLOCK_COMMENT = 2;
+
+    // scanner state, kept across scan windows
+    private final boolean oldFormat;
+    private int depth = 0;
+    private int quote = 0;
+    private boolean escape = false;
+    private int comment = NO_COMMENT;
+    private int previous = 0;
+    private boolean blankLine = true;
+
+    ClassAdFileSplitter(boolean oldFormat) {
+        this.oldFormat = oldFormat;
+    }
+
+    /**
+     * Returns the chunk boundaries of the file: chunk i spans
+     * [boundaries[i], boundaries[i + 1]). Every chunk but the last is at least
+     * chunkSize bytes long and ends at a record boundary.
+     */
+    public static long[] split(FileChannel channel, boolean oldFormat, long chunkSize) throws IOException {
+        ClassAdFileSplitter splitter = new ClassAdFileSplitter(oldFormat);
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+        long chunkStart = 0;
+        for (long windowStart = 0; windowStart < size; windowStart += SCAN_WINDOW_SIZE) {
+            int length = (int) Math.min(SCAN_WINDOW_SIZE, size - windowStart);
+            MappedByteBuffer window = channel.map(MapMode.READ_ONLY, windowStart, length);
+            for (int i = 0; i < length; i++) {
+                if (splitter.endsRecord(window.get(i)) && windowStart + i + 1 - chunkStart >= chunkSize) {
+                    chunkStart = windowStart + i + 1;
+                    if (chunkStart < size) {
+                        boundaries.add(chunkStart);
+                    }
+                }
+            }
+        }
+        boundaries.add(size);
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    // Consumes the next byte, or char, and returns true if it is the last one
+    // of a record. Bytes of multi-byte UTF-8 sequences are negative and chars
+    // outside ASCII are above 127, so neither is mistaken for a delimiter.
+    boolean endsRecord(int b) {
+        if (oldFormat) {
+            if (b == '\n') {
+                boolean endOfRecord = blankLine;
+                blankLine = true;
+                return endOfRecord;
+            }
+            if (!Character.isWhitespace(b)) {
+                blankLine = false;
+            }
+            return false;
+        }
+        int prev = previous;
+        previous = b;
+        if (comment == LINE_COMMENT) {
+            if (b == '\n') {
+                comment = NO_COMMENT;
+            }
+            return false;
+        } else if (comment == BLOCK_COMMENT) {
+            if (prev == '*' && b == '/') {
+                comment = NO_COMMENT;
+                // the closing '/' cannot start another comment
+                previous = 0;
+            }
+            return false;
+        } else if (quote != 0) {
+            if (escape) {
+                escape = false;
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == quote) {
+                quote = 0;
+            }
+            return false;
+        }
+        switch (b) {
+            case '"':
+            case '\'':
+                quote = b;
+                return false;
+            case '/':
+                if (prev == '/') {
+                    comment = LINE_COMMENT;
+                }
+                return false;
+            case '*':
+                if (prev == '/') {
+                    comment = BLOCK_COMMENT;
+                    // the opening '*' cannot close the comment
+                    previous = 0;
+                }
+                return false;
+            case '[':
+                depth++;
+                return false;
+            case ']':
+                // a stray top-level ']' must not stop the next records ending
+                if (depth == 0) {
+                    return false;
+                }
+                depth--;
+                return depth == 0;
+            default:
+                return false;
+        }
+    }
+}
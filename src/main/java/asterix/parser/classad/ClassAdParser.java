@@ -25,10 +25,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.asterix.builders.AbvsBuilderFactory;
 import org.apache.asterix.builders.IARecordBuilder;
@@ -39,10 +46,14 @@ import org.apache.asterix.builders.RecordBuilderFactory;
 import org.apache.asterix.builders.UnorderedListBuilder;
 import asterix.parser.classad.AMutableCharArrayString;
 import asterix.parser.classad.AMutableNumberFactor;
+import asterix.parser.classad.AtomTable;
 import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.ByteArrayLexerSource;
 import asterix.parser.classad.CaseInsensitiveString;
 import asterix.parser.classad.CharArrayLexerSource;
 import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ConstantFolder;
+import asterix.parser.classad.ExprCache;
 import asterix.parser.classad.ExprList;
 import asterix.parser.classad.ExprTree;
 import asterix.parser.classad.ExprTreeHolder;
@@ -53,6 +64,11 @@ import asterix.parser.classad.Lexer;
 import asterix.parser.classad.LexerSource;
 import asterix.parser.classad.Literal;
 import asterix.parser.classad.Operation;
+import asterix.parser.classad.ParseErrorStats;
+import asterix.parser.classad.ParseErrorStats.ErrorKind;
+import asterix.parser.classad.RecordPlan;
+import asterix.parser.classad.RecordPlan.FieldPlan;
+import asterix.parser.classad.RecordPlan.ValuePlan;
 import asterix.parser.classad.StringLexerSource;
 import asterix.parser.classad.TokenValue;
 import asterix.parser.classad.Value;
@@ -63,6 +79,7 @@ import org.apache.asterix.om.io.AsterixSemiStructuredRecordReader;
 import org.apache.asterix.om.io.BaseAsterixInputStream;
 import org.apache.asterix.om.io.IAsterixRecord;
 import org.apache.asterix.om.types.AOrderedListType;
+import org.apache.asterix.om.types.AbstractCollectionType;
 import org.apache.asterix.om.types.ARecordType;
 import org.apache.asterix.om.types.ATypeTag;
 import org.apache.asterix.om.types.AUnionType;
@@ -75,6 +92,7 @@ import org.apache.asterix.om.util.container.ListObjectPool;
 import asterix.parser.classad.ExprTree.NodeKind;
 import asterix.parser.classad.Lexer.TokenType;
 import asterix.parser.classad.Value.NumberFactor;
+import asterix.parser.classad.Value.ValueType;
 import asterix.parser.classad.object.pool.AttributeReferencePool;
 import asterix.parser.classad.object.pool.BitSetPool;
 import asterix.parser.classad.object.pool.ClassAdPool;
@@ -82,6 +100,7 @@ import asterix.parser.classad.object.pool.ExprHolderPool;
 import asterix.parser.classad.object.pool.ExprListPool;
 import asterix.parser.classad.object.pool.LiteralPool;
 import asterix.parser.classad.object.pool.OperationPool;
+import asterix.parser.classad.object.pool.Pool;
 import asterix.parser.classad.object.pool.TokenValuePool;
 import asterix.parser.classad.object.pool.ValuePool;
 import org.apache.asterix.runtime.operators.file.AbstractDataParser;
@@ -95,6 +114,9 @@ import org.apache.hyracks.api.exceptions.HyracksDataException;
 
 /// This reads ClassAd strings from various sources and converts them into a ClassAd.
 /// It can read from Strings, Files, and InputStreams.
+/// A parser, with its object pools, is used by one thread at a time; parsers
+/// that run concurrently, such as one per partition, share only the AtomTable,
+/// which is thread-safe. Each parser has its own ExprCache, if any.
 public class ClassAdParser extends AbstractDataParser implements IDataParser {
 
     // reusable components
@@ -111,6 +133,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
     private final BitSetPool bitSetPool = new BitSetPool();
     private final OperationPool operationPool = new OperationPool();
     private final AttributeReferencePool attrRefPool = new AttributeReferencePool();
+    private final Pool<?>[] pools = { mutableExprPool, tokenValuePool, classAdPool, exprListPool, valuePool,
+            literalPool, bitSetPool, operationPool, attrRefPool };
     // asterix objects
     private ARecordType recordType;
     private IObjectPool<IARecordBuilder, ATypeTag> recordBuilderPool = new ListObjectPool<IARecordBuilder, ATypeTag>(
@@ -127,8 +151,65 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
     private String exprFieldNameSuffix = "Expr";
     private boolean keepBoth = true;
     private boolean oldFormat = false;
+    // record attribute values as text and parse them on first use
+    private boolean lazy = false;
+    // attributes written to the record; null means all of them
+    private Set<CaseInsensitiveString> projection = null;
+    // holds the attributes that are not projected, for evaluation only
+    private ClassAd referencedAd = null;
     private StringLexerSource stringLexerSource = new StringLexerSource("");
+    private ByteArrayLexerSource byteArrayLexerSource = new ByteArrayLexerSource();
     private BufferedReader oldFormatReader;
+    // old format input: lines are read from oldFormatSource, or from the
+    // record buffer if it is null, into oldFormatBuffer[0, oldFormatLimit)
+    private static final int OLD_FORMAT_BUFFER_SIZE = 32768;
+    private Reader oldFormatSource;
+    private char[] oldFormatBuffer;
+    private int oldFormatPosition;
+    private int oldFormatScan;
+    private int oldFormatLimit;
+    private int lineStart;
+    private int lineEnd;
+    private CharArrayLexerSource lineSource = new CharArrayLexerSource();
+    // tolerant mode: records with parse errors are skipped and counted
+    private boolean tolerant = false;
+    private final ParseErrorStats errorStats = new ParseErrorStats();
+    // true while a record is parsed in tolerant mode
+    private boolean recovering = false;
+    // the first error of the record being parsed, if any
+    private ErrorKind error = null;
+    private String errorMessage;
+    private int errorPosition;
+    // source position of the start of the record, or of the old format line
+    private int recordStart;
+    // transcoding: literal attributes of new format records are written to
+    // the record as soon as they are parsed, and only expressions are put in
+    // rootAd. The builder is set while a record is transcoded.
+    private boolean transcode = false;
+    private IARecordBuilder streamBuilder;
+    private RecordPlan streamPlan;
+    private BitSet streamNulls;
+    private ArrayBackedValueStorage streamValueBuffer;
+    // folds the constant parts of attribute values, if set
+    private boolean foldConstants;
+    // shares the values of the ads parsed, if set
+    private ExprCache exprCache;
+    // the literals written, which expressions may refer to
+    private final List<CaseInsensitiveString> streamedNames = new ArrayList<CaseInsensitiveString>();
+    private final List<ExprTree> streamedTrees = new ArrayList<ExprTree>();
+    // indexed by atom id: the attributes set, streamed and referred to in the
+    // record numbered streamStamp
+    private int[] assignedStamps = new int[0];
+    private int[] streamedStamps = new int[0];
+    private int[] referencedStamps = new int[0];
+    private int streamStamp = 0;
+    // set if an attribute may be looked up by a name that is not an identifier
+    private boolean referencesAll;
+    // set if an attribute is set twice; the record is then parsed again into rootAd
+    private boolean assignedTwice;
+    // the plans of the record types written, compiled once per type
+    private final Map<ARecordType, RecordPlan> recordPlans = new IdentityHashMap<ARecordType, RecordPlan>();
+    private RecordPlan openPlan;
 
     public static final String KEY_OLD_FORMAT = "old-format";
     public static final String KEY_EVALUATE = "evaluate";
@@ -136,6 +217,16 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
     public static final String KEY_EXPR_PREFIX = "expr-prefix";
     public static final String KEY_EXPR_SUFFIX = "expr-suffix";
     public static final String KEY_EXPR_NAME_SUFFIX = "expr-name-suffix";
+    // comma separated names of the attributes to write to the record
+    public static final String KEY_PROJECTION = "projection";
+    // skip malformed records instead of failing
+    public static final String KEY_TOLERANT = "tolerant";
+    // write literal attributes while parsing
+    public static final String KEY_TRANSCODE = "transcode";
+    // replace constant subexpressions by their values while parsing
+    public static final String KEY_FOLD_CONSTANTS = "fold-constants";
+    // share identical attribute values between the ads parsed
+    public static final String KEY_EXPR_CACHE = "expr-cache";
 
     public ClassAdParser(ARecordType recordType) {
         this.recordType = recordType;
@@ -155,18 +246,25 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
     public void asterixParse(ClassAd classad, DataOutput out) throws IOException, AsterixException {
         // we assume the lexer source used here is a char array
         parseClassAd(currentSource, classad, false);
-        parseRecord(null, classad, out);
+        parseRecord((ARecordType) null, classad, out);
     }
 
     public void handleErrorParsing() throws IOException {
     }
 
     private boolean asterixParseClassAd(ClassAd ad) throws IOException {
+        return asterixParseClassAd(ad, currentSource);
+    }
+
+    private boolean asterixParseClassAd(ClassAd ad, LexerSource source) throws IOException {
         TokenType tt;
         ad.clear();
-        lexer.initialize(currentSource);
+        lexer.initialize(source);
         if ((tt = lexer.consumeToken()) != TokenType.LEX_OPEN_BOX) {
             handleErrorParsing();
+            if (recovering) {
+                fail(tt, "while parsing classad:  expected LEX_OPEN_BOX but got " + Lexer.strLexToken(tt));
+            }
             return false;
         }
         tt = lexer.peekToken();
@@ -187,53 +285,64 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
                 continue;
             }
             if (tt != TokenType.LEX_IDENTIFIER) {
-                throw new HyracksDataException(
+                return fail(tt,
                         "while parsing classad:  expected LEX_IDENTIFIER " + " but got " + Lexer.strLexToken(tt));
             }
 
             // consume the intermediate '='
             if ((tt = lexer.consumeToken()) != TokenType.LEX_BOUND_TO) {
-                throw new HyracksDataException(
+                return fail(tt,
                         "while parsing classad:  expected LEX_BOUND_TO " + " but got " + Lexer.strLexToken(tt));
             }
 
-            int positionBefore = lexer.getLexSource().getPosition();
-            isExpr = false;
-            // parse the expression
-            parseExpression(tree);
-            if (tree.getInnerTree() == null) {
-                handleErrorParsing();
-                throw new HyracksDataException("parse expression returned empty tree");
-            }
-
-            if ((!evaluateExpr || keepBoth) && isExpr && positionBefore >= 0) {
-                // we will store a string representation of the expression
-                int len = lexer.getLexSource().getPosition() - positionBefore;
-                // add it as it is to the classAd
-                Literal lit = literalPool.get();
-                Value exprVal = valuePool.get();
-                exprVal.setStringValue(exprPrefix
-                        + String.valueOf(lexer.getLexSource().getBuffer(), positionBefore, len) + exprSuffix);
-                Literal.createLiteral(lit, exprVal, NumberFactor.NO_FACTOR);
-                if (!evaluateExpr) {
-                    ad.insert(tv.toString(), lit);
-                } else {
-                    ad.insert(tv.toString() + exprFieldNameSuffix, lit);
+            CaseInsensitiveString atom = tv.getAtom();
+            String name = atom.get();
+            if (projection != null && !projection.contains(atom)) {
+                if (!skipAttribute(name)) {
+                    return false;
                 }
-            }
-            if (!isExpr || (evaluateExpr)) {
-                // insert the attribute into the classad
-                if (!ad.insert(tv.getStrValue().toString(), tree)) {
+            } else {
+                int positionBefore = lexer.getLexSource().getPosition();
+                isExpr = false;
+                // parse the expression
+                parseExpression(tree);
+                if (tree.getInnerTree() == null) {
                     handleErrorParsing();
-                    throw new HyracksDataException("Couldn't insert value to classad");
+                    return fail(lexer.peekToken(), "parse expression returned empty tree");
+                }
+
+                if ((!evaluateExpr || keepBoth) && isExpr && positionBefore >= 0) {
+                    // we will store a string representation of the expression
+                    int len = lexer.getLexSource().getPosition() - positionBefore;
+                    // add it as it is to the classAd
+                    Literal lit = literalPool.get();
+                    Value exprVal = valuePool.get();
+                    exprVal.setStringValue(
+                            exprPrefix + lexer.getLexSource().getString(positionBefore, len) + exprSuffix);
+                    Literal.createLiteral(lit, exprVal, NumberFactor.NO_FACTOR);
+                    if (!evaluateExpr) {
+                        insert(ad, atom, lit);
+                    } else {
+                        insert(ad, AtomTable.intern(name + exprFieldNameSuffix), lit);
+                    }
+                }
+                if (!isExpr || (evaluateExpr)) {
+                    if (foldConstants) {
+                        tree.setInnerTree(ConstantFolder.fold(tree.getInnerTree()));
+                    }
+                    // insert the attribute into the classad
+                    if (!insert(ad, atom, tree.getInnerTree())) {
+                        handleErrorParsing();
+                        throw new HyracksDataException("Couldn't insert value to classad");
+                    }
                 }
             }
             // the next token must be a ';' or a ']'
             tt = lexer.peekToken();
             if (tt != TokenType.LEX_SEMICOLON && tt != TokenType.LEX_CLOSE_BOX) {
                 handleErrorParsing();
-                throw new HyracksDataException("while parsing classad:  expected LEX_SEMICOLON or "
-                        + "LEX_CLOSE_BOX but got " + Lexer.strLexToken(tt));
+                return fail(tt, "while parsing classad:  expected LEX_SEMICOLON or " + "LEX_CLOSE_BOX but got "
+                        + Lexer.strLexToken(tt));
             }
 
             // Slurp up any extra semicolons. This does not duplicate the work
@@ -249,11 +358,382 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         return true;
     }
 
+    // Reads the source of old format lines from reader, or from
+    // buffer[0, limit) if reader is null
+    private void setOldFormatSource(Reader reader, char[] buffer, int limit) {
+        oldFormatSource = reader;
+        oldFormatBuffer = buffer;
+        oldFormatPosition = 0;
+        oldFormatScan = 0;
+        oldFormatLimit = limit;
+    }
+
+    // Finds the next line, without its terminator, in
+    // oldFormatBuffer[lineStart, lineEnd). Lines are read in place; when the
+    // source is a reader, the buffer is refilled, and grown for lines that
+    // don't fit, only once the current line has been used. Returns false at
+    // the end of the input.
+    private boolean nextOldFormatLine() throws IOException {
+        while (true) {
+            for (int i = oldFormatScan; i < oldFormatLimit; i++) {
+                if (oldFormatBuffer[i] == '\n') {
+                    lineStart = oldFormatPosition;
+                    lineEnd = i;
+                    if (lineEnd > lineStart && oldFormatBuffer[lineEnd - 1] == '\r') {
+                        // as BufferedReader.readLine() does, for records too
+                        lineEnd--;
+                    }
+                    oldFormatPosition = oldFormatScan = i + 1;
+                    return true;
+                }
+            }
+            oldFormatScan = oldFormatLimit;
+            int n = -1;
+            if (oldFormatSource != null) {
+                if (oldFormatPosition > 0) {
+                    System.arraycopy(oldFormatBuffer, oldFormatPosition, oldFormatBuffer, 0,
+                            oldFormatLimit - oldFormatPosition);
+                    oldFormatLimit -= oldFormatPosition;
+                    oldFormatScan -= oldFormatPosition;
+                    oldFormatPosition = 0;
+                }
+                if (oldFormatLimit == oldFormatBuffer.length) {
+                    oldFormatBuffer = Arrays.copyOf(oldFormatBuffer, oldFormatBuffer.length * 2);
+                }
+                n = oldFormatSource.read(oldFormatBuffer, oldFormatLimit, oldFormatBuffer.length - oldFormatLimit);
+            }
+            if (n < 0) {
+                if (oldFormatPosition == oldFormatLimit) {
+                    return false;
+                }
+                // the last line has no terminator
+                lineStart = oldFormatPosition;
+                lineEnd = oldFormatLimit;
+                oldFormatPosition = oldFormatScan = oldFormatLimit;
+                return true;
+            }
+            oldFormatLimit += n;
+        }
+    }
+
+    // Reads the lines of the next old format ad into rootAd. Blank lines
+    // separate ads. Returns false if there are no more ads.
+    // In tolerant mode, the lines after a line that can't be parsed are
+    // skipped up to the end of the ad, and the error is left to skipRecord().
+    private boolean parseOldFormatAd() throws IOException {
+        resetPools();
+        rootAd.clear();
+        int lines = 0;
+        while (nextOldFormatLine()) {
+            if (isBlank(oldFormatBuffer, lineStart, lineEnd)) {
+                if (lines == 0) {
+                    continue;
+                }
+                break;
+            }
+            if (lines++ == 0) {
+                startRecord(lineStart);
+            }
+            recordStart = lineStart;
+            if (!insertOldFormatLine(oldFormatBuffer, lineStart, lineEnd)) {
+                String message = "Couldn't parse expression in line: "
+                        + String.valueOf(oldFormatBuffer, lineStart, lineEnd - lineStart);
+                if (!recovering) {
+                    throw new HyracksDataException(message);
+                }
+                if (error == null) {
+                    error = ErrorKind.BAD_LINE;
+                    errorMessage = message;
+                    errorPosition = 0;
+                }
+                while (nextOldFormatLine() && !isBlank(oldFormatBuffer, lineStart, lineEnd)) {
+                }
+                break;
+            }
+        }
+        return lines > 0;
+    }
+
+    private static boolean isBlank(char[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Inserts the "name = value" line buffer[start, end) of an old format ad
+    // into rootAd, the way ClassAd.insert(String) does: values that are not
+    // literals are kept as the string of their text. The value is lexed in
+    // place with this parser's pools.
+    private boolean insertOldFormatLine(char[] buffer, int start, int end) throws IOException {
+        int pos = start;
+        while (pos < end && buffer[pos] != '=') {
+            pos++;
+        }
+        if (pos == end) {
+            return false;
+        }
+        int nameStart = start;
+        int nameEnd = pos;
+        while (nameEnd > nameStart && buffer[nameEnd - 1] == ' ') {
+            nameEnd--;
+        }
+        while (nameStart < nameEnd && buffer[nameStart] == ' ') {
+            nameStart++;
+        }
+        if (nameStart == nameEnd) {
+            return false;
+        }
+        if (buffer[nameStart] == '\'') {
+            // quoted names are rare; let the ad parse the line as a one-attribute ad
+            return rootAd.insert(String.valueOf(buffer, start, end - start));
+        }
+        CaseInsensitiveString name = AtomTable.intern(buffer, nameStart, nameEnd - nameStart);
+        int valueStart = pos + 1;
+        while (valueStart < end && buffer[valueStart] == ' ') {
+            valueStart++;
+        }
+        if (projection != null && !projection.contains(name)) {
+            if (!evaluateExpr) {
+                return true;
+            }
+            int valueEnd = end;
+            while (valueEnd > valueStart && buffer[valueEnd - 1] <= ' ') {
+                valueEnd--;
+            }
+            return referencedAd.insertLazy(name, String.valueOf(buffer, valueStart, valueEnd - valueStart));
+        }
+        lineSource.setNewSource(buffer, valueStart, end);
+        ExprTreeHolder tree = mutableExprPool.get();
+        if (lexer.initialize(lineSource)) {
+            parseExpression(tree, false);
+        }
+        if (tree.getInnerTree() == null) {
+            return false;
+        }
+        if (tree.getInnerTree().getKind() != NodeKind.LITERAL_NODE) {
+            Literal lit = literalPool.get();
+            lit.getValue().setStringValue(String.valueOf(buffer, valueStart, end - valueStart));
+            return rootAd.insert(name, lit);
+        }
+        return rootAd.insert(name, tree);
+    }
+
+    // Inserts attribute name into ad, sharing its value through the cache of
+    // the parser if it has one, or else of the ad
+    private boolean insertShared(ClassAd ad, CaseInsensitiveString name, ExprTree tree) throws HyracksDataException {
+        return exprCache == null ? ad.insert(name, tree) : ad.insert(name, tree, exprCache);
+    }
+
+    // Moves past the value of an attribute that is not projected. When
+    // expressions are evaluated, the text is kept in the ad rootAd is chained
+    // to, so that projected expressions can still refer to the attribute; it
+    // is only parsed if they do.
+    private boolean skipAttribute(String name) throws IOException {
+        if (evaluateExpr) {
+            String exprText = lexer.scanValue();
+            if (exprText == null || exprText.isEmpty()) {
+                handleErrorParsing();
+                return fail(exprText == null ? TokenType.LEX_END_OF_INPUT : lexer.peekToken(),
+                        "parse expression returned empty tree");
+            }
+            referencedAd.insertLazy(name, exprText);
+        } else if (!lexer.skipValue()) {
+            handleErrorParsing();
+            return fail(TokenType.LEX_END_OF_INPUT,
+                    "while parsing classad:  unexpected end of input in the value of " + name);
+        }
+        return true;
+    }
+
+    // Reports a parse error. While a record is parsed in tolerant mode, the
+    // first error of the record is kept and false is returned, so that the
+    // parse unwinds without an exception; otherwise the error is thrown.
+    private boolean fail(TokenType tt, String message) throws HyracksDataException {
+        if (!recovering) {
+            throw new HyracksDataException(message);
+        }
+        if (error == null) {
+            if (tt == TokenType.LEX_TOKEN_ERROR) {
+                error = ErrorKind.LEXICAL;
+            } else if (tt == TokenType.LEX_END_OF_INPUT) {
+                error = ErrorKind.TRUNCATED;
+            } else {
+                error = ErrorKind.SYNTAX;
+            }
+            errorMessage = message;
+            errorPosition = lexer.getLexSource() == null ? -1 : lexer.getLexSource().getPosition() - recordStart;
+        }
+        return false;
+    }
+
+    private void startRecord(int start) {
+        recovering = tolerant;
+        error = null;
+        recordStart = start;
+        errorStats.countRecord();
+    }
+
+    // Ends the record started by startRecord(). Returns true if it had an
+    // error, which can only happen in tolerant mode, and is to be skipped.
+    private boolean skipRecord() {
+        recovering = false;
+        if (error == null) {
+            return false;
+        }
+        errorStats.skip(error, errorPosition, errorMessage);
+        error = null;
+        errorMessage = null;
+        return true;
+    }
+
+    // Inserts attribute name of a top-level ad. While a record is transcoded,
+    // a literal is written to the record instead.
+    private boolean insert(ClassAd ad, CaseInsensitiveString name, ExprTree tree) throws IOException {
+        if (streamBuilder == null) {
+            return insertShared(ad, name, tree);
+        }
+        int id = name.getId();
+        growStamps(id);
+        if (assignedStamps[id] == streamStamp) {
+            // the last value wins, and the first may already be written
+            assignedTwice = true;
+        }
+        assignedStamps[id] = streamStamp;
+        if (assignedTwice || tree.getKind() != NodeKind.LITERAL_NODE) {
+            return insertShared(ad, name, tree);
+        }
+        try {
+            writeField(streamPlan, streamBuilder, streamNulls, streamValueBuffer, name, tree, ad);
+        } catch (AsterixException e) {
+            throw new HyracksDataException(e);
+        }
+        streamedStamps[id] = streamStamp;
+        streamedNames.add(name);
+        streamedTrees.add(tree);
+        return true;
+    }
+
+    private void referenced(CaseInsensitiveString name) {
+        if (name == null) {
+            referencesAll = true;
+            return;
+        }
+        growStamps(name.getId());
+        referencedStamps[name.getId()] = streamStamp;
+    }
+
+    private void growStamps(int id) {
+        if (id >= assignedStamps.length) {
+            int length = Math.max(AtomTable.size(), (id + 1) * 2);
+            assignedStamps = Arrays.copyOf(assignedStamps, length);
+            streamedStamps = Arrays.copyOf(streamedStamps, length);
+            referencedStamps = Arrays.copyOf(referencedStamps, length);
+        }
+    }
+
+    // Transcodes the new format record in buffer to out
+    private void transcode(char[] buffer, DataOutput out) throws IOException, AsterixException {
+        resetPools();
+        currentSource.setNewSource(buffer);
+        rootAd.reset();
+        startRecord(0);
+        if (!transcodeRecord(currentSource, out)) {
+            resetPools();
+            currentSource.setNewSource(buffer);
+            rootAd.reset();
+            asterixParseClassAd(rootAd);
+            if (error == null) {
+                parseRecord(recordType, rootAd, out);
+            }
+        }
+    }
+
+    private void transcode(byte[] buffer, int offset, int length, DataOutput out)
+            throws IOException, AsterixException {
+        resetPools();
+        byteArrayLexerSource.setNewSource(buffer, offset, length);
+        rootAd.reset();
+        startRecord(offset);
+        if (!transcodeRecord(byteArrayLexerSource, out)) {
+            resetPools();
+            byteArrayLexerSource.setNewSource(buffer, offset, length);
+            rootAd.reset();
+            asterixParseClassAd(rootAd, byteArrayLexerSource);
+            if (error == null) {
+                parseRecord(recordType, rootAd, out);
+            }
+        }
+    }
+
+    // Parses the record in source and writes it to out, writing literals as
+    // they are parsed. Expressions are written last, with the literals they
+    // refer to inserted into rootAd. Returns false, having written nothing,
+    // if the record sets an attribute twice: the last value wins, so it must
+    // be parsed into rootAd first. A record with an error is not written.
+    private boolean transcodeRecord(LexerSource source, DataOutput out) throws IOException, AsterixException {
+        if (++streamStamp == Integer.MAX_VALUE) {
+            streamStamp = 1;
+            Arrays.fill(assignedStamps, 0);
+            Arrays.fill(streamedStamps, 0);
+            Arrays.fill(referencedStamps, 0);
+        }
+        IARecordBuilder recBuilder = getRecordBuilder();
+        streamPlan = getRecordPlan(recordType);
+        streamNulls = initRecord(streamPlan, recBuilder);
+        streamValueBuffer = getTempBuffer();
+        streamedNames.clear();
+        streamedTrees.clear();
+        // the text of lazy and projected out values is not scanned for the
+        // names it refers to
+        referencesAll = lazy || projection != null;
+        assignedTwice = false;
+        streamBuilder = recBuilder;
+        try {
+            asterixParseClassAd(rootAd, source);
+        } finally {
+            streamBuilder = null;
+        }
+        if (error != null) {
+            return true;
+        }
+        if (assignedTwice) {
+            return false;
+        }
+        Map<CaseInsensitiveString, ExprTree> attrs = rootAd.getAttrList();
+        int expressions = attrs.size();
+        if (expressions > 0) {
+            CaseInsensitiveString[] names = attrs.keySet().toArray(new CaseInsensitiveString[expressions]);
+            for (int i = 0; i < streamedNames.size(); i++) {
+                CaseInsensitiveString name = streamedNames.get(i);
+                if (referencesAll || referencedStamps[name.getId()] == streamStamp) {
+                    rootAd.insert(name, streamedTrees.get(i), false);
+                }
+            }
+            rootAd.startCachingValues();
+            try {
+                for (CaseInsensitiveString name : names) {
+                    writeField(streamPlan, recBuilder, streamNulls, streamValueBuffer, name, attrs.get(name), rootAd);
+                }
+            } finally {
+                rootAd.stopCachingValues();
+            }
+        }
+        writeRecord(streamPlan, recBuilder, streamNulls, out);
+        return true;
+    }
+
     public void initialize(InputStream in, ARecordType recordType, boolean datasetRec)
             throws AsterixException, IOException {
         this.recordType = recordType;
         if (oldFormat) {
             this.oldFormatReader = new BufferedReader(new InputStreamReader(in));
+            if (oldFormatBuffer == null) {
+                oldFormatBuffer = new char[OLD_FORMAT_BUFFER_SIZE];
+            }
+            setOldFormatSource(oldFormatReader, oldFormatBuffer, 0);
         } else {
             this.recordReader = new AsterixSemiStructuredRecordReader('[', ']');
             recordReader.init(null);
@@ -280,32 +760,23 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
     public boolean parse(IAsterixRecord record, DataOutput out) throws AsterixException, IOException {
         try {
             if (oldFormat) {
-                int maxOffset = record.getSize();
-                rootAd.clear();
-                char[] buffer = record.getRecordCharBuffer();
-                aInt32.setValue(0);
-                String line = readLine(buffer, aInt32, maxOffset);
-                while (line != null) {
-                    if (line.trim().length() == 0) {
-                        if (rootAd.size() == 0) {
-                            line = readLine(buffer, aInt32, maxOffset);
-                            continue;
-                        }
-                        break;
-                    } else if (!rootAd.insert(line)) {
-                        throw new HyracksDataException("Couldn't parse expression in line: " + line);
-                    }
-                    line = readLine(buffer, aInt32, maxOffset);
-                }
-                if (rootAd.size() == 0) {
+                setOldFormatSource(null, record.getRecordCharBuffer(), record.getSize());
+                if (!parseOldFormatAd()) {
                     return false;
                 }
+            } else if (transcode) {
+                transcode(record.getRecordCharBuffer(), out);
+                return !skipRecord();
             } else {
                 resetPools();
                 currentSource.setNewSource(record.getRecordCharBuffer());
                 rootAd.reset();
+                startRecord(0);
                 asterixParseClassAd(rootAd);
             }
+            if (skipRecord()) {
+                return false;
+            }
             parseRecord(recordType, rootAd, out);
             return true;
         } catch (Exception e) {
@@ -315,34 +786,81 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
 
     public boolean parse(DataOutput out) throws AsterixException, IOException {
         try {
-            if (oldFormat) {
-                rootAd.clear();
-                String line = oldFormatReader.readLine();
-                while (line != null) {
-                    if (line.trim().length() == 0) {
-                        if (rootAd.size() == 0) {
-                            line = oldFormatReader.readLine();
-                            continue;
-                        }
-                        break;
-                    } else if (!rootAd.insert(line)) {
-                        throw new HyracksDataException("Couldn't parse expression in line: " + line);
+            if (transcode && !oldFormat) {
+                do {
+                    if (!recordReader.hasNext()) {
+                        return false;
                     }
-                    line = oldFormatReader.readLine();
-                }
-                if (rootAd.size() == 0) {
-                    return false;
+                    transcode(recordReader.next().getRecordCharBuffer(), out);
+                } while (skipRecord());
+                return true;
+            }
+            if (parseNextAd() == null) {
+                return false;
+            }
+            parseRecord(recordType, rootAd, out);
+            return true;
+        } catch (Exception e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    // Parses the next ad of the input set by initialize() and returns it as
+    // it is written to records, or null at the end of the input. In tolerant
+    // mode, records with errors are skipped. The ad is only valid until the
+    // next call.
+    ClassAd parseNextAd() throws IOException {
+        do {
+            if (oldFormat) {
+                if (!parseOldFormatAd()) {
+                    return null;
                 }
             } else {
                 if (!recordReader.hasNext()) {
-                    return false;
+                    return null;
                 }
                 resetPools();
                 IAsterixRecord record = recordReader.next();
                 currentSource.setNewSource(record.getRecordCharBuffer());
                 rootAd.reset();
+                startRecord(0);
                 asterixParseClassAd(rootAd);
             }
+        } while (skipRecord());
+        return rootAd;
+    }
+
+    // Parses the old format ad at buffer[offset, limit), after the blank lines
+    // before it, and moves offset past it. Returns null if only blank lines
+    // are left. The ad is only valid until the next call.
+    ClassAd parseOldFormatAd(char[] buffer, AMutableInt32 offset, int limit) throws IOException {
+        setOldFormatSource(null, buffer, limit);
+        oldFormatPosition = oldFormatScan = offset.getIntegerValue();
+        try {
+            return parseOldFormatAd() ? rootAd : null;
+        } finally {
+            offset.setValue(oldFormatPosition);
+        }
+    }
+
+    /**
+     * Parses a new-format record given as UTF-8 bytes, without decoding it to
+     * characters first, and writes it to out.
+     */
+    public boolean parse(byte[] buffer, int offset, int length, DataOutput out) throws AsterixException, IOException {
+        try {
+            if (transcode) {
+                transcode(buffer, offset, length, out);
+                return !skipRecord();
+            }
+            resetPools();
+            byteArrayLexerSource.setNewSource(buffer, offset, length);
+            rootAd.reset();
+            startRecord(offset);
+            asterixParseClassAd(rootAd, byteArrayLexerSource);
+            if (skipRecord()) {
+                return false;
+            }
             parseRecord(recordType, rootAd, out);
             return true;
         } catch (Exception e) {
@@ -358,19 +876,26 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         listBuilderPool.reset();
         recordBuilderPool.reset();
         abvsBuilderPool.reset();
-        mutableExprPool.reset();
-        tokenValuePool.reset();
-        classAdPool.reset();
-        exprListPool.reset();
-        valuePool.reset();
-        literalPool.reset();
-        bitSetPool.reset();
-        operationPool.reset();
-        attrRefPool.reset();
-    }
-
-    private ATypeTag getTargetTypeTag(ATypeTag expectedTypeTag, IAType aObjectType) throws IOException {
-        if (aObjectType == null) {
+        for (Pool<?> pool : pools) {
+            pool.reset();
+        }
+    }
+
+    /**
+     * The most objects each pool of this parser handed out for one record,
+     * by the name of the pool. Pools keep at most that many objects, and
+     * give back those that recent records didn't need.
+     */
+    public Map<String, Integer> getPoolHighWaterMarks() {
+        Map<String, Integer> marks = new LinkedHashMap<String, Integer>();
+        for (Pool<?> pool : pools) {
+            marks.put(pool.getClass().getSimpleName(), pool.getHighWaterMark());
+        }
+        return marks;
+    }
+
+    private static ATypeTag getTargetTypeTag(ATypeTag expectedTypeTag, IAType aObjectType) throws IOException {
+        if (aObjectType == null || aObjectType.getTypeTag() == ATypeTag.ANY) {
             return expectedTypeTag;
         }
         if (aObjectType.getTypeTag() != ATypeTag.UNION) {
@@ -394,67 +919,151 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         return null;
     }
 
+    // The plan of recType, compiled on first use
+    private RecordPlan getRecordPlan(ARecordType recType) {
+        if (recType == null) {
+            if (openPlan == null) {
+                openPlan = new RecordPlan(null);
+            }
+            return openPlan;
+        }
+        RecordPlan plan = recordPlans.get(recType);
+        if (plan == null) {
+            plan = new RecordPlan(recType);
+            recordPlans.put(recType, plan);
+        }
+        return plan;
+    }
+
+    // The plan of field name of the records of plan, compiled on first use
+    private FieldPlan getFieldPlan(RecordPlan plan, CaseInsensitiveString name) throws IOException {
+        FieldPlan field = plan.fields.get(name);
+        if (field != null) {
+            return field;
+        }
+        ARecordType recType = plan.type;
+        String fldName = name.get();
+        int fieldId = recType == null ? -1 : recType.getFieldIndex(fldName);
+        if (fieldId < 0) {
+            if (recType != null && !recType.isOpen()) {
+                throw new HyracksDataException("This record is closed, you can not add extra fields !!");
+            }
+            ArrayBackedValueStorage nameBuffer = new ArrayBackedValueStorage();
+            aStringFieldName.setValue(fldName);
+            stringSerde.serialize(aStringFieldName, nameBuffer.getDataOutput());
+            field = new FieldPlan(-1, nameBuffer, false, compileValuePlan(null));
+        } else {
+            IAType fieldType = recType.getFieldTypes()[fieldId];
+            field = new FieldPlan(fieldId, null, NonTaggedFormatUtil.isOptional(fieldType),
+                    compileValuePlan(fieldType));
+        }
+        plan.fields.put(name.isAtom() ? name : AtomTable.intern(fldName), field);
+        return field;
+    }
+
+    // Resolves how each kind of value is written as type
+    private static ValuePlan compileValuePlan(IAType type) throws IOException {
+        ValuePlan plan = new ValuePlan(type);
+        plan.tags[ValueType.ABSOLUTE_TIME_VALUE.ordinal()] = checkType(ATypeTag.DATETIME, type) ? ATypeTag.DATETIME
+                : null;
+        plan.tags[ValueType.BOOLEAN_VALUE.ordinal()] = checkType(ATypeTag.BOOLEAN, type) ? ATypeTag.BOOLEAN : null;
+        if (checkType(ATypeTag.RECORD, type)) {
+            plan.tags[ValueType.CLASSAD_VALUE.ordinal()] = ATypeTag.RECORD;
+            plan.recordType = getComplexType(type, ATypeTag.RECORD);
+        }
+        ATypeTag stringTag = checkType(ATypeTag.STRING, type) ? ATypeTag.STRING : null;
+        plan.tags[ValueType.ERROR_VALUE.ordinal()] = stringTag;
+        plan.tags[ValueType.STRING_VALUE.ordinal()] = stringTag;
+        plan.tags[ValueType.UNDEFINED_VALUE.ordinal()] = stringTag;
+        // a double field accepts integers, which are promoted
+        if (getTargetTypeTag(ATypeTag.INT64, type) == ATypeTag.DOUBLE) {
+            plan.tags[ValueType.INTEGER_VALUE.ordinal()] = ATypeTag.DOUBLE;
+        } else if (checkType(ATypeTag.INT64, type)) {
+            plan.tags[ValueType.INTEGER_VALUE.ordinal()] = ATypeTag.INT64;
+        }
+        ATypeTag listTag = null;
+        if (checkType(ATypeTag.UNORDEREDLIST, type)) {
+            listTag = ATypeTag.UNORDEREDLIST;
+        } else if (checkType(ATypeTag.ORDEREDLIST, type)) {
+            listTag = ATypeTag.ORDEREDLIST;
+        }
+        if (listTag != null) {
+            plan.tags[ValueType.LIST_VALUE.ordinal()] = listTag;
+            plan.tags[ValueType.SLIST_VALUE.ordinal()] = listTag;
+            plan.listType = getComplexType(type, listTag);
+        }
+        if (checkType(ATypeTag.DOUBLE, type)) {
+            plan.tags[ValueType.REAL_VALUE.ordinal()] = ATypeTag.DOUBLE;
+        } else if (checkType(ATypeTag.INT32, type)) {
+            plan.tags[ValueType.REAL_VALUE.ordinal()] = ATypeTag.INT32;
+        } else if (checkType(ATypeTag.INT64, type)) {
+            plan.tags[ValueType.REAL_VALUE.ordinal()] = ATypeTag.INT64;
+        }
+        plan.tags[ValueType.RELATIVE_TIME_VALUE.ordinal()] = checkType(ATypeTag.DURATION, type) ? ATypeTag.DURATION
+                : null;
+        return plan;
+    }
+
     private void parseRecord(ARecordType recType, ClassAd pAd, DataOutput out) throws IOException, AsterixException {
+        parseRecord(getRecordPlan(recType), pAd, out);
+    }
+
+    private void parseRecord(RecordPlan plan, ClassAd pAd, DataOutput out) throws IOException, AsterixException {
         ArrayBackedValueStorage fieldValueBuffer = getTempBuffer();
-        ArrayBackedValueStorage fieldNameBuffer = getTempBuffer();
         IARecordBuilder recBuilder = getRecordBuilder();
+        BitSet nulls = initRecord(plan, recBuilder);
+        Map<CaseInsensitiveString, ExprTree> attrs = pAd.getAttrList();
+        // an attribute that others refer to is evaluated once for the record
+        pAd.startCachingValues();
+        try {
+            for (Entry<CaseInsensitiveString, ExprTree> entry : attrs.entrySet()) {
+                writeField(plan, recBuilder, nulls, fieldValueBuffer, entry.getKey(), entry.getValue(), pAd);
+            }
+        } finally {
+            pAd.stopCachingValues();
+        }
+        writeRecord(plan, recBuilder, nulls, out);
+    }
+
+    // Resets recBuilder for a record of plan. Returns the set of the closed
+    // fields written, if the type is known.
+    private BitSet initRecord(RecordPlan plan, IARecordBuilder recBuilder) {
         BitSet nulls = null;
-        if (recType != null) {
+        if (plan.type != null) {
             nulls = getBitSet();
-            recBuilder.reset(recType);
-        } else {
-            recBuilder.reset(null);
         }
+        recBuilder.reset(plan.type);
         recBuilder.init();
-        Boolean openRecordField = false;
-        int fieldId = 0;
-        IAType fieldType = null;
+        return nulls;
+    }
 
-        // new stuff
-        Map<CaseInsensitiveString, ExprTree> attrs = pAd.getAttrList();
-        for (Entry<CaseInsensitiveString, ExprTree> entry : attrs.entrySet()) {
-            // reset buffers
-            fieldNameBuffer.reset();
-            fieldValueBuffer.reset();
-            // take care of field name
-            String fldName = entry.getKey().get();
-            if (recType != null) {
-                fieldId = recBuilder.getFieldId(fldName);
-                if (fieldId < 0 && !recType.isOpen()) {
-                    throw new HyracksDataException("This record is closed, you can not add extra fields !!");
-                } else if (fieldId < 0 && recType.isOpen()) {
-                    aStringFieldName.setValue(fldName);
-                    stringSerde.serialize(aStringFieldName, fieldNameBuffer.getDataOutput());
-                    openRecordField = true;
-                    fieldType = null;
-                } else {
-                    // a closed field
-                    nulls.set(fieldId);
-                    fieldType = recType.getFieldTypes()[fieldId];
-                    openRecordField = false;
-                }
-            } else {
-                aStringFieldName.setValue(fldName);
-                stringSerde.serialize(aStringFieldName, fieldNameBuffer.getDataOutput());
-                openRecordField = true;
-                fieldType = null;
+    // Adds the field name, whose expression in pAd is tree, to recBuilder
+    private void writeField(RecordPlan plan, IARecordBuilder recBuilder, BitSet nulls,
+            ArrayBackedValueStorage fieldValueBuffer, CaseInsensitiveString name, ExprTree tree, ClassAd pAd)
+            throws IOException, AsterixException {
+        FieldPlan field = getFieldPlan(plan, name);
+        fieldValueBuffer.reset();
+        if (field.fieldId >= 0) {
+            nulls.set(field.fieldId);
+        }
+        // add field value to value buffer
+        writeFieldValueToBuffer(field.value, fieldValueBuffer.getDataOutput(), name.get(), tree, pAd);
+        if (field.fieldId < 0) {
+            if (fieldValueBuffer.getByteArray()[0] != ATypeTag.NULL.serialize()) {
+                recBuilder.addField(field.name, fieldValueBuffer);
             }
-
-            // add field value to value buffer
-            writeFieldValueToBuffer(fieldType, fieldValueBuffer.getDataOutput(), fldName, entry.getValue(), pAd);
-            if (openRecordField) {
-                if (fieldValueBuffer.getByteArray()[0] != ATypeTag.NULL.serialize()) {
-                    recBuilder.addField(fieldNameBuffer, fieldValueBuffer);
-                }
-            } else if (NonTaggedFormatUtil.isOptional(fieldType)) {
-                if (fieldValueBuffer.getByteArray()[0] != ATypeTag.NULL.serialize()) {
-                    recBuilder.addField(fieldId, fieldValueBuffer);
-                }
-            } else {
-                recBuilder.addField(fieldId, fieldValueBuffer);
+        } else if (field.optional) {
+            if (fieldValueBuffer.getByteArray()[0] != ATypeTag.NULL.serialize()) {
+                recBuilder.addField(field.fieldId, fieldValueBuffer);
             }
+        } else {
+            recBuilder.addField(field.fieldId, fieldValueBuffer);
         }
+    }
 
+    private void writeRecord(RecordPlan plan, IARecordBuilder recBuilder, BitSet nulls, DataOutput out)
+            throws IOException, AsterixException {
+        ARecordType recType = plan.type;
         if (recType != null) {
             int nullableFieldId = checkNullConstraints(recType, nulls);
             if (nullableFieldId != -1) {
@@ -466,143 +1075,112 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
     }
 
     // The only method left
-    private void writeFieldValueToBuffer(IAType fieldType, DataOutput out, String name, ExprTree tree, ClassAd pAd)
+    private void writeFieldValueToBuffer(ValuePlan plan, DataOutput out, String name, ExprTree tree, ClassAd pAd)
             throws IOException, AsterixException {
-        Value val;
-        switch (tree.getKind()) {
-            case ATTRREF_NODE:
-            case CLASSAD_NODE:
-            case EXPR_ENVELOPE:
-            case EXPR_LIST_NODE:
-            case FN_CALL_NODE:
-            case OP_NODE:
-                val = valuePool.get();
-                if (pAd.evaluateAttr(name, val)) {
-
-                } else {
-                    // just write the expr
-                    val = ((Literal) pAd.getAttrList().get(name + "Expr")).getValue();
-                }
+        Value val = getFieldValue(name, tree, pAd, valuePool.get());
+        ATypeTag tag = plan.getTag(val.getValueType());
+        if (tag == null) {
+            if (plan.type == null || val.getValueType() == ValueType.NULL_VALUE) {
+                throw new HyracksDataException("unknown data type " + val.getValueType());
+            }
+            throw new HyracksDataException(mismatchErrorMessage + plan.type.getTypeTag());
+        }
+        switch (tag) {
+            case DATETIME:
+                parseDateTime(val, out);
                 break;
-            case LITERAL_NODE:
-                val = ((Literal) tree).getValue();
+            case BOOLEAN:
+                booleanSerde.serialize(val.getBoolVal() ? ABoolean.TRUE : ABoolean.FALSE, out);
                 break;
-            default:
-                throw new HyracksDataException("Unknown Expression type detected: " + tree.getKind());
-        }
-
-        switch (val.getValueType()) {
-            case ABSOLUTE_TIME_VALUE:
-                if (checkType(ATypeTag.DATETIME, fieldType)) {
-                    parseDateTime(val, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
+            case RECORD:
+                if (plan.record == null) {
+                    plan.record = getRecordPlan((ARecordType) plan.recordType);
                 }
+                parseRecord(plan.record, val.getClassadVal(), out);
                 break;
-            case BOOLEAN_VALUE:
-                if (checkType(ATypeTag.BOOLEAN, fieldType)) {
-                    booleanSerde.serialize(val.getBoolVal() ? ABoolean.TRUE : ABoolean.FALSE, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
-                }
+            case STRING:
+                parseString(val, out);
                 break;
-            case CLASSAD_VALUE:
-                if (checkType(ATypeTag.RECORD, fieldType)) {
-                    IAType objectType = getComplexType(fieldType, ATypeTag.RECORD);
-                    ClassAd classad = val.getClassadVal();
-                    parseRecord((ARecordType) objectType, classad, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
+            case UNORDEREDLIST:
+            case ORDEREDLIST:
+                if (plan.items == null) {
+                    plan.items = compileValuePlan(
+                            plan.listType == null ? null : ((AbstractCollectionType) plan.listType).getItemType());
                 }
-                break;
-            case ERROR_VALUE:
-            case STRING_VALUE:
-            case UNDEFINED_VALUE:
-                if (checkType(ATypeTag.STRING, fieldType)) {
-                    parseString(val, out);
+                if (tag == ATypeTag.UNORDEREDLIST) {
+                    parseUnorderedList((AUnorderedListType) plan.listType, plan.items, val, out);
                 } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
+                    parseOrderedList((AOrderedListType) plan.listType, plan.items, val, out);
                 }
                 break;
-            case INTEGER_VALUE:
-                if (checkType(ATypeTag.INT64, fieldType)) {
-                    aInt64.setValue(val.getLongVal());
-                    int64Serde.serialize(aInt64, out);
-                } else if (checkType(ATypeTag.DOUBLE, fieldType)) {
-                    aDouble.setValue((double) val.getLongVal());
-                    doubleSerde.serialize(aDouble, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
-                }
+            case DOUBLE:
+                aDouble.setValue(val.getValueType() == ValueType.INTEGER_VALUE ? (double) val.getLongVal()
+                        : val.getDoubleVal());
+                doubleSerde.serialize(aDouble, out);
                 break;
-            case LIST_VALUE:
-            case SLIST_VALUE:
-                IAType objectType;
-                if (checkType(ATypeTag.UNORDEREDLIST, fieldType)) {
-                    objectType = getComplexType(fieldType, ATypeTag.UNORDEREDLIST);
-                    parseUnorderedList((AUnorderedListType) objectType, val, out);
-                } else if (checkType(ATypeTag.ORDEREDLIST, fieldType)) {
-                    objectType = getComplexType(fieldType, ATypeTag.ORDEREDLIST);
-                    parseOrderedList((AOrderedListType) objectType, val, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
-                }
+            case INT32:
+                aInt32.setValue((int) val.getDoubleVal());
+                int32Serde.serialize(aInt32, out);
                 break;
-            case REAL_VALUE:
-                if (checkType(ATypeTag.DOUBLE, fieldType)) {
-                    aDouble.setValue(val.getDoubleVal());
-                    doubleSerde.serialize(aDouble, out);
-                } else if (checkType(ATypeTag.INT32, fieldType)) {
-                    aInt32.setValue((int) val.getDoubleVal());
-                    int32Serde.serialize(aInt32, out);
-                } else if (checkType(ATypeTag.INT64, fieldType)) {
-                    aInt64.setValue((long) val.getDoubleVal());
-                    int64Serde.serialize(aInt64, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
-                }
+            case INT64:
+                aInt64.setValue(val.getValueType() == ValueType.INTEGER_VALUE ? val.getLongVal()
+                        : (long) val.getDoubleVal());
+                int64Serde.serialize(aInt64, out);
                 break;
-            case RELATIVE_TIME_VALUE:
-                if (checkType(ATypeTag.DURATION, fieldType)) {
-                    parseDuration(val, out);
-                } else {
-                    throw new HyracksDataException(mismatchErrorMessage + fieldType.getTypeTag());
-                }
+            case DURATION:
+                parseDuration(val, out);
                 break;
             default:
                 throw new HyracksDataException("unknown data type " + val.getValueType());
         }
     }
 
-    private void parseOrderedList(AOrderedListType oltype, Value listVal, DataOutput out)
+    // Returns the value written for attribute name of pAd, whose expression is
+    // tree: expressions are evaluated, and written as their text if that
+    // fails. val is used for the result of the evaluation.
+    static Value getFieldValue(String name, ExprTree tree, ClassAd pAd, Value val) throws HyracksDataException {
+        switch (tree.getKind()) {
+            case ATTRREF_NODE:
+            case CLASSAD_NODE:
+            case EXPR_ENVELOPE:
+            case EXPR_LIST_NODE:
+            case FN_CALL_NODE:
+            case OP_NODE:
+                if (pAd.evaluateAttr(name, val)) {
+
+                } else {
+                    // just write the expr
+                    val = ((Literal) pAd.getAttrList().get(name + "Expr").self()).getValue();
+                }
+                return val;
+            case LITERAL_NODE:
+                return ((Literal) tree.self()).getValue();
+            default:
+                throw new HyracksDataException("Unknown Expression type detected: " + tree.getKind());
+        }
+    }
+
+    private void parseOrderedList(AOrderedListType oltype, ValuePlan items, Value listVal, DataOutput out)
             throws IOException, AsterixException {
         ArrayBackedValueStorage itemBuffer = getTempBuffer();
         OrderedListBuilder orderedListBuilder = (OrderedListBuilder) getOrderedListBuilder();
-        IAType itemType = null;
-        if (oltype != null) {
-            itemType = oltype.getItemType();
-        }
         orderedListBuilder.reset(oltype);
         for (ExprTree tree : listVal.getListVal().getExprList()) {
             itemBuffer.reset();
-            writeFieldValueToBuffer(itemType, itemBuffer.getDataOutput(), null, tree, null);
+            writeFieldValueToBuffer(items, itemBuffer.getDataOutput(), null, tree, null);
             orderedListBuilder.addItem(itemBuffer);
         }
         orderedListBuilder.write(out, true);
     }
 
-    private void parseUnorderedList(AUnorderedListType uoltype, Value listVal, DataOutput out)
+    private void parseUnorderedList(AUnorderedListType uoltype, ValuePlan items, Value listVal, DataOutput out)
             throws IOException, AsterixException {
         ArrayBackedValueStorage itemBuffer = getTempBuffer();
         UnorderedListBuilder unorderedListBuilder = (UnorderedListBuilder) getUnorderedListBuilder();
-        IAType itemType = null;
-        if (uoltype != null) {
-            itemType = uoltype.getItemType();
-        }
         unorderedListBuilder.reset(uoltype);
         for (ExprTree tree : listVal.getListVal().getExprList()) {
             itemBuffer.reset();
-            writeFieldValueToBuffer(itemType, itemBuffer.getDataOutput(), null, tree, null);
+            writeFieldValueToBuffer(items, itemBuffer.getDataOutput(), null, tree, null);
             unorderedListBuilder.addItem(itemBuffer);
         }
         unorderedListBuilder.write(out, true);
@@ -661,7 +1239,7 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
 
     private String mismatchErrorMessage = "Mismatch Type, expecting a value of type ";
 
-    private boolean checkType(ATypeTag expectedTypeTag, IAType aObjectType) throws IOException {
+    private static boolean checkType(ATypeTag expectedTypeTag, IAType aObjectType) throws IOException {
         return getTargetTypeTag(expectedTypeTag, aObjectType) != null;
     }
 
@@ -843,6 +1421,35 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         return success;
     }
 
+    /**
+     * Parse a ClassAd directly from UTF-8 encoded bytes
+     * 
+     * @param buffer
+     *            Buffer containing the UTF-8 representation of the classad.
+     * @param offset
+     *            Offset of the first byte of the classad in buffer.
+     * @param length
+     *            Number of bytes available for parsing.
+     * @param classad
+     *            The classad to be populated
+     * @param full
+     *            If this parameter is true, the parse is considered to succeed
+     *            only if the ClassAd was parsed successfully and no other
+     *            tokens follow the ClassAd.
+     * @return true on success, false on failure
+     * @throws IOException
+     */
+    public boolean parseClassAd(byte[] buffer, int offset, int length, ClassAd classad, boolean full)
+            throws IOException {
+        byteArrayLexerSource.setNewSource(buffer, offset, length);
+        return parseClassAd(byteArrayLexerSource, classad, full);
+    }
+
+    public boolean parseClassAd(ByteBuffer buffer, ClassAd classad, boolean full) throws IOException {
+        byteArrayLexerSource.setNewSource(buffer);
+        return parseClassAd(byteArrayLexerSource, classad, full);
+    }
+
     public boolean parseNext(ClassAd classad) throws IOException {
         return parseClassAd(currentSource, classad, false);
     }
@@ -950,7 +1557,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
             ExprTreeHolder treeR = mutableExprPool.get();
             parseExpression(treeM);
             if ((tt = lexer.consumeToken()) != TokenType.LEX_COLON) {
-                throw new HyracksDataException("expected LEX_COLON, but got " + Lexer.strLexToken(tt));
+                tree.setInnerTree(null);
+                return fail(tt, "expected LEX_COLON, but got " + Lexer.strLexToken(tt));
             }
             parseExpression(treeR);
             if (treeL.getInnerTree() != null && treeM.getInnerTree() != null && treeR.getInnerTree() != null) {
@@ -964,7 +1572,7 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         }
         // if a full parse was requested, ensure that input is exhausted
         if (full && (lexer.consumeToken() != TokenType.LEX_END_OF_INPUT)) {
-            throw new HyracksDataException(
+            return fail(tt,
                     "expected LEX_END_OF_INPUT on full parse, but got " + String.valueOf(Lexer.strLexToken(tt)));
         }
         return true;
@@ -1340,7 +1948,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
             TokenValue tv = tokenValuePool.get();
             lexer.consumeToken();
             if (tt == TokenType.LEX_OPEN_BOX) {
-                // subscript operation
+                // subscript operation; an ad may be subscripted by any name
+                referencesAll = true;
                 parseExpression(treeR);
                 if (treeL.getInnerTree() != null && treeR.getInnerTree() != null) {
                     Operation newTree = operationPool.get();
@@ -1355,9 +1964,13 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
             } else if (tt == TokenType.LEX_SELECTION) {
                 // field selection operation
                 if ((tt = lexer.consumeToken(tv)) != TokenType.LEX_IDENTIFIER) {
-                    throw new HyracksDataException("second argument of selector must be an " + "identifier (got"
+                    tree.setInnerTree(null);
+                    return fail(tt, "second argument of selector must be an " + "identifier (got"
                             + String.valueOf(Lexer.strLexToken(tt)) + ")");
                 }
+                if (streamBuilder != null) {
+                    referenced(tv.getAtom());
+                }
                 AttributeReference newTree = attrRefPool.get();
                 AttributeReference.createAttributeReference(treeL, tv.getStrValue(), false, newTree);
                 tree.setInnerTree(newTree);
@@ -1398,10 +2011,17 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
                     if (shouldEvaluateAtParseTime(tv.getStrValue().toString(), argList)) {
                         tree.setInnerTree(evaluateFunction(tv.getStrValue().toString(), argList));
                     } else {
+                        if (streamBuilder != null && tv.getStrValue().toString().equalsIgnoreCase("eval")) {
+                            // the expression may refer to anything
+                            referencesAll = true;
+                        }
                         tree.setInnerTree(FunctionCall.createFunctionCall(tv.getStrValue().toString(), argList));
                     }
                 } else {
                     // I don't think this is ever hit
+                    if (streamBuilder != null) {
+                        referenced(tv.getAtom());
+                    }
                     tree.setInnerTree(AttributeReference.createAttributeReference(null, tv.getStrValue(), false));
                 }
                 return (tree.getInnerTree() != null);
@@ -1409,13 +2029,15 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
                 isExpr = true;
                 lexer.consumeToken();
                 if ((tt = lexer.consumeToken(tv)) == TokenType.LEX_IDENTIFIER) {
+                    if (streamBuilder != null) {
+                        referenced(tv.getAtom());
+                    }
                     // the boolean final arg signifies that reference is absolute
                     tree.setInnerTree(AttributeReference.createAttributeReference(null, tv.getStrValue(), true));
                     return (tree.size() != 0);
                 }
                 // not an identifier following the '.'
-                throw new HyracksDataException(
-                        "need identifier in selection expression (got" + Lexer.strLexToken(tt) + ")");
+                return fail(tt, "need identifier in selection expression (got" + Lexer.strLexToken(tt) + ")");
                 // parenthesized expression
             case LEX_OPEN_PAREN: {
                 isExpr = true;
@@ -1428,9 +2050,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
                 }
 
                 if ((tt = lexer.consumeToken()) != TokenType.LEX_CLOSE_PAREN) {
-                    throw new HyracksDataException("exptected LEX_CLOSE_PAREN, but got " + Lexer.strLexToken(tt));
-                    // tree.resetExprTree(null);
-                    // return false;
+                    tree.resetExprTree(null);
+                    return fail(tt, "exptected LEX_CLOSE_PAREN, but got " + Lexer.strLexToken(tt));
                 }
                 // assume make operation will return a new tree
                 tree.setInnerTree(Operation.createOperation(Operation.OpKind_PARENTHESES_OP, treeL));
@@ -1536,8 +2157,7 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         TokenType tt;
         argList.clear();
         if ((tt = lexer.consumeToken()) != TokenType.LEX_OPEN_PAREN) {
-            throw new HyracksDataException("expected LEX_OPEN_PAREN but got " + String.valueOf(Lexer.strLexToken(tt)));
-            // return false;
+            return fail(tt, "expected LEX_OPEN_PAREN but got " + String.valueOf(Lexer.strLexToken(tt)));
         }
         tt = lexer.peekToken();
         ExprTreeHolder tree = mutableExprPool.get();
@@ -1558,9 +2178,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
                 lexer.consumeToken();
             else if (tt != TokenType.LEX_CLOSE_PAREN) {
                 argList.clear();
-                throw new HyracksDataException(
+                return fail(tt,
                         "expected LEX_COMMA or LEX_CLOSE_PAREN but got " + String.valueOf(Lexer.strLexToken(tt)));
-                // return false;
             }
         }
         lexer.consumeToken();
@@ -1602,33 +2221,46 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
                 continue;
             }
             if (tt != TokenType.LEX_IDENTIFIER) {
-                throw new HyracksDataException(
+                return fail(tt,
                         "while parsing classad:  expected LEX_IDENTIFIER " + " but got " + Lexer.strLexToken(tt));
             }
 
             // consume the intermediate '='
             if ((tt = lexer.consumeToken()) != TokenType.LEX_BOUND_TO) {
-                throw new HyracksDataException(
+                return fail(tt,
                         "while parsing classad:  expected LEX_BOUND_TO " + " but got " + Lexer.strLexToken(tt));
             }
 
-            isExpr = false;
-            // parse the expression
-            parseExpression(tree);
-            if (tree.getInnerTree() == null) {
-                throw new HyracksDataException("parse expression returned empty tree");
-            }
+            if (lazy) {
+                // only find where the value ends; it is parsed when it is used
+                String exprText = lexer.scanValue();
+                if (exprText == null || exprText.isEmpty()) {
+                    return fail(exprText == null ? TokenType.LEX_END_OF_INPUT : lexer.peekToken(),
+                            "parse expression returned empty tree");
+                }
+                ad.insertLazy(tv.getAtom(), exprText);
+            } else {
+                isExpr = false;
+                // parse the expression
+                parseExpression(tree);
+                if (tree.getInnerTree() == null) {
+                    return fail(lexer.peekToken(), "parse expression returned empty tree");
+                }
+                if (foldConstants) {
+                    tree.setInnerTree(ConstantFolder.fold(tree.getInnerTree()));
+                }
 
-            // insert the attribute into the classad
-            if (!ad.insert(tv.getStrValue().toString(), tree)) {
-                throw new HyracksDataException("Couldn't insert value to classad");
+                // insert the attribute into the classad
+                if (!insertShared(ad, tv.getAtom(), tree)) {
+                    throw new HyracksDataException("Couldn't insert value to classad");
+                }
             }
 
             // the next token must be a ';' or a ']'
             tt = lexer.peekToken();
             if (tt != TokenType.LEX_SEMICOLON && tt != TokenType.LEX_CLOSE_BOX) {
-                throw new HyracksDataException("while parsing classad:  expected LEX_SEMICOLON or "
-                        + "LEX_CLOSE_BOX but got " + Lexer.strLexToken(tt));
+                return fail(tt, "while parsing classad:  expected LEX_SEMICOLON or " + "LEX_CLOSE_BOX but got "
+                        + Lexer.strLexToken(tt));
             }
 
             // Slurp up any extra semicolons. This does not duplicate the work
@@ -1644,8 +2276,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         lexer.consumeToken();
         // if a full parse was requested, ensure that input is exhausted
         if (full && (lexer.consumeToken() != TokenType.LEX_END_OF_INPUT)) {
-            throw new HyracksDataException("while parsing classad:  expected LEX_END_OF_INPUT for "
-                    + "full parse but got " + Lexer.strLexToken(tt));
+            return fail(tt, "while parsing classad:  expected LEX_END_OF_INPUT for " + "full parse but got "
+                    + Lexer.strLexToken(tt));
         }
         return true;
     }
@@ -1663,16 +2295,15 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         ExprList loe = new ExprList();
 
         if ((tt = lexer.consumeToken()) != TokenType.LEX_OPEN_BRACE) {
-            throw new HyracksDataException(
+            return fail(tt,
                     "while parsing expression list:  expected LEX_OPEN_BRACE" + " but got " + Lexer.strLexToken(tt));
-            // return false;
         }
         tt = lexer.peekToken();
         while (tt != TokenType.LEX_CLOSE_BRACE) {
             // parse the expression
             parseExpression(tree);
             if (tree.getInnerTree() == null) {
-                throw new HyracksDataException("while parsing expression list:  expected "
+                return fail(lexer.peekToken(), "while parsing expression list:  expected "
                         + "LEX_CLOSE_BRACE or LEX_COMMA but got " + Lexer.strLexToken(tt));
             }
 
@@ -1684,8 +2315,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
             if (tt == TokenType.LEX_COMMA)
                 lexer.consumeToken();
             else if (tt != TokenType.LEX_CLOSE_BRACE) {
-                throw new HyracksDataException("while parsing expression list:  expected "
-                        + "LEX_CLOSE_BRACE or LEX_COMMA but got " + Lexer.strLexToken(tt));
+                return fail(tt, "while parsing expression list:  expected " + "LEX_CLOSE_BRACE or LEX_COMMA but got "
+                        + Lexer.strLexToken(tt));
             }
         }
 
@@ -1695,8 +2326,8 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         // if a full parse was requested, ensure that input is exhausted
         if (full && (lexer.consumeToken() != TokenType.LEX_END_OF_INPUT)) {
             list.clear();
-            throw new HyracksDataException("while parsing expression list:  expected "
-                    + "LEX_END_OF_INPUT for full parse but got " + Lexer.strLexToken(tt));
+            return fail(tt, "while parsing expression list:  expected " + "LEX_END_OF_INPUT for full parse but got "
+                    + Lexer.strLexToken(tt));
         }
         return true;
     }
@@ -1784,6 +2415,84 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         resetPools();
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * In lazy mode, parseClassAd only records the text of each attribute value;
+     * the value is parsed when the attribute is first looked up, evaluated or
+     * iterated over. Syntax errors in a value then show up as an error value
+     * instead of failing the parse.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isTolerant() {
+        return tolerant;
+    }
+
+    /**
+     * In tolerant mode, the parse(...) methods skip a record that has a parse
+     * error instead of throwing: parse(DataOutput) goes on to the next record,
+     * the others return false. The error is not turned into an exception; it
+     * is counted in getErrorStats(). Errors in converting a parsed ad to a
+     * record still throw.
+     */
+    public void setTolerant(boolean tolerant) {
+        this.tolerant = tolerant;
+    }
+
+    public boolean isTranscoding() {
+        return transcode;
+    }
+
+    /**
+     * When transcoding, the parse(...) methods write each literal attribute of
+     * a new format record as soon as it is parsed, without putting it in an
+     * ad; only expressions, and the literals they refer to, are put in one to
+     * be evaluated. The fields of a record may then be written in a different
+     * order. Old format records are not transcoded.
+     */
+    public void setTranscoding(boolean transcode) {
+        this.transcode = transcode;
+    }
+
+    public boolean isFoldingConstants() {
+        return foldConstants;
+    }
+
+    /**
+     * When folding constants, the parse methods replace the constant parts of
+     * each attribute value of a new format ad, such as 1024 * 4 or
+     * strcat("a", "b"), by their values before putting it in the ad (see
+     * ConstantFolder). The text kept for an expression with keep-expr is the
+     * text that was parsed. Values parsed lazily are not folded.
+     */
+    public void setConstantFolding(boolean fold) {
+        this.foldConstants = fold;
+    }
+
+    public ExprCache getExprCache() {
+        return exprCache;
+    }
+
+    /**
+     * Sets the cache the values of the ads parsed are shared through, or null
+     * not to share them. A cache must only be used by parsers, and ads, of
+     * one thread at a time: the shared trees keep the state of their
+     * evaluations in their nodes.
+     */
+    public void setExprCache(ExprCache cache) {
+        this.exprCache = cache;
+        rootAd.setExprCache(cache);
+    }
+
+    public ParseErrorStats getErrorStats() {
+        return errorStats;
+    }
+
     public Literal getLiteral() {
         return literalPool.get();
     }
@@ -1827,6 +2536,36 @@ public class ClassAdParser extends AbstractDataParser implements IDataParser {
         if (parserConfig != null && parserConfig.trim().length() > 0) {
             exprFieldNameSuffix = parserConfig;
         }
+        parserConfig = configuration.get(KEY_PROJECTION);
+        if (parserConfig != null && parserConfig.trim().length() > 0) {
+            projection = new HashSet<CaseInsensitiveString>();
+            for (String name : parserConfig.split(",")) {
+                if (name.trim().length() > 0) {
+                    projection.add(AtomTable.intern(name.trim()));
+                }
+            }
+            if (referencedAd == null) {
+                referencedAd = new ClassAd();
+                // lookups of names that are not in rootAd fall through to it
+                rootAd.chainToAd(referencedAd);
+            }
+        }
+        parserConfig = configuration.get(KEY_TOLERANT);
+        if (parserConfig != null && parserConfig.equalsIgnoreCase("true")) {
+            tolerant = true;
+        }
+        parserConfig = configuration.get(KEY_TRANSCODE);
+        if (parserConfig != null && parserConfig.equalsIgnoreCase("true")) {
+            transcode = true;
+        }
+        parserConfig = configuration.get(KEY_FOLD_CONSTANTS);
+        if (parserConfig != null && parserConfig.equalsIgnoreCase("true")) {
+            setConstantFolding(true);
+        }
+        parserConfig = configuration.get(KEY_EXPR_CACHE);
+        if (parserConfig != null && parserConfig.equalsIgnoreCase("true")) {
+            setExprCache(new ExprCache(ExprCache.DEFAULT_MAX_ENTRIES));
+        }
 
     }
 }
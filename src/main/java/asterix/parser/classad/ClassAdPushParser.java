@@ -0,0 +1,409 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import asterix.parser.classad.ByteArrayLexerSource;
+import asterix.parser.classad.CharArrayLexerSource;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdFileSplitter;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.LexerSource;
+import asterix.parser.classad.ParseErrorStats;
+import asterix.parser.classad.ParseErrorStats.ErrorKind;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Parses ClassAds that arrive in fragments, such as the reads of a socket.
+ * Each fragment is fed once: the record boundary scanner of
+ * ClassAdFileSplitter keeps its state between calls, so consumed input is
+ * never scanned again, and only the record that is not complete yet is kept.
+ * A record is parsed as soon as its last byte or char arrives. The buffer of
+ * the pending record grows up to maxRecordSize, which bounds the memory held
+ * per stream. A parser is fed either bytes (UTF-8) or chars, not both.
+ * <p>
+ * A malformed record doesn't stop the stream: the rest of the fragment is
+ * still fed. In tolerant mode the record is skipped and counted in
+ * getErrorStats(); otherwise feed throws a RecordException once the whole
+ * fragment is consumed, which holds the ads the fragment completed.
+ */
+public class ClassAdPushParser {
+
+    /**
+     * A record that could not be parsed, thrown once the fragment that ended
+     * it has been consumed. The message is the one of the first such record
+     * in the fragment.
+     */
+    public static class RecordException extends HyracksDataException {
+        private static final long serialVersionUID = 1L;
+        private final transient List<ClassAd> ads;
+
+        RecordException(String message, List<ClassAd> ads) {
+            super(message);
+            this.ads = ads;
+        }
+
+        // The ads the fragment completed, in order, without the bad records
+        public List<ClassAd> getAds() {
+            return ads;
+        }
+    }
+
+    public static final int DEFAULT_MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private final boolean oldFormat;
+    private final int maxRecordSize;
+    private final ClassAdParser parser = new ClassAdParser();
+    private ClassAdFileSplitter splitter;
+    // the pending record, in bytes or chars depending on what is fed
+    private byte[] bytes;
+    private char[] chars;
+    private int length = 0;
+    private boolean charRecord = false;
+    // offset of the pending record in the stream
+    private long recordOffset = 0;
+    private ByteArrayLexerSource byteSource;
+    private CharArrayLexerSource charSource;
+    private ClassAd scratchAd;
+    private boolean tolerant = false;
+    private final ParseErrorStats errorStats = new ParseErrorStats();
+    // the kind and position in its record of the error being thrown
+    private ErrorKind errorKind;
+    private int errorPosition = -1;
+    // the first error of the fragment being fed, if not tolerant
+    private String firstError;
+
+    public ClassAdPushParser(boolean oldFormat) {
+        this(oldFormat, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    public ClassAdPushParser(boolean oldFormat, int maxRecordSize) {
+        this.oldFormat = oldFormat;
+        this.maxRecordSize = maxRecordSize;
+        this.splitter = new ClassAdFileSplitter(oldFormat);
+    }
+
+    /**
+     * Consumes the remaining bytes of input and returns the ClassAds they
+     * complete, in order.
+     */
+    public List<ClassAd> feed(ByteBuffer input) throws IOException {
+        if (input.hasArray()) {
+            List<ClassAd> ads = feed(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            // through Buffer, to link on Java 8 when built by a later JDK
+            ((Buffer) input).position(input.limit());
+            return ads;
+        }
+        List<ClassAd> ads = Collections.emptyList();
+        RecordException error = null;
+        byte[] fragment = new byte[Math.min(input.remaining(), INITIAL_BUFFER_SIZE)];
+        while (input.hasRemaining()) {
+            int n = Math.min(input.remaining(), fragment.length);
+            input.get(fragment, 0, n);
+            try {
+                ads = addAll(ads, feed(fragment, 0, n));
+            } catch (RecordException e) {
+                // the rest of input is still fed
+                ads = addAll(ads, e.getAds());
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw new RecordException(error.getMessage(), ads);
+        }
+        return ads;
+    }
+
+    public boolean isTolerant() {
+        return tolerant;
+    }
+
+    // In tolerant mode, malformed records are skipped and counted in getErrorStats()
+    public void setTolerant(boolean tolerant) {
+        this.tolerant = tolerant;
+    }
+
+    public ParseErrorStats getErrorStats() {
+        return errorStats;
+    }
+
+    public List<ClassAd> feed(byte[] input, int offset, int len) throws IOException {
+        if (charRecord && length > 0) {
+            throw new IllegalStateException("bytes fed in the middle of a char record");
+        }
+        if (bytes == null) {
+            bytes = new byte[INITIAL_BUFFER_SIZE];
+        }
+        List<ClassAd> ads = Collections.emptyList();
+        int start = offset;
+        int end = offset + len;
+        for (int i = offset; i < end; i++) {
+            if (splitter.endsRecord(input[i])) {
+                ClassAd ad;
+                if (length == 0) {
+                    // the whole record is in this fragment
+                    ensureCapacity(i + 1 - start);
+                    ad = parseRecord(input, start, i + 1 - start);
+                    recordOffset += i + 1 - start;
+                } else {
+                    appendBytes(input, start, i + 1 - start);
+                    ad = parseRecord(bytes, 0, length);
+                    recordOffset += length;
+                }
+                length = 0;
+                start = i + 1;
+                ads = add(ads, ad);
+            }
+        }
+        appendBytes(input, start, end - start);
+        return endFragment(ads);
+    }
+
+    public List<ClassAd> feed(char[] input, int offset, int len) throws IOException {
+        if (!charRecord && length > 0) {
+            throw new IllegalStateException("chars fed in the middle of a byte record");
+        }
+        if (chars == null) {
+            chars = new char[INITIAL_BUFFER_SIZE];
+        }
+        List<ClassAd> ads = Collections.emptyList();
+        int start = offset;
+        int end = offset + len;
+        for (int i = offset; i < end; i++) {
+            if (splitter.endsRecord(input[i])) {
+                appendChars(input, start, i + 1 - start);
+                ClassAd ad = parseRecord(chars, length);
+                recordOffset += length;
+                length = 0;
+                start = i + 1;
+                ads = add(ads, ad);
+            }
+        }
+        appendChars(input, start, end - start);
+        return endFragment(ads);
+    }
+
+    /**
+     * Ends the stream and returns the last ClassAd, if the stream holds one
+     * that was not terminated. In the old format, that is a record that is not
+     * followed by a blank line; in the new format anything but whitespace
+     * after the last record is an error.
+     */
+    public List<ClassAd> finish() throws IOException {
+        ClassAd ad = null;
+        try {
+            if (length > 0) {
+                if (oldFormat) {
+                    ad = charRecord ? parseRecord(chars, length) : parseRecord(bytes, 0, length);
+                } else if (!isBlank()) {
+                    errorKind = ErrorKind.TRUNCATED;
+                    errorPosition = length;
+                    failed(new HyracksDataException(
+                            "while parsing classad:  incomplete record at offset " + recordOffset));
+                }
+            }
+        } finally {
+            recordOffset += length;
+            length = 0;
+            splitter = new ClassAdFileSplitter(oldFormat);
+        }
+        return endFragment(ad == null ? Collections.<ClassAd> emptyList() : Collections.singletonList(ad));
+    }
+
+    // The size of the record that is not complete yet
+    public int getBufferedSize() {
+        return length;
+    }
+
+    // Parses a complete record. Returns null for a record that is skipped or
+    // holds no ad.
+    private ClassAd parseRecord(byte[] record, int offset, int len) throws IOException {
+        errorStats.countRecord();
+        try {
+            return parse(record, offset, len);
+        } catch (HyracksDataException e) {
+            failed(e);
+            return null;
+        }
+    }
+
+    private ClassAd parseRecord(char[] record, int len) throws IOException {
+        errorStats.countRecord();
+        try {
+            return parse(record, len);
+        } catch (HyracksDataException e) {
+            failed(e);
+            return null;
+        }
+    }
+
+    // Skips the record e was thrown for, counting it or keeping the error
+    private void failed(HyracksDataException e) {
+        if (tolerant) {
+            errorStats.skip(errorKind == null ? ErrorKind.SYNTAX : errorKind, errorPosition, e.getMessage());
+        } else if (firstError == null) {
+            firstError = e.getMessage();
+        }
+        errorKind = null;
+        errorPosition = -1;
+    }
+
+    // Returns the ads of the fragment, or throws the first error in it
+    private List<ClassAd> endFragment(List<ClassAd> ads) throws RecordException {
+        if (firstError != null) {
+            String message = firstError;
+            firstError = null;
+            throw new RecordException(message, ads);
+        }
+        return ads;
+    }
+
+    private ClassAd parse(byte[] record, int offset, int len) throws IOException {
+        if (oldFormat) {
+            return parseOldFormat(new String(record, offset, len, StandardCharsets.UTF_8));
+        }
+        if (byteSource == null) {
+            byteSource = new ByteArrayLexerSource();
+        }
+        byteSource.setNewSource(record, offset, len);
+        return parse(byteSource, offset);
+    }
+
+    private ClassAd parse(char[] record, int len) throws IOException {
+        if (oldFormat) {
+            return parseOldFormat(new String(record, 0, len));
+        }
+        if (charSource == null) {
+            charSource = new CharArrayLexerSource();
+        }
+        charSource.setNewSource(record, 0, len);
+        return parse(charSource, 0);
+    }
+
+    // start is the position of the source at the start of the record
+    private ClassAd parse(LexerSource source, int start) throws IOException {
+        if (scratchAd == null) {
+            scratchAd = new ClassAd();
+        }
+        try {
+            if (!parser.parseClassAd(source, scratchAd, false)) {
+                errorPosition = source.getPosition() - start;
+                throw new HyracksDataException(
+                        "while parsing classad:  parse error at offset " + (recordOffset + errorPosition));
+            }
+            // the parsed trees belong to the parser pools
+            return (ClassAd) scratchAd.copy();
+        } finally {
+            parser.reset();
+        }
+    }
+
+    // Returns null for a record that holds only blank lines
+    private ClassAd parseOldFormat(String record) throws IOException {
+        ClassAd ad = null;
+        for (String line : record.split("\n")) {
+            if (line.trim().length() == 0) {
+                continue;
+            }
+            if (ad == null) {
+                ad = new ClassAd();
+            }
+            if (!ad.insert(line)) {
+                errorKind = ErrorKind.BAD_LINE;
+                throw new HyracksDataException("Couldn't parse expression in line: " + line);
+            }
+        }
+        return ad;
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(charRecord ? chars[i] : bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendBytes(byte[] input, int offset, int len) throws HyracksDataException {
+        if (len == 0) {
+            return;
+        }
+        ensureCapacity(length + len);
+        charRecord = false;
+        if (bytes.length < length + len) {
+            bytes = Arrays.copyOf(bytes, newCapacity(bytes.length, length + len));
+        }
+        System.arraycopy(input, offset, bytes, length, len);
+        length += len;
+    }
+
+    private void appendChars(char[] input, int offset, int len) throws HyracksDataException {
+        if (len == 0) {
+            return;
+        }
+        ensureCapacity(length + len);
+        charRecord = true;
+        if (chars.length < length + len) {
+            chars = Arrays.copyOf(chars, newCapacity(chars.length, length + len));
+        }
+        System.arraycopy(input, offset, chars, length, len);
+        length += len;
+    }
+
+    private void ensureCapacity(int size) throws HyracksDataException {
+        if (size > maxRecordSize) {
+            throw new HyracksDataException("ClassAd at offset " + recordOffset + " is longer than " + maxRecordSize);
+        }
+    }
+
+    private int newCapacity(int capacity, int size) {
+        return (int) Math.min(maxRecordSize, Math.max((long) capacity * 2, size));
+    }
+
+    private static List<ClassAd> add(List<ClassAd> ads, ClassAd ad) {
+        if (ad == null) {
+            return ads;
+        }
+        if (ads.isEmpty()) {
+            ads = new ArrayList<ClassAd>();
+        }
+        ads.add(ad);
+        return ads;
+    }
+
+    private static List<ClassAd> addAll(List<ClassAd> ads, List<ClassAd> more) {
+        if (ads.isEmpty()) {
+            return more;
+        }
+        ads.addAll(more);
+        return ads;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTree.NodeKind;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Value;
+import org.apache.asterix.common.exceptions.AsterixException;
+import org.apache.asterix.om.types.ARecordType;
+import org.apache.asterix.om.types.ATypeTag;
+import org.apache.asterix.om.types.AUnionType;
+import org.apache.asterix.om.types.AUnorderedListType;
+import org.apache.asterix.om.types.BuiltinType;
+import org.apache.asterix.om.types.IAType;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Infers the record type of the ads of an input from a sample of them, so
+ * that they can be parsed with a closed type. Each field gets the type of the
+ * values ClassAdParser writes for it: expressions are typed by their value,
+ * integers and reals make a double, nested ads make nested records and lists
+ * make unordered lists of the type of their items. A field that is missing
+ * from some ads is nullable. A field whose values have types that can't be
+ * written as one type, or whose name is spelled with different cases, is left
+ * out, and the record type is then open so that the field is still written.
+ */
+public class ClassAdSchemaInference {
+
+    // the types of the values seen at one place of the ads
+    private static final class Node {
+        // null until a value is seen
+        private ATypeTag tag = null;
+        private boolean conflict = false;
+        // the spelling of the field name, for the fields of a record
+        private String name;
+        // the number of values seen
+        private long count = 0;
+        private Map<CaseInsensitiveString, Node> fields;
+        private Node items;
+    }
+
+    private final Node root = new Node();
+    // the values of the fields of the records being walked, by depth: the ad
+    // of a nested record is the payload of the value of its field, so the
+    // fields of the records nested in it must not reuse that value
+    private final List<Value> scratch = new ArrayList<Value>();
+
+    public ClassAdSchemaInference() {
+        root.tag = ATypeTag.RECORD;
+        root.fields = new LinkedHashMap<CaseInsensitiveString, Node>();
+    }
+
+    /**
+     * Adds up to sampleSize ads of the input of parser, which must be
+     * configured and initialized the way it is for the ingestion. Returns the
+     * number of ads added.
+     */
+    public int sample(ClassAdParser parser, int sampleSize) throws IOException {
+        int n = 0;
+        ClassAd ad;
+        while (n < sampleSize && (ad = parser.parseNextAd()) != null) {
+            add(ad);
+            n++;
+        }
+        return n;
+    }
+
+    // Adds an ad as the parser leaves it before writing it
+    public void add(ClassAd ad) throws HyracksDataException {
+        addRecord(root, ad, 0);
+    }
+
+    public long getAdCount() {
+        return root.count;
+    }
+
+    // The fields that are left out of the record type, as dotted paths
+    public List<String> getConflictingFields() {
+        List<String> conflicts = new ArrayList<String>();
+        addConflicts(root, "", conflicts);
+        return conflicts;
+    }
+
+    /**
+     * Returns the record type of the ads added so far. Nested records are
+     * named after typeName and the path of their field.
+     */
+    public ARecordType getRecordType(String typeName) throws AsterixException, HyracksDataException {
+        return toRecordType(root, typeName);
+    }
+
+    private void addRecord(Node node, ClassAd ad, int depth) throws HyracksDataException {
+        if (scratch.size() == depth) {
+            scratch.add(new Value());
+        }
+        Value val = scratch.get(depth);
+        node.count++;
+        for (Entry<CaseInsensitiveString, ExprTree> entry : ad.getAttrList().entrySet()) {
+            CaseInsensitiveString key = entry.getKey();
+            Node field = node.fields.get(key);
+            if (field == null) {
+                field = new Node();
+                field.name = key.get();
+                node.fields.put(key, field);
+            } else if (!field.name.equals(key.get())) {
+                // a closed field matches one spelling only
+                field.conflict = true;
+            }
+            if (!field.conflict) {
+                addValue(field, ClassAdParser.getFieldValue(key.get(), entry.getValue(), ad, val), depth);
+            }
+        }
+    }
+
+    // depth is the depth of the record val is a field of
+    private void addValue(Node node, Value val, int depth) throws HyracksDataException {
+        ATypeTag tag = getTag(val);
+        if (tag == null) {
+            node.conflict = true;
+            return;
+        }
+        if (node.tag == null) {
+            node.tag = tag;
+        } else if (node.tag != tag) {
+            if ((node.tag == ATypeTag.INT64 && tag == ATypeTag.DOUBLE)
+                    || (node.tag == ATypeTag.DOUBLE && tag == ATypeTag.INT64)) {
+                node.tag = ATypeTag.DOUBLE;
+            } else {
+                node.conflict = true;
+                return;
+            }
+        }
+        switch (tag) {
+            case RECORD:
+                if (node.fields == null) {
+                    node.fields = new LinkedHashMap<CaseInsensitiveString, Node>();
+                }
+                addRecord(node, val.getClassadVal(), depth + 1);
+                return;
+            case UNORDEREDLIST:
+                node.count++;
+                if (node.items == null) {
+                    node.items = new Node();
+                }
+                for (ExprTree item : val.getListVal().getExprList()) {
+                    // only literal items can be written
+                    if (node.items.conflict || item.self().getKind() != NodeKind.LITERAL_NODE) {
+                        node.items.conflict = true;
+                        break;
+                    }
+                    addValue(node.items, ((Literal) item.self()).getValue(), depth);
+                }
+                return;
+            default:
+                node.count++;
+                return;
+        }
+    }
+
+    // The type tag of the value ClassAdParser writes for val, or null if it
+    // can't write one
+    private static ATypeTag getTag(Value val) {
+        switch (val.getValueType()) {
+            case ABSOLUTE_TIME_VALUE:
+                return ATypeTag.DATETIME;
+            case BOOLEAN_VALUE:
+                return ATypeTag.BOOLEAN;
+            case CLASSAD_VALUE:
+                return ATypeTag.RECORD;
+            case ERROR_VALUE:
+            case STRING_VALUE:
+            case UNDEFINED_VALUE:
+                return ATypeTag.STRING;
+            case INTEGER_VALUE:
+                return ATypeTag.INT64;
+            case LIST_VALUE:
+            case SLIST_VALUE:
+                return ATypeTag.UNORDEREDLIST;
+            case REAL_VALUE:
+                return ATypeTag.DOUBLE;
+            case RELATIVE_TIME_VALUE:
+                return ATypeTag.DURATION;
+            default:
+                return null;
+        }
+    }
+
+    private ARecordType toRecordType(Node node, String typeName) throws AsterixException, HyracksDataException {
+        List<String> names = new ArrayList<String>();
+        List<IAType> types = new ArrayList<IAType>();
+        boolean open = false;
+        for (Node field : node.fields.values()) {
+            if (field.conflict || field.tag == null) {
+                open = true;
+                continue;
+            }
+            IAType type = toType(field, typeName + "_" + field.name);
+            if (field.count < node.count) {
+                type = nullable(type);
+            }
+            names.add(field.name);
+            types.add(type);
+        }
+        return new ARecordType(typeName, names.toArray(new String[names.size()]),
+                types.toArray(new IAType[types.size()]), open);
+    }
+
+    private IAType toType(Node node, String typeName) throws AsterixException, HyracksDataException {
+        switch (node.tag) {
+            case DATETIME:
+                return BuiltinType.ADATETIME;
+            case BOOLEAN:
+                return BuiltinType.ABOOLEAN;
+            case RECORD:
+                return toRecordType(node, typeName);
+            case STRING:
+                return BuiltinType.ASTRING;
+            case INT64:
+                return BuiltinType.AINT64;
+            case UNORDEREDLIST: {
+                Node items = node.items;
+                // items of unknown type are written with their type tags
+                IAType itemType = items.conflict || items.tag == null ? BuiltinType.ANY
+                        : toType(items, typeName + "_Item");
+                return new AUnorderedListType(itemType, typeName);
+            }
+            case DOUBLE:
+                return BuiltinType.ADOUBLE;
+            case DURATION:
+                return BuiltinType.ADURATION;
+            default:
+                return BuiltinType.ANY;
+        }
+    }
+
+    private static IAType nullable(IAType type) {
+        List<IAType> unionList = new ArrayList<IAType>();
+        unionList.add(BuiltinType.ANULL);
+        unionList.add(type);
+        return new AUnionType(unionList, null);
+    }
+
+    private static void addConflicts(Node node, String path, List<String> conflicts) {
+        if (node.fields == null) {
+            return;
+        }
+        for (Node field : node.fields.values()) {
+            if (field.conflict) {
+                conflicts.add(path + field.name);
+            } else {
+                addConflicts(field, path + field.name + ".", conflicts);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.CaseInsensitiveString;
+
+/**
+ * The attribute names of an ad, in the order they were inserted, each with the
+ * slot of its value. Shapes can't be changed: adding a name leads to another
+ * shape, which is kept as a transition of this one, so ads that get the same
+ * names in the same order share their shapes. Names are looked up by atom id,
+ * so ignoring case. Transitions only hold on to the shapes they lead to while
+ * an ad, or a longer shape, still uses them, so that ads with ever different
+ * names don't keep all their shapes.
+ */
+public final class ClassAdShape {
+    public static final ClassAdShape EMPTY = new ClassAdShape(null, new CaseInsensitiveString[0], new int[0]);
+    // shapes with more names than this build a hash table to find slots
+    private static final int LINEAR_LOOKUP = 8;
+    // the transitions to the shapes that were collected
+    private static final ReferenceQueue<ClassAdShape> collected = new ReferenceQueue<ClassAdShape>();
+
+    // A transition from one shape to the shape with one more name
+    private static final class Transition extends WeakReference<ClassAdShape> {
+        final ClassAdShape from;
+        final String name;
+
+        Transition(ClassAdShape to, ClassAdShape from, String name) {
+            super(to, collected);
+            this.from = from;
+            this.name = name;
+        }
+    }
+
+    // the shape this one was added to, kept while this one is used so that
+    // the transition to this one is still found
+    private final ClassAdShape parent;
+    private final CaseInsensitiveString[] names;
+    private final int[] ids;
+    // the slot + 1 of each atom id, by open addressing, built when first needed
+    private volatile int[] table;
+    // keyed by spelling, as an ad keeps the spelling its names were inserted with
+    private final ConcurrentMap<String, Transition> transitions = new ConcurrentHashMap<String, Transition>(1);
+
+    private ClassAdShape(ClassAdShape parent, CaseInsensitiveString[] names, int[] ids) {
+        this.parent = parent;
+        this.names = names;
+        this.ids = ids;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public CaseInsensitiveString getName(int slot) {
+        return names[slot];
+    }
+
+    // The slot of name, or -1 if the shape doesn't have it
+    public int slotOf(CaseInsensitiveString name) {
+        if (!name.isAtom()) {
+            // a name that was never interned is in no shape
+            name = AtomTable.find(name.get());
+            if (name == null) {
+                return -1;
+            }
+        }
+        int id = name.getId();
+        if (ids.length <= LINEAR_LOOKUP) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int[] t = table;
+        if (t == null) {
+            t = buildTable();
+        }
+        int mask = t.length - 1;
+        for (int i = mix(id) & mask;; i = (i + 1) & mask) {
+            int slot = t[i] - 1;
+            if (slot < 0 || ids[slot] == id) {
+                return slot;
+            }
+        }
+    }
+
+    // The shape with name added after the names of this one
+    public ClassAdShape add(CaseInsensitiveString name) {
+        if (!name.isAtom()) {
+            name = AtomTable.intern(name.get());
+        }
+        String key = name.get();
+        Transition t = transitions.get(key);
+        ClassAdShape next = t == null ? null : t.get();
+        if (next != null) {
+            return next;
+        }
+        expunge();
+        CaseInsensitiveString[] nextNames = Arrays.copyOf(names, names.length + 1);
+        nextNames[names.length] = name;
+        int[] nextIds = Arrays.copyOf(ids, ids.length + 1);
+        nextIds[ids.length] = name.getId();
+        next = new ClassAdShape(this, nextNames, nextIds);
+        Transition added = new Transition(next, this, key);
+        while (true) {
+            t = transitions.get(key);
+            if (t == null) {
+                if (transitions.putIfAbsent(key, added) == null) {
+                    return next;
+                }
+            } else {
+                ClassAdShape raced = t.get();
+                if (raced != null) {
+                    return raced;
+                }
+                if (transitions.replace(key, t, added)) {
+                    return next;
+                }
+            }
+        }
+    }
+
+    // The number of shapes this one leads to, counting those that are no
+    // longer used until they are collected
+    public int transitionCount() {
+        expunge();
+        return transitions.size();
+    }
+
+    // Drops the transitions to the shapes that were collected
+    private static void expunge() {
+        for (Object ref = collected.poll(); ref != null; ref = collected.poll()) {
+            Transition t = (Transition) ref;
+            t.from.transitions.remove(t.name, t);
+        }
+    }
+
+    // The shape with the names of this one but the one in slot
+    public ClassAdShape remove(int slot) {
+        ClassAdShape shape = EMPTY;
+        for (int i = 0; i < names.length; i++) {
+            if (i != slot) {
+                shape = shape.add(names[i]);
+            }
+        }
+        return shape;
+    }
+
+    private int[] buildTable() {
+        int[] t = new int[Integer.highestOneBit(ids.length * 2 - 1) << 1];
+        int mask = t.length - 1;
+        for (int slot = 0; slot < ids.length; slot++) {
+            int i = mix(ids[slot]) & mask;
+            while (t[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            t[i] = slot + 1;
+        }
+        table = t;
+        return t;
+    }
+
+    // Atom ids are given out in order, so they are spread over the table
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import asterix.parser.classad.ByteArrayLexerSource;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdFileSplitter;
+import asterix.parser.classad.ClassAdParser;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * A Spliterator over the ClassAds of a file. The file is cut into chunks at
+ * record boundaries by ClassAdFileSplitter; trySplit hands out whole chunks,
+ * so chunks are parsed in parallel while the records of a chunk are parsed in
+ * order. Each worker thread uses its own ClassAdParser, and the ClassAds
+ * returned are copies that do not share anything with the parser pools.
+ */
+public class ClassAdSpliterator implements Spliterator<ClassAd> {
+
+    // one parser per worker thread
+    private static final ThreadLocal<ClassAdParser> parsers = new ThreadLocal<ClassAdParser>() {
+        @Override
+        protected ClassAdParser initialValue() {
+            return new ClassAdParser();
+        }
+    };
+
+    private final FileChannel channel;
+    private final long[] boundaries;
+    private final boolean oldFormat;
+    private final boolean ordered;
+    // chunks [chunk, lastChunk) are left to this spliterator
+    private int chunk;
+    private int lastChunk;
+    // state of the chunk being parsed, if any
+    private boolean chunkOpen = false;
+    private ByteArrayLexerSource source;
+    private MappedByteBuffer buffer;
+    private ClassAd scratchAd;
+    // old format chunks are decoded once and parsed in place
+    private char[] chars;
+    private int charLimit;
+    private final AMutableInt32 charOffset = new AMutableInt32(0);
+
+    private ClassAdSpliterator(FileChannel channel, long[] boundaries, boolean oldFormat, boolean ordered, int chunk,
+            int lastChunk) {
+        this.channel = channel;
+        this.boundaries = boundaries;
+        this.oldFormat = oldFormat;
+        this.ordered = ordered;
+        this.chunk = chunk;
+        this.lastChunk = lastChunk;
+    }
+
+    public static Stream<ClassAd> stream(File file, boolean oldFormat, boolean ordered) throws IOException {
+        return stream(file, oldFormat, ordered, ClassAdFileSplitter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a parallel stream of the ClassAds in the file. If ordered is
+     * true, the stream keeps the file order; otherwise the stream is unordered
+     * and records are delivered as soon as any worker has parsed them. The file
+     * is closed when the stream is closed.
+     */
+    public static Stream<ClassAd> stream(File file, boolean oldFormat, boolean ordered, long chunkSize)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        long[] boundaries = ClassAdFileSplitter.split(channel, oldFormat, chunkSize);
+        ClassAdSpliterator spliterator = new ClassAdSpliterator(channel, boundaries, oldFormat, ordered, 0,
+                boundaries.length - 1);
+        Stream<ClassAd> stream = StreamSupport.stream(spliterator, true).onClose(() -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ordered ? stream : stream.unordered();
+    }
+
+    /**
+     * Parses the file on the given pool and hands every ClassAd to consumer,
+     * in file order if ordered is true. The consumer must be thread safe when
+     * ordered is false.
+     */
+    public static void forEach(File file, boolean oldFormat, boolean ordered, ForkJoinPool pool,
+            Consumer<ClassAd> consumer) throws IOException {
+        try (Stream<ClassAd> stream = stream(file, oldFormat, ordered)) {
+            pool.submit(() -> {
+                if (ordered) {
+                    stream.forEachOrdered(consumer);
+                } else {
+                    stream.forEach(consumer);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HyracksDataException(e);
+        } catch (ExecutionException e) {
+            throw new HyracksDataException(e.getCause());
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ClassAd> action) {
+        try {
+            while (true) {
+                if (!chunkOpen) {
+                    if (chunk >= lastChunk) {
+                        return false;
+                    }
+                    openChunk();
+                }
+                ClassAd ad = oldFormat ? nextOldFormatAd() : nextAd();
+                if (ad != null) {
+                    action.accept(ad);
+                    return true;
+                }
+                chunkOpen = false;
+                buffer = null;
+                chars = null;
+                chunk++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openChunk() throws IOException {
+        long start = boundaries[chunk];
+        buffer = channel.map(MapMode.READ_ONLY, start, boundaries[chunk + 1] - start);
+        chunkOpen = true;
+        if (oldFormat) {
+            CharBuffer decoded = StandardCharsets.UTF_8.decode(buffer);
+            chars = decoded.array();
+            charLimit = decoded.limit();
+            charOffset.setValue(0);
+        } else {
+            if (source == null) {
+                source = new ByteArrayLexerSource();
+            }
+            source.setNewSource(buffer);
+            if (scratchAd == null) {
+                scratchAd = new ClassAd();
+            }
+        }
+    }
+
+    // Returns the next ad of the current chunk, or null at the end of the chunk
+    private ClassAd nextAd() throws IOException {
+        ClassAdParser parser = parsers.get();
+        try {
+            if (!parser.parseClassAd(source, scratchAd, false)) {
+                if (!source.atEnd()) {
+                    throw new HyracksDataException("while parsing classad:  parse error at offset "
+                            + (boundaries[chunk] + source.getPosition()));
+                }
+                return null;
+            }
+            // the parsed trees belong to the parser pools
+            return (ClassAd) scratchAd.copy();
+        } finally {
+            parser.reset();
+        }
+    }
+
+    // Returns the next blank-line terminated ad of the current chunk, or null
+    // at the end of the chunk
+    private ClassAd nextOldFormatAd() throws IOException {
+        ClassAdParser parser = parsers.get();
+        try {
+            ClassAd ad = parser.parseOldFormatAd(chars, charOffset, charLimit);
+            return ad == null ? null : (ClassAd) ad.copy();
+        } finally {
+            parser.reset();
+        }
+    }
+
+    @Override
+    public Spliterator<ClassAd> trySplit() {
+        if (lastChunk - chunk < 2) {
+            return null;
+        }
+        // the prefix, including the chunk being parsed, is handed out so that
+        // the encounter order is preserved
+        int middle = (chunk + lastChunk) >>> 1;
+        ClassAdSpliterator prefix = new ClassAdSpliterator(channel, boundaries, oldFormat, ordered, chunk, middle);
+        prefix.chunkOpen = chunkOpen;
+        prefix.source = source;
+        prefix.buffer = buffer;
+        prefix.scratchAd = scratchAd;
+        chunkOpen = false;
+        source = null;
+        buffer = null;
+        scratchAd = null;
+        chunk = middle;
+        return prefix;
+    }
+
+    // The number of records is not known; the number of chunks left is used
+    // so that the stream splits the work evenly.
+    @Override
+    public long estimateSize() {
+        return lastChunk - chunk;
+    }
+
+    @Override
+    public int characteristics() {
+        return (ordered ? ORDERED : 0) | NONNULL | IMMUTABLE;
+    }
+}
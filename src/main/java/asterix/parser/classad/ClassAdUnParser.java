@@ -50,7 +50,7 @@ public class ClassAdUnParser {
     public static final String[] opString = { "", " < ", " <= ", " != ", " == ", " >= ", " > ", " is ", " isnt ", " +",
             " -", " + ", " - ", " * ", " / ", " % ", " !", " || ", " && ", " ~", " | ", " ^ ", " & ", " << ", " >> ",
             " >>> ", " () ", " [] ", " ?: " };
-    protected static char delimiter = '\"';
+    protected char delimiter = '\"';
 
     /// Constructor
     public ClassAdUnParser() {
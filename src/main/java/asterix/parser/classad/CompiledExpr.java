@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.Value;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * An expression compiled by ExprCompiler. It evaluates to the same value as
+ * the tree it was compiled from. A compiled expression keeps the values of its
+ * operands between evaluations, so it must not be evaluated by two threads at
+ * once.
+ */
+public abstract class CompiledExpr {
+    private EvalState state;
+
+    /**
+     * Evaluates the expression with the scopes of state, like
+     * ExprTree.publicEvaluate.
+     */
+    public abstract boolean evaluate(EvalState state, Value val) throws HyracksDataException;
+
+    // Evaluates the expression as if it were an attribute of ad
+    public boolean evaluate(ClassAd ad, Value val) throws HyracksDataException {
+        if (state == null) {
+            state = new EvalState();
+        }
+        state.setScopes(ad);
+        return evaluate(state, val);
+    }
+
+    // True if some part of the expression is evaluated by the interpreter
+    public abstract boolean hasFallback();
+}
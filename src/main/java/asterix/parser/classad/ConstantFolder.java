@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.NumberFactor;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Replaces the constant parts of an expression by literals, by flattening it
+ * with a state that folds constants only (see EvalState.setFoldingConstants):
+ * operators whose operands are constant, and calls of builtins that only
+ * depend on their arguments when the arguments are constant. Attribute
+ * references, nested ads and calls of the other functions, such as time() or
+ * random(), are kept, and so are the operators above them. An expression is
+ * only replaced by a literal if it evaluates to a boolean, a number, a
+ * string, a time or undefined.
+ */
+public class ConstantFolder {
+
+    private ConstantFolder() {
+    }
+
+    /**
+     * Returns tree with its constant parts folded, or tree itself if it can't
+     * be flattened.
+     */
+    public static ExprTree fold(ExprTree tree) throws HyracksDataException {
+        if (tree == null) {
+            return null;
+        }
+        EvalState state = new EvalState();
+        state.setFoldingConstants(true);
+        Value val = new Value();
+        ExprTreeHolder flat = new ExprTreeHolder();
+        if (!tree.publicFlatten(state, val, flat)) {
+            return tree;
+        }
+        if (flat.getInnerTree() != null) {
+            return flat.getInnerTree();
+        }
+        ValueType type = val.getValueType();
+        if (type == ValueType.ERROR_VALUE || type == ValueType.LIST_VALUE || type == ValueType.SLIST_VALUE
+                || type == ValueType.CLASSAD_VALUE) {
+            return tree;
+        }
+        return Literal.createLiteral(val, NumberFactor.NO_FACTOR);
+    }
+}
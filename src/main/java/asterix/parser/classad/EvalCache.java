@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.Arrays;
+
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * The values of the attributes evaluated while an EvalState caches them, by
+ * the ad the attribute was found in and its name. An attribute that is being
+ * evaluated is marked, so that an evaluation that comes back to it fails at
+ * once, as it would when it runs out of recursion depth. The values are only
+ * right as long as none of the ads in scope changes; the cache is emptied
+ * when caching starts again.
+ */
+final class EvalCache {
+    private static final int IN_PROGRESS = 0;
+    private static final int EVALUATED = 1;
+    private static final int FAILED = 2;
+    private static final int NONE = 3;
+
+    private static final class Entry {
+        ClassAd ad;
+        CaseInsensitiveString name;
+        int status;
+        final Value value = new Value();
+    }
+
+    // open addressing, by the identity of the ad and the atom id of the name,
+    // so that the spellings of a name share their entry
+    private Entry[] table = new Entry[64];
+    private int size;
+    // the entries of the table, kept for the next time the cache is emptied
+    private Entry[] entries = new Entry[0];
+
+    /**
+     * Evaluates tree, the value of name in the current ad of state, or takes
+     * the value it had the last time. name must be an atom.
+     */
+    boolean evaluate(CaseInsensitiveString name, ExprTree tree, EvalState state, Value val)
+            throws HyracksDataException {
+        Entry e = entry(state.getCurAd(), name);
+        switch (e.status) {
+            case EVALUATED:
+                val.setValue(e.value);
+                return true;
+            case FAILED:
+            case IN_PROGRESS:
+                // in progress: a cycle
+                val.setErrorValue();
+                return false;
+            default:
+                break;
+        }
+        e.status = IN_PROGRESS;
+        boolean rval;
+        try {
+            rval = tree.publicEvaluate(state, val);
+        } finally {
+            // unless set below, as when the evaluation throws
+            e.status = NONE;
+        }
+        ValueType type = val.getValueType();
+        if (!rval) {
+            e.status = FAILED;
+        } else if (type == ValueType.CLASSAD_VALUE || type == ValueType.LIST_VALUE || type == ValueType.SLIST_VALUE) {
+            // copying these costs more than evaluating them again
+            e.status = NONE;
+        } else {
+            e.value.setValue(val);
+            e.status = EVALUATED;
+        }
+        return rval;
+    }
+
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(table, null);
+            for (int i = 0; i < size; i++) {
+                entries[i].ad = null;
+                entries[i].name = null;
+                entries[i].value.clear();
+            }
+            size = 0;
+        }
+    }
+
+    // The entry of name in ad, added without a value if there is none
+    private Entry entry(ClassAd ad, CaseInsensitiveString name) {
+        int mask = table.length - 1;
+        int i = hash(ad, name) & mask;
+        for (Entry e = table[i]; e != null; e = table[i]) {
+            if (e.ad == ad && e.name.getId() == name.getId()) {
+                return e;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(16, size * 2));
+        }
+        Entry e = entries[size];
+        if (e == null) {
+            e = new Entry();
+            entries[size] = e;
+        }
+        e.ad = ad;
+        e.name = name;
+        e.status = NONE;
+        table[i] = e;
+        if (++size * 2 > table.length) {
+            grow();
+        }
+        return e;
+    }
+
+    private void grow() {
+        table = new Entry[table.length * 2];
+        int mask = table.length - 1;
+        for (int j = 0; j < size; j++) {
+            Entry e = entries[j];
+            int i = hash(e.ad, e.name) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = e;
+        }
+    }
+
+    private static int hash(ClassAd ad, CaseInsensitiveString name) {
+        int h = (System.identityHashCode(ad) * 31 + name.getId()) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -18,8 +18,13 @@
  */
 package asterix.parser.classad;
 
+import java.util.Arrays;
+
 import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.EvalCache;
 import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Value;
 
 public class EvalState {
 
@@ -34,6 +39,26 @@ public class EvalState {
     private ClassAd curAd;
     private boolean flattenAndInline; // NAC
     private boolean inAttrRefScope;
+    // set while flattening only folds constants
+    private boolean foldingConstants;
+    // Scratch objects of the evaluations in progress, kept for the next
+    // evaluations. A node takes what it needs after pushFrame() and gives it
+    // all back with popFrame(), so nested evaluations use the objects above
+    // the ones of their callers.
+    private Value[] values = new Value[0];
+    private int valueCount;
+    private ExprTreeHolder[] holders = new ExprTreeHolder[0];
+    private int holderCount;
+    private int[] frames = new int[0];
+    private int frameCount;
+    // the values of the attributes evaluated, while caching
+    private EvalCache cache;
+    private boolean caching;
+    // The scopes, and the depth, flags and scratch marks, of the evaluations
+    // that nested ones were entered from, for leave() to go back to
+    private ClassAd[] savedScopes = new ClassAd[0];
+    private int[] savedMarks = new int[0];
+    private int savedCount;
 
     public boolean isInAttrRefScope() {
         return inAttrRefScope;
@@ -47,9 +72,21 @@ public class EvalState {
         this.inAttrRefScope = inAttrRefScope;
     }
 
+    public boolean isFoldingConstants() {
+        return foldingConstants;
+    }
+
+    /**
+     * When folding constants, flatten keeps attribute references and nested
+     * ads as they are, and only folds the calls of the builtins whose value
+     * depends on nothing but their arguments (see FunctionCall.isFoldable).
+     */
+    public void setFoldingConstants(boolean foldingConstants) {
+        this.foldingConstants = foldingConstants;
+    }
+
+    // The scopes are null until setScopes()
     public EvalState() {
-        rootAd = new ClassAd();
-        curAd = new ClassAd();
         depthRemaining = ExprTree.MAX_CLASSAD_RECURSION;
         flattenAndInline = false; // NAC
         inAttrRefScope = false;
@@ -86,11 +123,147 @@ public class EvalState {
     }
 
     public void reset() {
-        rootAd.reset();
-        curAd.reset();
+        rootAd = null;
+        curAd = null;
+        restart();
+        stopCaching();
+    }
+
+    // Readies this state for an evaluation after one that may have been left
+    // by an exception, which skips the depth and flags being set back, but
+    // keeps the cache
+    void restart() {
         depthRemaining = ExprTree.MAX_CLASSAD_RECURSION;
         flattenAndInline = false;
         inAttrRefScope = false;
+        releaseScratch();
+        Arrays.fill(savedScopes, 0, savedCount * 2, null);
+        savedCount = 0;
+    }
+
+    // Starts an evaluation in scope, nested in the one in progress, with the
+    // flags and the cache off, as a new state would. Its scratch objects are
+    // above the ones of the evaluation it is nested in.
+    void enter(ClassAd scope) {
+        if (savedCount * 2 == savedScopes.length) {
+            savedScopes = Arrays.copyOf(savedScopes, Math.max(8, savedScopes.length * 2));
+            savedMarks = Arrays.copyOf(savedMarks, savedScopes.length * 3);
+        }
+        savedScopes[savedCount * 2] = rootAd;
+        savedScopes[savedCount * 2 + 1] = curAd;
+        int mark = savedCount * 6;
+        savedMarks[mark] = depthRemaining;
+        savedMarks[mark + 1] = (flattenAndInline ? 1 : 0) | (inAttrRefScope ? 2 : 0) | (caching ? 4 : 0);
+        savedMarks[mark + 2] = valueCount;
+        savedMarks[mark + 3] = holderCount;
+        savedMarks[mark + 4] = frameCount;
+        savedCount++;
+        flattenAndInline = false;
+        inAttrRefScope = false;
+        caching = false;
+        setScopes(scope);
+    }
+
+    // Goes back to the evaluation the last enter() was called in, whatever
+    // the nested one left behind. Returns false if there is none.
+    boolean leave() {
+        if (savedCount == 0) {
+            return false;
+        }
+        savedCount--;
+        rootAd = savedScopes[savedCount * 2];
+        curAd = savedScopes[savedCount * 2 + 1];
+        savedScopes[savedCount * 2] = null;
+        savedScopes[savedCount * 2 + 1] = null;
+        int mark = savedCount * 6;
+        depthRemaining = savedMarks[mark];
+        flattenAndInline = (savedMarks[mark + 1] & 1) != 0;
+        inAttrRefScope = (savedMarks[mark + 1] & 2) != 0;
+        caching = (savedMarks[mark + 1] & 4) != 0;
+        valueCount = savedMarks[mark + 2];
+        holderCount = savedMarks[mark + 3];
+        frameCount = savedMarks[mark + 4];
+        return true;
+    }
+
+    /**
+     * Starts keeping the value of each attribute evaluated with this state,
+     * by the ad it is found in and its name, so that later evaluations of the
+     * attribute take it from there, until stopCaching(). An evaluation of an
+     * attribute that comes back to the attribute fails at once. None of the
+     * ads in scope may change meanwhile.
+     */
+    public void startCaching() {
+        if (cache == null) {
+            cache = new EvalCache();
+        } else {
+            cache.clear();
+        }
+        caching = true;
+    }
+
+    public void stopCaching() {
+        if (caching) {
+            cache.clear();
+            caching = false;
+        }
+    }
+
+    // The cache of the attribute values, or null if they are not cached
+    EvalCache getCache() {
+        return caching ? cache : null;
+    }
+
+    // Gives back the scratch objects of evaluations that were left by an exception
+    void releaseScratch() {
+        valueCount = 0;
+        holderCount = 0;
+        frameCount = 0;
+    }
+
+    public void pushFrame() {
+        if (frameCount + 2 > frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(32, frames.length * 2));
+        }
+        frames[frameCount++] = valueCount;
+        frames[frameCount++] = holderCount;
+    }
+
+    public void popFrame() {
+        holderCount = frames[--frameCount];
+        valueCount = frames[--frameCount];
+    }
+
+    // An undefined value that is the caller's until its frame is popped
+    public Value newValue() {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, values.length * 2));
+        }
+        Value val = values[valueCount];
+        if (val == null) {
+            val = new Value();
+            values[valueCount] = val;
+        } else {
+            val.clear();
+        }
+        valueCount++;
+        return val;
+    }
+
+    // An empty holder that is the caller's until its frame is popped
+    public ExprTreeHolder newHolder() {
+        if (holderCount == holders.length) {
+            holders = Arrays.copyOf(holders, Math.max(16, holders.length * 2));
+        }
+        ExprTreeHolder holder = holders[holderCount];
+        if (holder == null) {
+            holder = new ExprTreeHolder();
+            holders[holderCount] = holder;
+        } else {
+            holder.setInnerTree(null);
+        }
+        holderCount++;
+        return holder;
     }
 
     public ClassAd getRootAd() {
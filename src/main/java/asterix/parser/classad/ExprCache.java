@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import asterix.parser.classad.AMutableCharArrayString;
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.CachedExprEnvelope;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAdUnParser;
+import asterix.parser.classad.ExprList;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTree.NodeKind;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.FunctionCall;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Operation;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * The cache of attribute values shared between ClassAds, after the
+ * ClassAdCache of the C++ library. Values are keyed by attribute name and
+ * unparsed text; ads that hold the same value hold envelopes around one
+ * private copy of the tree. An entry counts the envelopes that use it and is
+ * evicted when the last one is released, which happens when the attribute is
+ * replaced or deleted or the ad is cleared, or when the envelope is garbage
+ * collected with an ad that was dropped without being cleared.
+ * <p>
+ * The shared trees keep the state of their evaluations in their nodes, so the
+ * ads of one cache must only be evaluated by one thread at a time. A parser
+ * has its own cache (see ClassAdParser.setExprCache).
+ */
+public class ExprCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    static final class Key {
+        private final CaseInsensitiveString name;
+        private final String text;
+
+        Key(CaseInsensitiveString name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return name.equals(other.name) && text.equals(other.text);
+        }
+    }
+
+    static final class Entry {
+        final Key key;
+        final ExprTree tree;
+        // guarded by the cache
+        int refCount;
+
+        Entry(Key key, ExprTree tree) {
+            this.key = key;
+            this.tree = tree;
+        }
+    }
+
+    // The reference of a live envelope to its entry. The references are
+    // linked, so that they are kept until the envelope is released or
+    // collected.
+    static final class EnvelopeRef extends WeakReference<CachedExprEnvelope> {
+        final Entry entry;
+        EnvelopeRef prev;
+        EnvelopeRef next;
+
+        EnvelopeRef(CachedExprEnvelope envelope, Entry entry, ReferenceQueue<CachedExprEnvelope> queue) {
+            super(envelope, queue);
+            this.entry = entry;
+        }
+    }
+
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+    private final int maxEntries;
+    private volatile int size = 0;
+    private final ReferenceQueue<CachedExprEnvelope> collected = new ReferenceQueue<CachedExprEnvelope>();
+    // the head of the references of the live envelopes
+    private EnvelopeRef live;
+    private long hits = 0;
+    private long misses = 0;
+
+    public ExprCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns an envelope around the cached value of attribute name that is
+     * the same as tree, caching a copy of tree first if there is none. text is
+     * the unparsed tree, or null to unparse it here. Returns null if the tree
+     * is not worth sharing or can't be shared, or if the cache is full.
+     */
+    public CachedExprEnvelope cache(CaseInsensitiveString name, ExprTree tree, String text)
+            throws HyracksDataException {
+        tree = tree.self();
+        if (!isWorthSharing(tree) || !walk(tree, false)) {
+            return null;
+        }
+        if (!name.isAtom()) {
+            name = AtomTable.intern(name.get());
+        }
+        if (text == null) {
+            AMutableCharArrayString buffer = new AMutableCharArrayString();
+            new ClassAdUnParser().unparse(buffer, tree);
+            text = buffer.toString();
+        }
+        Key key = new Key(name, text);
+        synchronized (this) {
+            expunge();
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return envelope(entry);
+            }
+            misses++;
+            if (entries.size() >= maxEntries) {
+                return null;
+            }
+        }
+        // the tree may belong to a parser pool
+        ExprTree copy = tree.copy();
+        walk(copy, true);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, copy);
+                entries.put(key, entry);
+                size = entries.size();
+            }
+            return envelope(entry);
+        }
+    }
+
+    // Another envelope around the value of entry
+    synchronized CachedExprEnvelope copy(Entry entry) {
+        expunge();
+        if (entry.refCount == 0 && !entries.containsKey(entry.key)) {
+            // the entry was evicted; cache it again
+            entries.put(entry.key, entry);
+            size = entries.size();
+        }
+        return envelope(entry);
+    }
+
+    private CachedExprEnvelope envelope(Entry entry) {
+        entry.refCount++;
+        CachedExprEnvelope envelope = new CachedExprEnvelope(this, entry);
+        EnvelopeRef ref = new EnvelopeRef(envelope, entry, collected);
+        ref.next = live;
+        if (live != null) {
+            live.prev = ref;
+        }
+        live = ref;
+        envelope.ref = ref;
+        return envelope;
+    }
+
+    synchronized void release(EnvelopeRef ref) {
+        unlink(ref);
+        ref.clear();
+        release(ref.entry);
+    }
+
+    private void release(Entry entry) {
+        if (--entry.refCount == 0 && entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+            size = entries.size();
+        }
+    }
+
+    // Releases the envelopes that were collected without being released
+    private void expunge() {
+        for (EnvelopeRef ref = (EnvelopeRef) collected.poll(); ref != null; ref = (EnvelopeRef) collected.poll()) {
+            if (unlink(ref)) {
+                release(ref.entry);
+            }
+        }
+    }
+
+    // Returns false if ref was unlinked before
+    private boolean unlink(EnvelopeRef ref) {
+        if (ref.prev == null && live != ref) {
+            return false;
+        }
+        if (ref.prev == null) {
+            live = ref.next;
+        } else {
+            ref.prev.next = ref.next;
+        }
+        if (ref.next != null) {
+            ref.next.prev = ref.prev;
+        }
+        ref.prev = null;
+        ref.next = null;
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Releases the values of the ads that were dropped without being cleared
+     * and have since been garbage collected. This also happens as values are
+     * cached.
+     */
+    public synchronized void expungeDropped() {
+        expunge();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Forgets all entries; envelopes keep the trees they share
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    // Numbers, booleans and the like are no bigger than an envelope
+    private static boolean isWorthSharing(ExprTree tree) {
+        if (tree.getKind() != NodeKind.LITERAL_NODE) {
+            return true;
+        }
+        return ((Literal) tree).getValue().getType() == ValueType.STRING_VALUE;
+    }
+
+    // Returns false if the tree has nodes that are evaluated in their own
+    // parent scope rather than the envelope's: nested ads and lists. With
+    // detach, also clears the parent scopes of a cached copy so that it does
+    // not keep the ad it was parsed for alive.
+    private static boolean walk(ExprTree tree, boolean detach) {
+        if (tree == null) {
+            return true;
+        }
+        if (detach) {
+            tree.parentScope = null;
+        }
+        switch (tree.getKind()) {
+            case LITERAL_NODE:
+                return true;
+            case ATTRREF_NODE:
+                return walk(((AttributeReference) tree).getExpr(), detach);
+            case OP_NODE: {
+                AMutableInt32 op = new AMutableInt32(0);
+                ExprTreeHolder t1 = new ExprTreeHolder();
+                ExprTreeHolder t2 = new ExprTreeHolder();
+                ExprTreeHolder t3 = new ExprTreeHolder();
+                ((Operation) tree).getComponents(op, t1, t2, t3);
+                return walk(t1.getInnerTree(), detach) && walk(t2.getInnerTree(), detach)
+                        && walk(t3.getInnerTree(), detach);
+            }
+            case FN_CALL_NODE: {
+                ExprList args = new ExprList();
+                ((FunctionCall) tree).getComponents(new AMutableCharArrayString(), args);
+                for (ExprTree arg : args.getExprList()) {
+                    if (!walk(arg, detach)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.AttributeLookupCache;
+import asterix.parser.classad.AttributeReference;
+import asterix.parser.classad.BuiltinClassAdFunctions;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdFunc;
+import asterix.parser.classad.CompiledExpr;
+import asterix.parser.classad.EvalCache;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprList;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.FunctionCall;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Operation;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Compiles an ExprTree to a CompiledExpr, a tree of evaluators that each do
+ * the work of one node without going through the virtual calls and the
+ * allocations of the interpreter. Literals are evaluated once, operators keep
+ * their operand values between evaluations, attribute names are interned once
+ * and function calls are bound to their builtin. The arguments of a strict
+ * builtin are compiled too; those of the others, such as ifThenElse, eval and
+ * unparse, are evaluated by the builtin. Nodes that are not compiled, such as
+ * scoped attribute references, lists and nested ads, are evaluated by the
+ * interpreter.
+ */
+public class ExprCompiler {
+
+    // The builtins that evaluate each of their arguments at most once, in the
+    // scope of the call, and only look at the values
+    private static final Set<ClassAdFunc> STRICT_BUILTINS = new HashSet<ClassAdFunc>(Arrays.asList(
+            BuiltinClassAdFunctions.IsType, BuiltinClassAdFunctions.TestMember, BuiltinClassAdFunctions.Size,
+            BuiltinClassAdFunctions.SumAvg, BuiltinClassAdFunctions.MinMax, BuiltinClassAdFunctions.getField,
+            BuiltinClassAdFunctions.splitTime, BuiltinClassAdFunctions.strCat, BuiltinClassAdFunctions.changeCase,
+            BuiltinClassAdFunctions.subString, BuiltinClassAdFunctions.compareString,
+            BuiltinClassAdFunctions.matchPattern, BuiltinClassAdFunctions.convInt, BuiltinClassAdFunctions.convReal,
+            BuiltinClassAdFunctions.convString, BuiltinClassAdFunctions.convBool, BuiltinClassAdFunctions.convTime,
+            BuiltinClassAdFunctions.doRound, BuiltinClassAdFunctions.doMath2,
+            BuiltinClassAdFunctions.stringListsIntersect, BuiltinClassAdFunctions.interval));
+
+    public static CompiledExpr compile(ExprTree tree) throws HyracksDataException {
+        tree = unwrap(tree);
+        if (tree == null) {
+            throw new HyracksDataException("Can't compile an empty expression");
+        }
+        switch (tree.getKind()) {
+            case LITERAL_NODE:
+                return new Constant((Literal) tree);
+            case OP_NODE:
+                return compileOperation((Operation) tree);
+            case ATTRREF_NODE: {
+                AttributeReference ref = (AttributeReference) tree;
+                if (ref.getExpr() == null) {
+                    return new Attribute(ref.getAttributeName(), ref.isAbsolute());
+                }
+                return new Interpreted(tree);
+            }
+            case FN_CALL_NODE: {
+                FunctionCall call = (FunctionCall) tree;
+                return new Call(call.getFunctionName(), call.getArguments());
+            }
+            default:
+                return new Interpreted(tree);
+        }
+    }
+
+    private static ExprTree unwrap(ExprTree tree) {
+        while (tree != null && tree.self() != tree) {
+            tree = tree.self();
+        }
+        return tree;
+    }
+
+    private static CompiledExpr compileOperation(Operation op) throws HyracksDataException {
+        AMutableInt32 kind = new AMutableInt32(Operation.OpKind_NO_OP);
+        ExprTreeHolder child1 = new ExprTreeHolder();
+        ExprTreeHolder child2 = new ExprTreeHolder();
+        ExprTreeHolder child3 = new ExprTreeHolder();
+        op.getComponents(kind, child1, child2, child3);
+        return new Op(kind.getIntegerValue(), compileChild(child1), compileChild(child2), compileChild(child3));
+    }
+
+    private static CompiledExpr compileChild(ExprTreeHolder child) throws HyracksDataException {
+        return unwrap(child) == null ? null : compile(child);
+    }
+
+    // A literal, with its factor applied
+    private static final class Constant extends CompiledExpr {
+        private final Value value = new Value();
+
+        Constant(Literal literal) throws HyracksDataException {
+            literal.GetValue(value);
+        }
+
+        @Override
+        public boolean evaluate(EvalState state, Value val) throws HyracksDataException {
+            val.copyFrom(value);
+            return true;
+        }
+
+        @Override
+        public boolean hasFallback() {
+            return false;
+        }
+    }
+
+    // An operator, evaluated like Operation.privateEvaluate
+    private static final class Op extends CompiledExpr {
+        private final int kind;
+        private final CompiledExpr child1;
+        private final CompiledExpr child2;
+        private final CompiledExpr child3;
+        private final Value val1 = new Value();
+        private final Value val2 = new Value();
+        private final Value val3 = new Value();
+
+        Op(int kind, CompiledExpr child1, CompiledExpr child2, CompiledExpr child3) {
+            this.kind = kind;
+            this.child1 = child1;
+            this.child2 = child2;
+            this.child3 = child3;
+        }
+
+        @Override
+        public boolean evaluate(EvalState state, Value result) throws HyracksDataException {
+            if (child1 != null) {
+                if (!child1.evaluate(state, val1)) {
+                    result.setErrorValue();
+                    return false;
+                }
+                if (val1.getValueType() == ValueType.BOOLEAN_VALUE) {
+                    boolean b = val1.getBoolVal();
+                    switch (kind) {
+                        case Operation.OpKind_LOGICAL_OR_OP:
+                            if (b) {
+                                result.setBooleanValue(true);
+                                return true;
+                            }
+                            break;
+                        case Operation.OpKind_LOGICAL_AND_OP:
+                            if (!b) {
+                                result.setBooleanValue(false);
+                                return true;
+                            }
+                            break;
+                        case Operation.OpKind_TERNARY_OP: {
+                            // as Operation.shortCircuit, a missing branch is not a short cut
+                            CompiledExpr branch = b ? child2 : child3;
+                            if (branch != null && branch.evaluate(state, result)) {
+                                return true;
+                            }
+                            break;
+                        }
+                        default:
+                            break;
+                    }
+                }
+            }
+            if (child2 != null && !child2.evaluate(state, val2)) {
+                result.setErrorValue();
+                return false;
+            }
+            if (child3 != null && !child3.evaluate(state, val3)) {
+                result.setErrorValue();
+                return false;
+            }
+            return Operation.privateDoOperation(kind, val1, val2, val3, child1 != null, child2 != null,
+                    child3 != null, result, state) != Operation.SigValues.SIG_NONE.ordinal();
+        }
+
+        @Override
+        public boolean hasFallback() {
+            return (child1 != null && child1.hasFallback()) || (child2 != null && child2.hasFallback())
+                    || (child3 != null && child3.hasFallback());
+        }
+    }
+
+    // "attr" or ".attr", evaluated like AttributeReference.publicEvaluate
+    private static final class Attribute extends CompiledExpr {
+        private final CaseInsensitiveString name;
+        private final boolean absolute;
+        private final ExprTreeHolder tree = new ExprTreeHolder();
+        private final AttributeLookupCache lookupCache = new AttributeLookupCache();
+
+        Attribute(String name, boolean absolute) {
+            this.name = AtomTable.intern(name);
+            this.absolute = absolute;
+        }
+
+        @Override
+        public boolean evaluate(EvalState state, Value val) throws HyracksDataException {
+            ClassAd current = absolute ? state.getRootAd() : state.getCurAd();
+            if (absolute && current == null) {
+                return false;
+            }
+            if (current == null) {
+                val.setUndefinedValue();
+                return true;
+            }
+            // the lookup moves the current ad to the ad it finds the name in
+            ClassAd curAd = state.getCurAd();
+            int rc;
+            if (lookupCache.lookup(current, name, tree, state)) {
+                rc = ExprTree.EVAL_OK_Int;
+            } else {
+                rc = current.lookupInScope(name, tree, state);
+                if (rc == ExprTree.EVAL_OK_Int) {
+                    lookupCache.update(current, name, state);
+                }
+            }
+            if (!absolute && rc == ExprTree.EVAL_UNDEF_Int && current.getAlternateScope() != null) {
+                rc = current.getAlternateScope().lookupInScope(name, tree, state);
+            }
+            boolean rval;
+            switch (rc) {
+                case ExprTree.EVAL_FAIL_Int:
+                    return false;
+                case ExprTree.EVAL_ERROR_Int:
+                    val.setErrorValue();
+                    rval = true;
+                    break;
+                case ExprTree.EVAL_UNDEF_Int:
+                    val.setUndefinedValue();
+                    rval = true;
+                    break;
+                default:
+                    if (state.getDepthRemaining() <= 0) {
+                        val.setErrorValue();
+                        rval = false;
+                        break;
+                    }
+                    EvalCache cache = state.getCache();
+                    state.decrementDepth();
+                    rval = cache == null ? tree.publicEvaluate(state, val) : cache.evaluate(name, tree, state, val);
+                    state.incrementDepth();
+            }
+            state.setCurAd(curAd);
+            tree.setInnerTree(null);
+            return rval;
+        }
+
+        @Override
+        public boolean hasFallback() {
+            return false;
+        }
+    }
+
+    // A call of a builtin, looked up once. A strict builtin is handed the
+    // values of its compiled arguments as literals.
+    private static final class Call extends CompiledExpr {
+        private final String name;
+        private final ClassAdFunc function;
+        private final ExprList arguments;
+        // null unless the builtin is strict
+        private final CompiledExpr[] compiled;
+        private final ExprList values;
+
+        Call(String name, ExprList arguments) throws HyracksDataException {
+            this.name = name;
+            this.function = FunctionCall.getFunctionTable().get(name.toLowerCase());
+            this.arguments = arguments;
+            if (STRICT_BUILTINS.contains(function)) {
+                compiled = new CompiledExpr[arguments.size()];
+                values = new ExprList();
+                for (int i = 0; i < compiled.length; i++) {
+                    compiled[i] = compile(arguments.get(i));
+                    values.add(new Literal());
+                }
+            } else {
+                compiled = null;
+                values = null;
+            }
+        }
+
+        @Override
+        public boolean evaluate(EvalState state, Value val) throws HyracksDataException {
+            if (function == null) {
+                val.setErrorValue();
+                return true;
+            }
+            if (compiled == null) {
+                return function.call(name, arguments, state, val);
+            }
+            for (int i = 0; i < compiled.length; i++) {
+                if (!compiled[i].evaluate(state, ((Literal) values.get(i)).getValue())) {
+                    // the builtin decides what a failed argument makes the call
+                    return function.call(name, arguments, state, val);
+                }
+            }
+            return function.call(name, values, state, val);
+        }
+
+        @Override
+        public boolean hasFallback() {
+            if (compiled == null) {
+                // the builtin evaluates its arguments itself
+                return !arguments.getExprList().isEmpty();
+            }
+            for (CompiledExpr argument : compiled) {
+                if (argument.hasFallback()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Interpreted extends CompiledExpr {
+        private final ExprTree tree;
+
+        Interpreted(ExprTree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public boolean evaluate(EvalState state, Value val) throws HyracksDataException {
+            return tree.publicEvaluate(state, val);
+        }
+
+        @Override
+        public boolean hasFallback() {
+            return true;
+        }
+    }
+}
@@ -35,7 +35,8 @@ import org.apache.hyracks.api.exceptions.HyracksDataException;
 public class ExprList extends ExprTree {
 
     private List<ExprTree> exprList;
-    private EvalState state = new EvalState();
+    // the state of getValue when it is called without one, made when needed
+    private EvalState state;
     public boolean isShared = false;
 
     public boolean copyFrom(ExprList exprList) throws HyracksDataException {
@@ -236,7 +237,7 @@ public class ExprList extends ExprTree {
                 }
             }
             // add the new expression to the flattened list
-            newList.push_back(nexpr);
+            newList.push_back(nexpr.getInnerTree());
         }
         tree.setInnerTree(newList);
         return true;
@@ -249,13 +250,20 @@ public class ExprList extends ExprTree {
     }
 
     public boolean getValue(Value val, ExprTree tree, EvalState es) throws HyracksDataException {
-        EvalState currentState = new EvalState();
+        EvalState currentState;
 
         if (tree == null)
             return false;
 
         // if called from user code, es == NULL so we use &state instead
-        currentState = (es != null) ? es : state;
+        if (es != null) {
+            currentState = es;
+        } else {
+            if (state == null) {
+                state = new EvalState();
+            }
+            currentState = state;
+        }
 
         if (currentState.getDepthRemaining() <= 0) {
             val.setErrorValue();
@@ -121,15 +121,10 @@ public abstract class ExprTree {
      * into a ClassAd.
      */
     public void setParentScope(ClassAd scope) {
-        if (scope == null) {
-            parentScope = null;
-            return;
-        }
-        if (parentScope == null) {
-            parentScope = new ClassAd();
+        parentScope = scope;
+        if (scope != null) {
+            privateSetParentScope(scope);
         }
-        parentScope.setValue(scope);
-        privateSetParentScope(scope);
     }
 
     abstract protected void privateSetParentScope(ClassAd scope);
@@ -201,7 +201,7 @@ public class FunctionCall extends ExprTree {
         FunctionCall functioncall = (FunctionCall) tree;
         functionName = functioncall.functionName;
         function = functioncall.function;
-        arguments.copyFrom(arguments);
+        arguments = functioncall.arguments == null ? null : (ExprList) functioncall.arguments.copy();
         super.copyFrom(functioncall);
     }
 
@@ -231,6 +231,28 @@ public class FunctionCall extends ExprTree {
         return sameAs(fn);
     }
 
+    /**
+     * Returns true if function is one of the ClassAdBuiltinFunc whose value
+     * depends on nothing but its arguments. A function registered with
+     * registerFunction is never folded.
+     */
+    public static boolean isFoldable(ClassAdFunc function) {
+        if (function == BuiltinClassAdFunctions.epochTime || function == BuiltinClassAdFunctions.currentTime
+                || function == BuiltinClassAdFunctions.timeZoneOffset || function == BuiltinClassAdFunctions.dayTime
+                || function == BuiltinClassAdFunctions.formatTime || function == BuiltinClassAdFunctions.convTime
+                || function == BuiltinClassAdFunctions.random || function == BuiltinClassAdFunctions.debug
+                || function == BuiltinClassAdFunctions.eval) {
+            // the clock, random numbers and the scope
+            return false;
+        }
+        for (ClassAdFunc builtin : ClassAdBuiltinFunc) {
+            if (builtin == function) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static HashMap<String, ClassAdFunc> getFunctionTable() {
         return funcTable;
     }
@@ -245,6 +267,14 @@ public class FunctionCall extends ExprTree {
         arguments.privateSetParentScope(parent);
     }
 
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    public ExprList getArguments() {
+        return arguments;
+    }
+
     //This will move pointers to objects (not create clones)
     public void getComponents(AMutableString fn, ExprList exprList) {
         fn.setValue(functionName);
@@ -305,6 +335,7 @@ public class FunctionCall extends ExprTree {
 
         newCall.functionName = functionName;
         newCall.function = function;
+        newCall.arguments = new ExprList();
 
         // flatten the arguments
         for (ExprTree exp : arguments.getExprList()) {
@@ -330,11 +361,19 @@ public class FunctionCall extends ExprTree {
         }
 
         // assume all functions are "pure" (i.e., side-affect free)
+        if (fold && state.isFoldingConstants() && !isFoldable(function)) {
+            fold = false;
+        }
         if (fold) {
             // flattened to a value
             if (!function.call(functionName, arguments, state, value)) {
                 return false;
             }
+            if (state.isFoldingConstants() && (value.isListValue() || value.isClassAdValue())) {
+                // not a literal
+                tree.setInnerTree(newCall);
+                return true;
+            }
             tree.setInnerTree(null);
         } else {
             tree.setInnerTree(newCall);
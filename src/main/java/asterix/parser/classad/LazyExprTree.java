@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.io.IOException;
+
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Literal;
+import asterix.parser.classad.Value;
+import org.apache.asterix.om.base.AMutableInt32;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * The unparsed value of an attribute of a lazily parsed ClassAd. The text is
+ * parsed the first time the tree is needed and the result is kept; ClassAd
+ * replaces the placeholder with the parsed tree on lookup, so the placeholder
+ * is only seen by code that walks the attribute list directly. A value that
+ * does not parse becomes an error literal.
+ */
+public class LazyExprTree extends ExprTree {
+    private final String text;
+    private ExprTree tree;
+    // the ad whose parser owns the parsed tree
+    private ClassAd owner;
+
+    public LazyExprTree(ClassAd owner, String text) {
+        this.owner = owner;
+        this.text = text;
+        this.tree = null;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isMaterialized() {
+        return tree != null;
+    }
+
+    public ExprTree materialize() {
+        if (tree == null) {
+            ExprTree parsed;
+            try {
+                parsed = owner == null ? new ClassAdParser().parseExpression(text, true) : owner.parseValue(text);
+                if (parsed == null) {
+                    parsed = errorLiteral();
+                }
+            } catch (IOException e) {
+                parsed = errorLiteral();
+            }
+            if (owner != null) {
+                parsed.setParentScope(owner);
+            }
+            tree = parsed;
+        }
+        return tree;
+    }
+
+    private static ExprTree errorLiteral() {
+        Value val = new Value();
+        val.setErrorValue();
+        try {
+            return Literal.createLiteral(val);
+        } catch (HyracksDataException e) {
+            // an error value always makes a literal
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        tree = null;
+    }
+
+    @Override
+    public ExprTree getTree() {
+        return materialize();
+    }
+
+    @Override
+    public ExprTree self() {
+        return materialize().self();
+    }
+
+    @Override
+    public ClassAd getParentScope() {
+        return materialize().getParentScope();
+    }
+
+    // Copying does not force a parse
+    @Override
+    public ExprTree copy() throws HyracksDataException {
+        if (tree != null) {
+            return tree.copy();
+        }
+        return new LazyExprTree(null, text);
+    }
+
+    @Override
+    public NodeKind getKind() {
+        return materialize().getKind();
+    }
+
+    @Override
+    public boolean sameAs(ExprTree other) {
+        return materialize().sameAs(other);
+    }
+
+    @Override
+    public boolean privateEvaluate(EvalState state, Value val) throws HyracksDataException {
+        return materialize().privateEvaluate(state, val);
+    }
+
+    @Override
+    public boolean privateEvaluate(EvalState state, Value val, ExprTreeHolder sig) throws HyracksDataException {
+        return materialize().privateEvaluate(state, val, sig);
+    }
+
+    @Override
+    public boolean privateFlatten(EvalState state, Value val, ExprTreeHolder flat, AMutableInt32 op)
+            throws HyracksDataException {
+        return materialize().privateFlatten(state, val, flat, op);
+    }
+
+    @Override
+    protected void privateSetParentScope(ClassAd scope) {
+        owner = scope;
+        if (tree != null) {
+            tree.setParentScope(scope);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package asterix.parser.classad;
 import java.io.IOException;
 
 import asterix.parser.classad.AMutableCharArrayString;
+import asterix.parser.classad.AtomTable;
 import asterix.parser.classad.LexerSource;
 import asterix.parser.classad.TokenValue;
 import asterix.parser.classad.Util;
@@ -116,6 +117,7 @@ public class Lexer {
     //   +  Token will be accumulated in the lexBuffer
     public boolean initialize(LexerSource source) throws IOException {
         lexSource = source;
+        lexSource.markPosition();
         ch = lexSource.readCharacter();
         // token state initialization
         if (lexBuffer != null) {
@@ -254,7 +256,7 @@ public class Lexer {
                 wind();
                 if (ch == '/') {
                     // a c++ style comment
-                    while (ch > 0 && ch != '\n') {
+                    while (ch > 0 && ch != EOF && ch != '\n') {
                         wind();
                     }
                 } else if (ch == '*') {
@@ -264,7 +266,7 @@ public class Lexer {
                     do {
                         oldCh = ch;
                         wind();
-                    } while ((oldCh != '*' || ch != '/') && (ch > 0));
+                    } while ((oldCh != '*' || ch != '/') && (ch > 0) && ch != EOF);
                     if (ch == EOF) {
                         tokenType = TokenType.LEX_TOKEN_ERROR;
                         return (tokenType);
@@ -477,10 +479,10 @@ public class Lexer {
 
         if (numberType == NumberType.INTEGER) {
             cut();
-            integer = Long.parseLong(lexBuffer.toString());
+            integer = Util.parseLong(lexBuffer.getValue(), lexBuffer.getLength());
         } else if (numberType == NumberType.REAL) {
             cut();
-            real = Double.parseDouble(lexBuffer.toString());
+            real = Util.parseDouble(lexBuffer.getValue(), lexBuffer.getLength());
         } else {
             /* If we've reached this point, we have a serious programming
              * error: tokenizeNumber should only be called if we are
@@ -550,6 +552,7 @@ public class Lexer {
             cut();
             tokenType = TokenType.LEX_IDENTIFIER;
             yylval.setStringValue(lexBuffer);
+            yylval.setAtom(AtomTable.intern(lexBuffer));
             return tokenType;
         }
 
@@ -573,6 +576,7 @@ public class Lexer {
             // token is a character only identifier
             tokenType = TokenType.LEX_IDENTIFIER;
             yylval.setStringValue(lexBuffer);
+            yylval.setAtom(AtomTable.intern(lexBuffer));
         }
         return tokenType;
     }
@@ -635,6 +639,7 @@ public class Lexer {
                 tokenType = TokenType.LEX_STRING_VALUE;
             } else {
                 tokenType = TokenType.LEX_IDENTIFIER;
+                yylval.setAtom(AtomTable.intern(lexBuffer));
             }
         } else {
             tokenType = TokenType.LEX_TOKEN_ERROR; // string conatins a '\0' character inbetween
@@ -960,6 +965,98 @@ public class Lexer {
         }
     }
 
+    // scanValue:  Reads the text of an attribute value without tokenizing it,
+    //   for parsers that only want to know where the value ends.  The scan
+    //   stops at the first ';' or ']' that is not nested in parentheses,
+    //   brackets or braces, a string literal, a quoted attribute name or a
+    //   comment; that character is left to be read as the next token.  Must be
+    //   called right after a token has been consumed.  Returns null if the
+    //   input ends before the value does.
+    public String scanValue() throws IOException {
+        while (Character.isWhitespace(ch)) {
+            wind();
+        }
+        mark();
+        if (!windToValueEnd()) {
+            accumulating = false;
+            return null;
+        }
+        cut();
+        return lexBuffer.toString().trim();
+    }
+
+    // skipValue:  Like scanValue(), but nothing is accumulated.  Returns false
+    //   if the input ends before the value does.
+    public boolean skipValue() throws IOException {
+        accumulating = false;
+        return windToValueEnd();
+    }
+
+    private boolean windToValueEnd() throws IOException {
+        int depth = 0;
+        while (true) {
+            switch (ch) {
+                case EOF:
+                case '\0':
+                    return false;
+                case '(':
+                case '[':
+                case '{':
+                    depth++;
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    if (depth == 0) {
+                        return true;
+                    }
+                    depth--;
+                    break;
+                case ';':
+                    if (depth == 0) {
+                        return true;
+                    }
+                    break;
+                case '"':
+                case '\'':
+                    char delim = ch;
+                    wind();
+                    while (ch != delim) {
+                        if (ch == EOF || ch == '\0') {
+                            return false;
+                        }
+                        if (ch == '\\') {
+                            wind();
+                        }
+                        wind();
+                    }
+                    break;
+                case '/':
+                    wind();
+                    if (ch == '/') {
+                        while (ch != EOF && ch != '\0' && ch != '\n') {
+                            wind();
+                        }
+                    } else if (ch == '*') {
+                        char oldCh = 0;
+                        wind();
+                        while ((oldCh != '*' || ch != '/') && ch != EOF && ch != '\0') {
+                            oldCh = ch;
+                            wind();
+                        }
+                        if (ch == '/') {
+                            wind();
+                        }
+                    }
+                    // the character after the '/' has not been looked at yet
+                    continue;
+                default:
+                    break;
+            }
+            wind();
+        }
+    }
+
     public LexerSource getLexSource() {
         return lexSource;
     }
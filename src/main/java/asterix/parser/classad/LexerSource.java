@@ -37,6 +37,12 @@ public abstract class LexerSource {
         return -1;
     }
 
+    // Called by the lexer when it starts on a new input. Sources that cannot
+    // address their whole input with an int report positions relative to the
+    // last mark.
+    public void markPosition() {
+    }
+
     // Reads a single character from the source
     public abstract char readCharacter() throws IOException;
 
@@ -57,6 +63,12 @@ public abstract class LexerSource {
 
     public abstract char[] getBuffer();
 
+    // Returns the text of the source between position and position + length,
+    // where positions are those reported by getPosition()
+    public String getString(int position, int length) throws IOException {
+        return String.valueOf(getBuffer(), position, length);
+    }
+
     public void setNewSource(char[] recordCharBuffer) {
     }
 }
@@ -452,20 +452,15 @@ public class Literal extends ExprTree {
     }
 
     public boolean privateEvaluate(EvalState eval, Value val) throws HyracksDataException {
-        AMutableInt64 i = new AMutableInt64(0);
-        AMutableDouble r = new AMutableDouble(0);
-
         val.copyFrom(value);
 
         // if integer or real, multiply by the factor
-        if (val.isIntegerValue(i)) {
+        if (val.isIntegerValue()) {
             if (factor != NumberFactor.NO_FACTOR) {
-                val.setRealValue(((double) i.getLongValue()) * Value.ScaleFactor[factor.ordinal()]);
-            } else {
-                val.setIntegerValue(i.getLongValue());
+                val.setRealValue(((double) val.getLongVal()) * Value.ScaleFactor[factor.ordinal()]);
             }
-        } else if (val.isRealValue(r)) {
-            val.setRealValue(r.getDoubleValue() * Value.ScaleFactor[factor.ordinal()]);
+        } else if (val.isRealValue()) {
+            val.setRealValue(val.getDoubleVal() * Value.ScaleFactor[factor.ordinal()]);
         }
         return true;
     }
@@ -519,6 +514,10 @@ public class Literal extends ExprTree {
         factor = NumberFactor.NO_FACTOR;
     }
 
+    public NumberFactor getFactor() {
+        return factor;
+    }
+
     public Value getValue() {
         return value;
     }
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import asterix.parser.classad.Lexer;
+import asterix.parser.classad.LexerSource;
+
+/**
+ * A LexerSource over a UTF-8 file mapped with FileChannel.map. The file is
+ * mapped in windows of at most windowSize bytes so files larger than 2GB can
+ * be read; the window is placed so that the text since the last mark stays
+ * mapped whenever it fits. Positions returned by getPosition() are byte offsets
+ * relative to the last mark, which the lexer sets when it is initialized, and
+ * any number of characters can be unread back to it.
+ */
+public class MappedFileLexerSource extends LexerSource implements Closeable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+    // bytes kept mapped before the read position when the mark is too far behind
+    private static final int LOOK_BEHIND = 64;
+
+    private final int windowSize;
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long position;
+    private long mark;
+    // low surrogate of a supplementary character whose high surrogate was returned
+    private char pendingLowSurrogate;
+
+    public MappedFileLexerSource(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileLexerSource(File file, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        setNewSource(file);
+    }
+
+    public void setNewSource(File file) throws IOException {
+        close();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        window = null;
+        windowStart = 0;
+        windowEnd = 0;
+        position = 0;
+        mark = 0;
+        pendingLowSurrogate = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        window = null;
+    }
+
+    @Override
+    public void markPosition() {
+        mark = position;
+    }
+
+    @Override
+    public int getPosition() {
+        return (int) (position - mark);
+    }
+
+    // The absolute offset in the file of the next byte to be read
+    public long getFilePosition() {
+        return position;
+    }
+
+    private void map(long pos) throws IOException {
+        long start;
+        if (mark <= pos && pos - mark < windowSize / 2) {
+            start = mark;
+        } else {
+            start = Math.max(0, pos - Math.min(LOOK_BEHIND, windowSize / 2));
+        }
+        long length = Math.min(windowSize, fileSize - start);
+        window = channel.map(MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        windowEnd = start + length;
+    }
+
+    private int byteAt(long pos) throws IOException {
+        if (pos < windowStart || pos >= windowEnd) {
+            map(pos);
+        }
+        return window.get((int) (pos - windowStart)) & 0xFF;
+    }
+
+    private boolean isContinuation(long pos) throws IOException {
+        return pos < fileSize && (byteAt(pos) & 0xC0) == 0x80;
+    }
+
+    @Override
+    public char readCharacter() throws IOException {
+        if (pendingLowSurrogate != 0) {
+            previousCharacter = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+            return previousCharacter;
+        }
+        if (position >= fileSize) {
+            previousCharacter = Lexer.EOF;
+            return previousCharacter;
+        }
+        int b = byteAt(position);
+        if (b < 0x80) {
+            position++;
+            previousCharacter = (char) b;
+            return previousCharacter;
+        }
+        previousCharacter = decode(b);
+        return previousCharacter;
+    }
+
+    // Decodes the multi-byte sequence at position and moves past it.
+    // Malformed input decodes to U+FFFD one byte at a time.
+    private char decode(int b) throws IOException {
+        int cp;
+        if (b >= 0xC2 && b <= 0xDF && isContinuation(position + 1)) {
+            cp = ((b & 0x1F) << 6) | (byteAt(position + 1) & 0x3F);
+            position += 2;
+            return (char) cp;
+        } else if (b >= 0xE0 && b <= 0xEF && isContinuation(position + 1) && isContinuation(position + 2)) {
+            cp = ((b & 0x0F) << 12) | ((byteAt(position + 1) & 0x3F) << 6) | (byteAt(position + 2) & 0x3F);
+            if (cp >= 0x800 && !Character.isSurrogate((char) cp)) {
+                position += 3;
+                return (char) cp;
+            }
+        } else if (b >= 0xF0 && b <= 0xF4 && isContinuation(position + 1) && isContinuation(position + 2)
+                && isContinuation(position + 3)) {
+            cp = ((b & 0x07) << 18) | ((byteAt(position + 1) & 0x3F) << 12) | ((byteAt(position + 2) & 0x3F) << 6)
+                    | (byteAt(position + 3) & 0x3F);
+            if (cp >= 0x10000 && cp <= Character.MAX_CODE_POINT) {
+                position += 4;
+                pendingLowSurrogate = Character.lowSurrogate(cp);
+                return Character.highSurrogate(cp);
+            }
+        }
+        position++;
+        return REPLACEMENT_CHARACTER;
+    }
+
+    // Steps back one character. Unlike FileLexerSource, this can be repeated
+    // back to the beginning of the file.
+    @Override
+    public void unreadCharacter() throws IOException {
+        if (previousCharacter == Lexer.EOF && position >= fileSize) {
+            return;
+        }
+        if (pendingLowSurrogate != 0) {
+            // between the two halves of a supplementary character
+            pendingLowSurrogate = 0;
+            position -= 4;
+            return;
+        }
+        if (position == 0) {
+            return;
+        }
+        if (byteAt(position - 1) < 0x80) {
+            position--;
+            return;
+        }
+        // find the lead byte of the previous sequence
+        long lead = position - 1;
+        while (lead > 0 && position - lead < 4 && (byteAt(lead) & 0xC0) == 0x80) {
+            lead--;
+        }
+        long savedPosition = position;
+        position = lead;
+        char c = readCharacter();
+        if (position != savedPosition) {
+            // not a well-formed sequence ending here; it was read one byte at a time
+            position = savedPosition - 1;
+            pendingLowSurrogate = 0;
+        } else if (pendingLowSurrogate != 0) {
+            // the low surrogate is what gets read next
+            position = savedPosition;
+        } else {
+            position = lead;
+        }
+        previousCharacter = c;
+    }
+
+    @Override
+    public boolean atEnd() {
+        return position >= fileSize && pendingLowSurrogate == 0;
+    }
+
+    // The file contents are never copied to the heap as characters
+    @Override
+    public char[] getBuffer() {
+        return null;
+    }
+
+    @Override
+    public String getString(int position, int length) throws IOException {
+        long start = mark + position;
+        byte[] bytes = new byte[length];
+        if (start < windowStart || start + length > windowEnd) {
+            channel.map(MapMode.READ_ONLY, start, length).get(bytes);
+        } else {
+            // the absolute bulk get needs JDK 13; the Buffer cast keeps the
+            // call linkable on Java 8 when compiled by a later JDK
+            ByteBuffer dup = window.duplicate();
+            ((Buffer) dup).position((int) (start - windowStart));
+            dup.get(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -361,18 +361,16 @@ public class Operation extends ExprTree {
         // misc.
         if (op == OpKind_TERNARY_OP) {
             // ternary (if-operator)
-            MutableBoolean b = new MutableBoolean(false);
-
             // if the selector is UNDEFINED, the result is undefined
             if (vt1 == ValueType.UNDEFINED_VALUE) {
                 result.setUndefinedValue();
                 return SigValues.SIG_CHLD1.ordinal();
             }
 
-            if (!val1.isBooleanValueEquiv(b)) {
+            if (!val1.isBooleanValue()) {
                 result.setErrorValue();
                 return SigValues.SIG_CHLD1.ordinal();
-            } else if (b.booleanValue()) {
+            } else if (val1.getBoolVal()) {
                 result.copyFrom(val2);
                 return (SigValues.SIG_CHLD2.ordinal());
             } else {
@@ -422,80 +420,72 @@ public class Operation extends ExprTree {
     }
 
     public boolean privateEvaluate(EvalState state, Value result) throws HyracksDataException {
-        Value val1 = new Value();
-        Value val2 = new Value();
-        Value val3 = new Value();
-        boolean valid1, valid2, valid3;
-        int rval = 0;
-
-        valid1 = false;
-        valid2 = false;
-        valid3 = false;
-
-        AMutableInt32 operationKind = new AMutableInt32(OpKind_NO_OP);
-        ExprTreeHolder child1 = new ExprTreeHolder();
-        ExprTreeHolder child2 = new ExprTreeHolder();
-        ExprTreeHolder child3 = new ExprTreeHolder();
-        getComponents(operationKind, child1, child2, child3);
+        // the values of the children come from the state, which keeps them
+        // for the next evaluations
+        state.pushFrame();
+        boolean rval = privateEvaluate(state, result, state.newValue(), state.newValue(), state.newValue());
+        state.popFrame();
+        return rval;
+    }
 
+    private boolean privateEvaluate(EvalState state, Value result, Value val1, Value val2, Value val3)
+            throws HyracksDataException {
         // Evaluate all valid children
-        if (child1.getInnerTree() != null) {
-            if (!child1.publicEvaluate(state, val1)) {
+        if (child1 != null) {
+            if (!child1.privateEvaluate(state, val1)) {
                 result.setErrorValue();
                 return (false);
             }
-            valid1 = true;
 
             if (shortCircuit(state, val1, result)) {
                 return true;
             }
         }
 
-        if (child2.getInnerTree() != null) {
-            if (!child2.publicEvaluate(state, val2)) {
+        if (child2 != null) {
+            if (!child2.privateEvaluate(state, val2)) {
                 result.setErrorValue();
                 return (false);
             }
-            valid2 = true;
         }
-        if (child3.getInnerTree() != null) {
-            if (!child3.publicEvaluate(state, val3)) {
+        if (child3 != null) {
+            if (!child3.privateEvaluate(state, val3)) {
                 result.setErrorValue();
                 return (false);
             }
-            valid3 = true;
         }
 
-        rval = privateDoOperation(opKind, val1, val2, val3, valid1, valid2, valid3, result, state);
+        int rval = privateDoOperation(opKind, val1, val2, val3, child1 != null, child2 != null, child3 != null, result,
+                state);
 
         return (rval != SigValues.SIG_NONE.ordinal());
     }
 
     public boolean shortCircuit(EvalState state, Value arg1, Value result) throws HyracksDataException {
-        MutableBoolean arg1_bool = new MutableBoolean();
+        if (!arg1.isBooleanValue()) {
+            return false;
+        }
         switch (opKind) {
             case OpKind_LOGICAL_OR_OP:
-                if (arg1.isBooleanValueEquiv(arg1_bool) && arg1_bool.booleanValue()) {
+                if (arg1.getBoolVal()) {
                     result.setBooleanValue(true);
                     return true;
                 }
                 break;
             case OpKind_LOGICAL_AND_OP:
-                if (arg1.isBooleanValueEquiv(arg1_bool) && !arg1_bool.booleanValue()) {
+                if (!arg1.getBoolVal()) {
                     result.setBooleanValue(false);
                     return true;
                 }
                 break;
             case OpKind_TERNARY_OP:
-                if (arg1.isBooleanValueEquiv(arg1_bool)) {
-                    if (arg1_bool.booleanValue()) {
-                        if (child2 != null) {
-                            return child2.publicEvaluate(state, result);
-                        }
-                    } else {
-                        if (child3 != null) {
-                            return child3.publicEvaluate(state, result);
-                        }
+                if (arg1.getBoolVal()) {
+                    if (child2 != null) {
+                        return child2.publicEvaluate(state, result);
+                    }
+                } else {
+                    if (child3 != null) {
+                        return child3.publicEvaluate(state, result);
                     }
                 }
                 break;
@@ -719,7 +709,7 @@ public class Operation extends ExprTree {
 
         // if splitting is disallowed, fold the value and tree into a tree
         if (opPtr == null && newOp.getIntegerValue().intValue() != OpKind_NO_OP) {
-            tree.setInnerTree(Operation.createOperation(newOp.getIntegerValue().intValue(), val, tree));
+            tree.setInnerTree(Operation.createOperation(newOp.getIntegerValue().intValue(), tree, val));
             if (tree.getInnerTree() == null) {
                 return false;
             }
@@ -769,7 +759,7 @@ public class Operation extends ExprTree {
         } else if ((tree1.getInnerTree() != null && op1.getIntegerValue().intValue() == OpKind_NO_OP)
                 && (tree2.getInnerTree() != null && op2.getIntegerValue().intValue() == OpKind_NO_OP)) {
             // left and rightsons are trees only
-            if (null != (newOp = createOperation(op.getIntegerValue().intValue(), tree1, tree2))) {
+            if (null == (newOp = createOperation(op.getIntegerValue().intValue(), tree1, tree2))) {
                 return false;
             }
             tree.setInnerTree(newOp);
@@ -973,12 +963,6 @@ public class Operation extends ExprTree {
     }
 
     public static int doArithmetic(int op, Value v1, Value v2, Value result) throws HyracksDataException {
-        AMutableInt64 i1 = new AMutableInt64(0);
-        AMutableInt64 i2 = new AMutableInt64(0);
-        ClassAdTime t1 = new ClassAdTime();
-        AMutableDouble r1 = new AMutableDouble(0);
-        MutableBoolean b1 = new MutableBoolean();
-
         // ensure the operands have arithmetic types
         if ((!v1.isIntegerValue() && !v1.isRealValue() && !v1.isAbsoluteTimeValue() && !v1.isRelativeTimeValue() && !v1
                 .isBooleanValue())
@@ -990,18 +974,20 @@ public class Operation extends ExprTree {
 
         // take care of the unary arithmetic operators
         if (op == OpKind_UNARY_MINUS_OP) {
-            if (v1.isIntegerValue(i1)) {
-                result.setIntegerValue((-1L) * i1.getLongValue());
+            if (v1.isIntegerValue()) {
+                result.setIntegerValue((-1L) * v1.getLongVal());
                 return SigValues.SIG_CHLD1.ordinal();
-            } else if (v1.isRealValue(r1)) {
-                result.setRealValue((-1) * r1.getDoubleValue());
+            } else if (v1.isRealValue()) {
+                result.setRealValue((-1) * v1.getDoubleVal());
                 return SigValues.SIG_CHLD1.ordinal();
-            } else if (v1.isRelativeTimeValue(t1)) {
+            } else if (v1.isRelativeTimeValue()) {
+                ClassAdTime t1 = new ClassAdTime();
+                v1.isRelativeTimeValue(t1);
                 t1.setValue((-1) * t1.getTimeInMillis());
                 result.setRelativeTimeValue(t1);
                 return (SigValues.SIG_CHLD1.ordinal());
-            } else if (v1.isBooleanValue(b1)) {
-                result.setBooleanValue(!b1.booleanValue());
+            } else if (v1.isBooleanValue()) {
+                result.setBooleanValue(!v1.getBoolVal());
             } else if (v1.isExceptional()) {
                 // undefined or error --- same as operand
                 result.copyFrom(v1);
@@ -1015,32 +1001,32 @@ public class Operation extends ExprTree {
         // perform type promotions and proceed with arithmetic
         switch (coerceToNumber(v1, v2)) {
             case INTEGER_VALUE:
-                v1.isIntegerValue(i1);
-                v2.isIntegerValue(i2);
+                long i1 = v1.getLongVal();
+                long i2 = v2.getLongVal();
                 switch (op) {
                     case OpKind_ADDITION_OP:
-                        result.setIntegerValue(i1.getLongValue() + i2.getLongValue());
+                        result.setIntegerValue(i1 + i2);
                         return (SigValues.SIG_CHLD1.ordinal() | SigValues.SIG_CHLD2.ordinal());
 
                     case OpKind_SUBTRACTION_OP:
-                        result.setIntegerValue(i1.getLongValue() - i2.getLongValue());
+                        result.setIntegerValue(i1 - i2);
                         return (SigValues.SIG_CHLD1.ordinal() | SigValues.SIG_CHLD2.ordinal());
 
                     case OpKind_MULTIPLICATION_OP:
-                        result.setIntegerValue(i1.getLongValue() * i2.getLongValue());
+                        result.setIntegerValue(i1 * i2);
                         return (SigValues.SIG_CHLD1.ordinal() | SigValues.SIG_CHLD2.ordinal());
 
                     case OpKind_DIVISION_OP:
-                        if (i2.getLongValue() != 0L) {
-                            result.setIntegerValue(i1.getLongValue() / i2.getLongValue());
+                        if (i2 != 0L) {
+                            result.setIntegerValue(i1 / i2);
                         } else {
                             result.setErrorValue();
                         }
                         return (SigValues.SIG_CHLD1.ordinal() | SigValues.SIG_CHLD2.ordinal());
 
                     case OpKind_MODULUS_OP:
-                        if (i2.getLongValue() != 0) {
-                            result.setIntegerValue(i1.getLongValue() % i2.getLongValue());
+                        if (i2 != 0) {
+                            result.setIntegerValue(i1 % i2);
                         } else {
                             result.setErrorValue();
                         }
@@ -1065,19 +1051,10 @@ public class Operation extends ExprTree {
     }
 
     public static int doLogical(int op, Value v1, Value v2, Value result) throws HyracksDataException {
-        MutableBoolean b1 = new MutableBoolean();
-        MutableBoolean b2 = new MutableBoolean();
-
-        // first coerece inputs to boolean if they are considered equivalent
-        if (!v1.isBooleanValue(b1) && v1.isBooleanValueEquiv(b1)) {
-            v1.setBooleanValue(b1.booleanValue());
-        }
-        if (!v2.isBooleanValue(b2) && v2.isBooleanValueEquiv(b2)) {
-            v2.setBooleanValue(b2);
-        }
-
         ValueType vt1 = v1.getType();
         ValueType vt2 = v2.getType();
+        boolean b1 = vt1 == ValueType.BOOLEAN_VALUE && v1.getBoolVal();
+        boolean b2 = vt2 == ValueType.BOOLEAN_VALUE && v2.getBoolVal();
 
         if (vt1 != ValueType.UNDEFINED_VALUE && vt1 != ValueType.ERROR_VALUE && vt1 != ValueType.BOOLEAN_VALUE) {
             result.setErrorValue();
@@ -1091,7 +1068,7 @@ public class Operation extends ExprTree {
         // handle unary operator
         if (op == OpKind_LOGICAL_NOT_OP) {
             if (vt1 == ValueType.BOOLEAN_VALUE) {
-                result.setBooleanValue(!b1.booleanValue());
+                result.setBooleanValue(!b1);
             } else {
                 result.copyFrom(v1);
             }
@@ -1099,34 +1076,34 @@ public class Operation extends ExprTree {
         }
 
         if (op == OpKind_LOGICAL_OR_OP) {
-            if (vt1 == ValueType.BOOLEAN_VALUE && b1.booleanValue()) {
+            if (vt1 == ValueType.BOOLEAN_VALUE && b1) {
                 result.setBooleanValue(true);
                 return SigValues.SIG_CHLD1.ordinal();
             } else if (vt1 == ValueType.ERROR_VALUE) {
                 result.setErrorValue();
                 return SigValues.SIG_CHLD1.ordinal();
-            } else if (vt1 == ValueType.BOOLEAN_VALUE && !b1.booleanValue()) {
+            } else if (vt1 == ValueType.BOOLEAN_VALUE && !b1) {
                 result.copyFrom(v2);
             } else if (vt2 != ValueType.BOOLEAN_VALUE) {
                 result.copyFrom(v2);
-            } else if (b2.booleanValue()) {
+            } else if (b2) {
                 result.setBooleanValue(true);
             } else {
                 result.setUndefinedValue();
             }
             return (SigValues.SIG_CHLD1.ordinal() | SigValues.SIG_CHLD2.ordinal());
         } else if (op == OpKind_LOGICAL_AND_OP) {
-            if (vt1 == ValueType.BOOLEAN_VALUE && !b1.booleanValue()) {
+            if (vt1 == ValueType.BOOLEAN_VALUE && !b1) {
                 result.setBooleanValue(false);
                 return SigValues.SIG_CHLD1.ordinal();
             } else if (vt1 == ValueType.ERROR_VALUE) {
                 result.setErrorValue();
                 return SigValues.SIG_CHLD1.ordinal();
-            } else if (vt1 == ValueType.BOOLEAN_VALUE && b1.booleanValue()) {
+            } else if (vt1 == ValueType.BOOLEAN_VALUE && b1) {
                 result.copyFrom(v2);
             } else if (vt2 != ValueType.BOOLEAN_VALUE) {
                 result.copyFrom(v2);
-            } else if (!b2.booleanValue()) {
+            } else if (!b2) {
                 result.setBooleanValue(false);
             } else {
                 result.setUndefinedValue();
@@ -1205,29 +1182,27 @@ public class Operation extends ExprTree {
     public static final int EDOM = 33;
 
     public static int doRealArithmetic(int op, Value v1, Value v2, Value result) throws HyracksDataException {
-        AMutableDouble r1 = new AMutableDouble(0);
-        AMutableDouble r2 = new AMutableDouble(0);
         double comp = 0;
 
         // we want to prevent FPE and set the ERROR value on the result; on Unix
         // trap sigfpe and set the ClassAdExprFPE flag to true; on NT check the 
         // result against HUGE_VAL.  check errno for EDOM and ERANGE for kicks.
 
-        v1.isRealValue(r1);
-        v2.isRealValue(r2);
+        double r1 = v1.getDoubleVal();
+        double r2 = v2.getDoubleVal();
         int errno = 0;
         switch (op) {
             case OpKind_ADDITION_OP:
-                comp = r1.getDoubleValue() + r2.getDoubleValue();
+                comp = r1 + r2;
                 break;
             case OpKind_SUBTRACTION_OP:
-                comp = r1.getDoubleValue() - r2.getDoubleValue();
+                comp = r1 - r2;
                 break;
             case OpKind_MULTIPLICATION_OP:
-                comp = r1.getDoubleValue() * r2.getDoubleValue();
+                comp = r1 * r2;
                 break;
             case OpKind_DIVISION_OP:
-                comp = r1.getDoubleValue() / r2.getDoubleValue();
+                comp = r1 / r2;
                 break;
             case OpKind_MODULUS_OP:
                 errno = EDOM;
@@ -1355,11 +1330,9 @@ public class Operation extends ExprTree {
     }
 
     public static void compareStrings(int op, Value v1, Value v2, Value result) {
-        AMutableCharArrayString s1 = new AMutableCharArrayString();
-        AMutableCharArrayString s2 = new AMutableCharArrayString();
+        String s1 = v1.getStringVal();
+        String s2 = v2.getStringVal();
         int cmp;
-        v1.isStringValue(s1);
-        v2.isStringValue(s2);
         result.setBooleanValue(false);
         if (op == OpKind_META_EQUAL_OP || op == OpKind_META_NOT_EQUAL_OP) {
             cmp = s1.compareTo(s2);
@@ -1468,36 +1441,34 @@ public class Operation extends ExprTree {
     }
 
     public static void compareBools(int op, Value v1, Value v2, Value result) throws HyracksDataException {
-        MutableBoolean b1 = new MutableBoolean();
-        MutableBoolean b2 = new MutableBoolean();
+        boolean b1 = v1.getBoolVal();
+        boolean b2 = v2.getBoolVal();
         boolean compResult = false;
-        v1.isBooleanValue(b1);
-        v2.isBooleanValue(b2);
 
         switch (op) {
             case OpKind_LESS_THAN_OP:
-                compResult = (b1.compareTo(b2) < 0);
+                compResult = (Boolean.compare(b1, b2) < 0);
                 break;
             case OpKind_LESS_OR_EQUAL_OP:
-                compResult = (b1.compareTo(b2) <= 0);
+                compResult = (Boolean.compare(b1, b2) <= 0);
                 break;
             case OpKind_EQUAL_OP:
-                compResult = (b1.booleanValue() == b2.booleanValue());
+                compResult = (b1 == b2);
                 break;
             case OpKind_META_EQUAL_OP:
-                compResult = (b1.booleanValue() == b2.booleanValue());
+                compResult = (b1 == b2);
                 break;
             case OpKind_NOT_EQUAL_OP:
-                compResult = (b1.booleanValue() != b2.booleanValue());
+                compResult = (b1 != b2);
                 break;
             case OpKind_META_NOT_EQUAL_OP:
-                compResult = (b1.booleanValue() != b2.booleanValue());
+                compResult = (b1 != b2);
                 break;
             case OpKind_GREATER_THAN_OP:
-                compResult = (b1.compareTo(b2) > 0);
+                compResult = (Boolean.compare(b1, b2) > 0);
                 break;
             case OpKind_GREATER_OR_EQUAL_OP:
-                compResult = (b1.compareTo(b2) >= 0);
+                compResult = (Boolean.compare(b1, b2) >= 0);
                 break;
             default:
                 // should not get here
@@ -1507,35 +1478,33 @@ public class Operation extends ExprTree {
     }
 
     public static void compareIntegers(int op, Value v1, Value v2, Value result) throws HyracksDataException {
-        AMutableInt64 i1 = new AMutableInt64(0);
-        AMutableInt64 i2 = new AMutableInt64(0);
+        long i1 = v1.getLongVal();
+        long i2 = v2.getLongVal();
         boolean compResult = false;
-        v1.isIntegerValue(i1);
-        v2.isIntegerValue(i2);
         switch (op) {
             case OpKind_LESS_THAN_OP:
-                compResult = (i1.getLongValue() < i2.getLongValue());
+                compResult = (i1 < i2);
                 break;
             case OpKind_LESS_OR_EQUAL_OP:
-                compResult = (i1.getLongValue() <= i2.getLongValue());
+                compResult = (i1 <= i2);
                 break;
             case OpKind_EQUAL_OP:
-                compResult = (i1.getLongValue() == i2.getLongValue());
+                compResult = (i1 == i2);
                 break;
             case OpKind_META_EQUAL_OP:
-                compResult = (i1.getLongValue() == i2.getLongValue());
+                compResult = (i1 == i2);
                 break;
             case OpKind_NOT_EQUAL_OP:
-                compResult = (i1.getLongValue() != i2.getLongValue());
+                compResult = (i1 != i2);
                 break;
             case OpKind_META_NOT_EQUAL_OP:
-                compResult = (i1.getLongValue() != i2.getLongValue());
+                compResult = (i1 != i2);
                 break;
             case OpKind_GREATER_THAN_OP:
-                compResult = (i1.getLongValue() > i2.getLongValue());
+                compResult = (i1 > i2);
                 break;
             case OpKind_GREATER_OR_EQUAL_OP:
-                compResult = (i1.getLongValue() >= i2.getLongValue());
+                compResult = (i1 >= i2);
                 break;
             default:
                 // should not get here
@@ -1545,37 +1514,34 @@ public class Operation extends ExprTree {
     }
 
     public static void compareReals(int op, Value v1, Value v2, Value result) throws HyracksDataException {
-        AMutableDouble r1 = new AMutableDouble(0);
-        AMutableDouble r2 = new AMutableDouble(0);
+        double r1 = v1.getDoubleVal();
+        double r2 = v2.getDoubleVal();
         boolean compResult = false;
 
-        v1.isRealValue(r1);
-        v2.isRealValue(r2);
-
         switch (op) {
             case OpKind_LESS_THAN_OP:
-                compResult = (r1.getDoubleValue() < r2.getDoubleValue());
+                compResult = (r1 < r2);
                 break;
             case OpKind_LESS_OR_EQUAL_OP:
-                compResult = (r1.getDoubleValue() <= r2.getDoubleValue());
+                compResult = (r1 <= r2);
                 break;
             case OpKind_EQUAL_OP:
-                compResult = (r1.getDoubleValue() == r2.getDoubleValue());
+                compResult = (r1 == r2);
                 break;
             case OpKind_META_EQUAL_OP:
-                compResult = (r1.getDoubleValue() == r2.getDoubleValue());
+                compResult = (r1 == r2);
                 break;
             case OpKind_NOT_EQUAL_OP:
-                compResult = (r1.getDoubleValue() != r2.getDoubleValue());
+                compResult = (r1 != r2);
                 break;
             case OpKind_META_NOT_EQUAL_OP:
-                compResult = (r1.getDoubleValue() != r2.getDoubleValue());
+                compResult = (r1 != r2);
                 break;
             case OpKind_GREATER_THAN_OP:
-                compResult = (r1.getDoubleValue() > r2.getDoubleValue());
+                compResult = (r1 > r2);
                 break;
             case OpKind_GREATER_OR_EQUAL_OP:
-                compResult = (r1.getDoubleValue() >= r2.getDoubleValue());
+                compResult = (r1 >= r2);
                 break;
             default:
                 // should not get here
@@ -1590,10 +1556,6 @@ public class Operation extends ExprTree {
     //  + if v1 is an int and v2 is a real, convert v1 to real; return REAL_VALUE
     //  + if v1 is a real and v2 is an int, convert v2 to real; return REAL_VALUE
     public static ValueType coerceToNumber(Value v1, Value v2) {
-        AMutableInt64 i = new AMutableInt64(0);
-        AMutableDouble r = new AMutableDouble(0);
-        MutableBoolean b = new MutableBoolean();
-
         // either of v1, v2 not numerical?
         if (v1.isClassAdValue() || v2.isClassAdValue())
             return ValueType.CLASSAD_VALUE;
@@ -1611,33 +1573,25 @@ public class Operation extends ExprTree {
             return ValueType.RELATIVE_TIME_VALUE;
 
         // promote booleans to integers
-        if (v1.isBooleanValue(b)) {
-            if (b.booleanValue()) {
-                v1.setIntegerValue(1);
-            } else {
-                v1.setIntegerValue(0);
-            }
+        if (v1.isBooleanValue()) {
+            v1.setIntegerValue(v1.getBoolVal() ? 1 : 0);
         }
 
-        if (v2.isBooleanValue(b)) {
-            if (b.booleanValue()) {
-                v2.setIntegerValue(1);
-            } else {
-                v2.setIntegerValue(0);
-            }
+        if (v2.isBooleanValue()) {
+            v2.setIntegerValue(v2.getBoolVal() ? 1 : 0);
         }
 
         // both v1 and v2 of same numerical type
-        if (v1.isIntegerValue(i) && v2.isIntegerValue(i))
+        if (v1.isIntegerValue() && v2.isIntegerValue())
             return ValueType.INTEGER_VALUE;
-        if (v1.isRealValue(r) && v2.isRealValue(r))
+        if (v1.isRealValue() && v2.isRealValue())
             return ValueType.REAL_VALUE;
 
         // type promotions required
-        if (v1.isIntegerValue(i) && v2.isRealValue(r))
-            v1.setRealValue((double) i.getLongValue());
-        else if (v1.isRealValue(r) && v2.isIntegerValue(i))
-            v2.setRealValue((double) i.getLongValue());
+        if (v1.isIntegerValue() && v2.isRealValue())
+            v1.setRealValue((double) v1.getLongVal());
+        else if (v1.isRealValue() && v2.isIntegerValue())
+            v2.setRealValue((double) v2.getLongVal());
 
         return ValueType.REAL_VALUE;
     }
@@ -1692,7 +1646,7 @@ public class Operation extends ExprTree {
         if (lit == null) {
             return null;
         }
-        Operation newOp = createOperation(op, lit, tree);
+        Operation newOp = createOperation(op, tree, lit);
         return newOp;
     }
 
@@ -1718,7 +1672,7 @@ public class Operation extends ExprTree {
                     tree.setInnerTree(Operation.createOperation(opKind, fChild1));
                     return (tree.getInnerTree() != null);
                 } else {
-                    privateDoOperation(opKind, eval1, null, null, true, false, false, val);
+                    privateDoOperation(opKind, eval1, eval2, eval3, true, false, false, val);
                     tree.setInnerTree(null);
                     eval1.clear();
                     return true;
@@ -1785,7 +1739,7 @@ public class Operation extends ExprTree {
 
                 // if both arguments Flattened to values, Evaluate now
                 if (fChild1.getInnerTree() == null && fChild2.getInnerTree() == null) {
-                    privateDoOperation(opKind, eval1, eval2, null, true, true, false, val);
+                    privateDoOperation(opKind, eval1, eval2, eval3, true, true, false, val);
                     tree.setInnerTree(null);
                     return true;
                 }
@@ -1886,12 +1840,11 @@ public class Operation extends ExprTree {
 
     @Override
     public void reset() {
+        // the children come from the parser pools too and may already be in
+        // use by another tree, so they are dropped rather than reset
         opKind = OpKind_NO_OP;
-        if (child1 != null)
-            child1.reset();
-        if (child2 != null)
-            child2.reset();
-        if (child3 != null)
-            child3.reset();
+        child1 = null;
+        child2 = null;
+        child3 = null;
     }
 }
\ No newline at end of file
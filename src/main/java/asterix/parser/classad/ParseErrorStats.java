@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The records a tolerant ClassAdParser skipped, counted by the kind of the
+ * first error found in each, with the first few of them kept as samples.
+ */
+public class ParseErrorStats {
+
+    public enum ErrorKind {
+        // a character sequence that is not a token
+        LEXICAL,
+        // a token where it is not allowed
+        SYNTAX,
+        // the record ends in the middle of an ad or expression
+        TRUNCATED,
+        // an old format line that is not "name = value"
+        BAD_LINE
+    }
+
+    public static class Sample {
+        private final ErrorKind kind;
+        private final long record;
+        private final int position;
+        private final String message;
+
+        Sample(ErrorKind kind, long record, int position, String message) {
+            this.kind = kind;
+            this.record = record;
+            this.position = position;
+            this.message = message;
+        }
+
+        public ErrorKind getKind() {
+            return kind;
+        }
+
+        // The number of the record, counting from 0, among the records the
+        // parser has read
+        public long getRecord() {
+            return record;
+        }
+
+        // The position of the error in the record, or in the line for the old format
+        public int getPosition() {
+            return position;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " in record " + record + " at " + position + ": " + message;
+        }
+    }
+
+    public static final int DEFAULT_MAX_SAMPLES = 32;
+
+    private final long[] counts = new long[ErrorKind.values().length];
+    private final List<Sample> samples = new ArrayList<Sample>();
+    private final int maxSamples;
+    private long records = 0;
+
+    public ParseErrorStats() {
+        this(DEFAULT_MAX_SAMPLES);
+    }
+
+    public ParseErrorStats(int maxSamples) {
+        this.maxSamples = maxSamples;
+    }
+
+    void countRecord() {
+        records++;
+    }
+
+    void skip(ErrorKind kind, int position, String message) {
+        counts[kind.ordinal()]++;
+        if (samples.size() < maxSamples) {
+            samples.add(new Sample(kind, records - 1, position, message));
+        }
+    }
+
+    // The number of records read, including the ones that were skipped
+    public long getRecordCount() {
+        return records;
+    }
+
+    public long getSkippedCount() {
+        long skipped = 0;
+        for (long count : counts) {
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    public long getSkippedCount(ErrorKind kind) {
+        return counts[kind.ordinal()];
+    }
+
+    public List<Sample> getSamples() {
+        return Collections.unmodifiableList(samples);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        samples.clear();
+        records = 0;
+    }
+}
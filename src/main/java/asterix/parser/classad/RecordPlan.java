@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.asterix.om.types.ARecordType;
+import org.apache.asterix.om.types.ATypeTag;
+import org.apache.asterix.om.types.IAType;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+
+/**
+ * How ClassAdParser writes the ads of one record type, resolved against the
+ * type once and kept for every record that follows: the field id and
+ * serialized name of each attribute, and for each field the type tag each
+ * kind of value is written as. A null type is the plan of open records.
+ */
+class RecordPlan {
+
+    static class FieldPlan {
+        // -1 for an open field
+        final int fieldId;
+        // the serialized name of an open field
+        final ArrayBackedValueStorage name;
+        // a closed field that may be left out
+        final boolean optional;
+        final ValuePlan value;
+
+        FieldPlan(int fieldId, ArrayBackedValueStorage name, boolean optional, ValuePlan value) {
+            this.fieldId = fieldId;
+            this.name = name;
+            this.optional = optional;
+            this.value = value;
+        }
+    }
+
+    static class ValuePlan {
+        // null for any type
+        final IAType type;
+        // by value type, the tag of the value written, or null if the type
+        // does not accept it
+        final ATypeTag[] tags = new ATypeTag[ValueType.values().length];
+        // the record or list type that record and list values are written as
+        IAType recordType;
+        IAType listType;
+        // compiled when the first record or list value is written
+        RecordPlan record;
+        ValuePlan items;
+
+        ValuePlan(IAType type) {
+            this.type = type;
+        }
+
+        ATypeTag getTag(ValueType valueType) {
+            return tags[valueType.ordinal()];
+        }
+    }
+
+    final ARecordType type;
+    // keyed by the atom of each spelling, as closed names are case sensitive
+    final Map<CaseInsensitiveString, FieldPlan> fields = new IdentityHashMap<CaseInsensitiveString, FieldPlan>();
+
+    RecordPlan(ARecordType type) {
+        this.type = type;
+    }
+}
@@ -78,4 +78,9 @@ public class StringLexerSource extends LexerSource {
         return aString.toCharArray();
     }
 
+    @Override
+    public String getString(int position, int length) {
+        return aString.substring(position, position + length);
+    }
+
 }
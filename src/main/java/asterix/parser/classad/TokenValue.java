@@ -20,6 +20,7 @@ package asterix.parser.classad;
 
 import asterix.parser.classad.AMutableCharArrayString;
 import asterix.parser.classad.AMutableNumberFactor;
+import asterix.parser.classad.CaseInsensitiveString;
 import asterix.parser.classad.ClassAdTime;
 import asterix.parser.classad.TokenValue;
 import asterix.parser.classad.Lexer.TokenType;
@@ -37,6 +38,8 @@ public class TokenValue {
     private boolean boolValue;
     private AMutableCharArrayString strValue;
     private ClassAdTime time;
+    // the interned name of an identifier
+    private CaseInsensitiveString atom;
 
     public TokenValue() {
         tt = TokenType.LEX_TOKEN_ERROR;
@@ -46,6 +49,7 @@ public class TokenValue {
         boolValue = false;
         strValue = new AMutableCharArrayString();
         time = new ClassAdTime();
+        atom = null;
     }
 
     public void setTokenType(TokenType t) {
@@ -78,6 +82,10 @@ public class TokenValue {
         strValue.setValue(aString);
     }
 
+    public void setAtom(CaseInsensitiveString atom) {
+        this.atom = atom;
+    }
+
     public void setAbsTimeValue(ClassAdTime asecs) {
         time.setValue(asecs);
     }
@@ -124,6 +132,7 @@ public class TokenValue {
         boolValue = tv.boolValue;
         time.setValue(tv.time);
         strValue.setValue(tv.strValue);
+        atom = tv.atom;
     }
 
     public void reset() {
@@ -134,6 +143,7 @@ public class TokenValue {
         boolValue = false;
         strValue.reset();
         time.reset();
+        atom = null;
     }
 
     public NumberFactor getFactor() {
@@ -156,6 +166,10 @@ public class TokenValue {
         return strValue;
     }
 
+    public CaseInsensitiveString getAtom() {
+        return atom;
+    }
+
     public ClassAdTime getTimeValue() {
         return time;
     }
@@ -261,4 +261,132 @@ public class Util {
     public static boolean isNan(double x) {
         return Double.isNaN(x);
     }
+
+    // The powers of ten that are exactly representable as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    // Integers up to this value are exactly representable as doubles
+    private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+    /**
+     * Same as Long.parseLong(new String(chars, 0, length)), without creating
+     * the string for the decimal integers the lexer produces.
+     */
+    public static long parseLong(char[] chars, int length) {
+        int i = 0;
+        boolean negative = length > 0 && chars[0] == '-';
+        if (negative) {
+            i++;
+        }
+        // up to 18 digits can't overflow
+        if (length == i || length - i > 18) {
+            return Long.parseLong(new String(chars, 0, length));
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(new String(chars, 0, length));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Same as Double.parseDouble(new String(chars, 0, length)). When the
+     * digits fit in a double and the power of ten is exact, a single
+     * multiplication or division gives the correctly rounded result (Clinger's
+     * fast path); other numbers go through Double.parseDouble.
+     */
+    public static double parseDouble(char[] chars, int length) {
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (chars[0] == '-' || chars[0] == '+')) {
+            negative = chars[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        for (; i < length && isAsciiDigit(chars[i]); i++) {
+            seenDigit = true;
+            if (mantissa != 0 || chars[i] != '0') {
+                if (++digits > 18) {
+                    return Double.parseDouble(new String(chars, 0, length));
+                }
+                mantissa = mantissa * 10 + (chars[i] - '0');
+            }
+        }
+        if (i < length && chars[i] == '.') {
+            for (i++; i < length && isAsciiDigit(chars[i]); i++) {
+                seenDigit = true;
+                if (mantissa != 0 || chars[i] != '0') {
+                    if (++digits > 18) {
+                        return Double.parseDouble(new String(chars, 0, length));
+                    }
+                    mantissa = mantissa * 10 + (chars[i] - '0');
+                }
+                exponent--;
+            }
+        }
+        if (seenDigit && i < length && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i++;
+            }
+            int start = i;
+            int value = 0;
+            for (; i < length && isAsciiDigit(chars[i]); i++) {
+                if (value < 100000) {
+                    value = value * 10 + (chars[i] - '0');
+                }
+            }
+            if (i == start) {
+                return Double.parseDouble(new String(chars, 0, length));
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (!seenDigit || i != length) {
+            return Double.parseDouble(new String(chars, 0, length));
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa > MAX_EXACT_INTEGER) {
+            // trailing zeros may bring the digits into range
+            while (mantissa % 10 == 0) {
+                mantissa /= 10;
+                exponent++;
+            }
+            if (mantissa > MAX_EXACT_INTEGER) {
+                return Double.parseDouble(new String(chars, 0, length));
+            }
+        }
+        double value;
+        if (exponent < 0 && exponent >= -22) {
+            value = mantissa / EXACT_POWERS_OF_TEN[-exponent];
+        } else if (exponent >= 0 && exponent <= 22) {
+            value = mantissa * EXACT_POWERS_OF_TEN[exponent];
+        } else if (exponent > 22 && exponent <= 22 + 15) {
+            // move the excess into the mantissa while it stays exact
+            for (; exponent > 22; exponent--) {
+                if (mantissa > MAX_EXACT_INTEGER / 10) {
+                    return Double.parseDouble(new String(chars, 0, length));
+                }
+                mantissa *= 10;
+            }
+            value = mantissa * EXACT_POWERS_OF_TEN[22];
+        } else {
+            return Double.parseDouble(new String(chars, 0, length));
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isAsciiDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
 }
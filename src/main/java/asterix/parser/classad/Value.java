@@ -35,12 +35,13 @@ import org.apache.hyracks.api.exceptions.HyracksDataException;
 public class Value {
 
     private ValueType valueType;
-    private long longVal;
-    private double doubleVal;
-    private boolean boolVal;
-    private ClassAdTime timeVal = new ClassAdTime();
-    private ClassAd classadVal = new ClassAd();
-    private ExprList listVal = new ExprList();
+    // the integer, the boolean as 0 or 1, or the bits of the real
+    private long primitive;
+    // the payloads of the other types, allocated when a value of the type is
+    // first set and reused by the next ones
+    private ClassAdTime timeVal;
+    private ClassAd classadVal;
+    private ExprList listVal;
     private String stringVal;
 
     /// Value types
@@ -92,7 +93,7 @@ public class Value {
 
     public boolean isBooleanValue(MutableBoolean b) {
         if (valueType == ValueType.BOOLEAN_VALUE) {
-            b.setValue(boolVal);
+            b.setValue(primitive != 0);
             return true;
         }
         return false;
@@ -104,7 +105,7 @@ public class Value {
 
     public boolean isIntegerValue(AMutableInt64 i) {
         if (valueType == ValueType.INTEGER_VALUE) {
-            i.setValue(longVal);
+            i.setValue(primitive);
             return true;
         }
         return false;
@@ -117,7 +118,7 @@ public class Value {
     public boolean isRealValue(AMutableDouble r) {
 
         if (valueType == ValueType.REAL_VALUE) {
-            r.setValue(doubleVal);
+            r.setValue(Double.longBitsToDouble(primitive));
             return true;
         }
         return false;
@@ -230,15 +231,15 @@ public class Value {
     public boolean isNumber(AMutableInt64 i) {
         switch (valueType) {
             case INTEGER_VALUE:
-                i.setValue(longVal);
+                i.setValue(primitive);
                 return true;
 
             case REAL_VALUE:
-                i.setValue((long) doubleVal);
+                i.setValue((long) Double.longBitsToDouble(primitive));
                 return true;
 
             case BOOLEAN_VALUE:
-                i.setValue(boolVal ? 1L : 0L);
+                i.setValue(primitive);
                 return true;
             default:
                 return false;
@@ -248,15 +249,15 @@ public class Value {
     public boolean isNumber(AMutableDouble r) {
         switch (valueType) {
             case INTEGER_VALUE:
-                r.setValue((double) longVal);
+                r.setValue((double) primitive);
                 return true;
 
             case REAL_VALUE:
-                r.setValue(doubleVal);
+                r.setValue(Double.longBitsToDouble(primitive));
                 return true;
 
             case BOOLEAN_VALUE:
-                r.setValue(boolVal ? 1.0 : 0.0);
+                r.setValue((double) primitive);
                 return true;
 
             default:
@@ -284,7 +285,7 @@ public class Value {
                 timeVal = new ClassAdTime(value.timeVal);
                 break;
             case BOOLEAN_VALUE:
-                this.boolVal = value.boolVal;
+                this.primitive = value.primitive;
                 break;
             case CLASSAD_VALUE:
                 this.classadVal = new ClassAd(value.classadVal);
@@ -292,7 +293,7 @@ public class Value {
             case ERROR_VALUE:
                 break;
             case INTEGER_VALUE:
-                this.longVal = value.longVal;
+                this.primitive = value.primitive;
                 break;
             case LIST_VALUE:
                 this.listVal = new ExprList(value.listVal);
@@ -300,7 +301,7 @@ public class Value {
             case NULL_VALUE:
                 break;
             case REAL_VALUE:
-                this.doubleVal = value.doubleVal;
+                this.primitive = value.primitive;
                 break;
             case RELATIVE_TIME_VALUE:
                 this.timeVal = new ClassAdTime(value.timeVal);
@@ -322,32 +323,32 @@ public class Value {
         valueType = value.valueType;
         switch (value.valueType) {
             case ABSOLUTE_TIME_VALUE:
-                ((ClassAdTime) this.timeVal).setValue((ClassAdTime) value.timeVal);
+                timeVal().setValue(value.timeVal);
                 break;
             case BOOLEAN_VALUE:
-                this.boolVal = value.boolVal;
+                this.primitive = value.primitive;
                 break;
             case CLASSAD_VALUE:
-                ((ClassAd) this.classadVal).setValue((ClassAd) value.classadVal);
+                classadVal().setValue(value.classadVal);
                 break;
             case ERROR_VALUE:
                 break;
             case INTEGER_VALUE:
-                this.longVal = value.longVal;
+                this.primitive = value.primitive;
                 break;
             case LIST_VALUE:
-                ((ExprList) this.listVal).setValue((ExprList) value.listVal);
+                listVal().setValue(value.listVal);
                 break;
             case NULL_VALUE:
                 break;
             case REAL_VALUE:
-                this.doubleVal = value.doubleVal;
+                this.primitive = value.primitive;
                 break;
             case RELATIVE_TIME_VALUE:
-                this.timeVal.setValue((value.timeVal));
+                timeVal().setValue(value.timeVal);
                 break;
             case SLIST_VALUE:
-                listVal.setValue((ExprList) value.listVal);
+                listVal().setValue(value.listVal);
                 break;
             case STRING_VALUE:
                 stringVal = value.stringVal;
@@ -371,27 +372,25 @@ public class Value {
 
     public void setRealValue(double r) {
         valueType = ValueType.REAL_VALUE;
-        doubleVal = r;
+        primitive = Double.doubleToRawLongBits(r);
     }
 
     public void setRealValue(AMutableDouble r) {
-        valueType = ValueType.REAL_VALUE;
-        doubleVal = r.getDoubleValue();
+        setRealValue(r.getDoubleValue());
     }
 
     public void setBooleanValue(boolean b) {
         valueType = ValueType.BOOLEAN_VALUE;
-        boolVal = b;
+        primitive = b ? 1L : 0L;
     }
 
     public void setBooleanValue(MutableBoolean b) {
-        valueType = ValueType.BOOLEAN_VALUE;
-        boolVal = b.booleanValue();
+        setBooleanValue(b.booleanValue());
     }
 
     public void setIntegerValue(long i) {
         valueType = ValueType.INTEGER_VALUE;
-        longVal = i;
+        primitive = i;
     }
 
     public void setUndefinedValue() {
@@ -414,32 +413,32 @@ public class Value {
 
     public void setListValue(ExprList expList) throws HyracksDataException {
         valueType = expList.isShared ? ValueType.SLIST_VALUE : ValueType.LIST_VALUE;
-        listVal.setValue(expList);
+        listVal().setValue(expList);
     }
 
     public void setClassAdValue(ClassAd ad) {
         clear();
         valueType = ValueType.CLASSAD_VALUE;
-        ((ClassAd) classadVal).setValue(ad);
+        classadVal().setValue(ad);
     }
 
     public void setRelativeTimeValue(ClassAdTime rsecs) {
         clear();
         valueType = ValueType.RELATIVE_TIME_VALUE;
-        ((ClassAdTime) timeVal).setValue(rsecs);
+        timeVal().setValue(rsecs);
     }
 
     public void setRelativeTimeValue(long rsecs) {
         clear();
         valueType = ValueType.RELATIVE_TIME_VALUE;
-        ((ClassAdTime) timeVal).setValue(rsecs);
+        timeVal().setValue(rsecs);
         timeVal.isAbsolute(false);
     }
 
     public void setAbsoluteTimeValue(ClassAdTime tim) {
         clear();
         valueType = ValueType.ABSOLUTE_TIME_VALUE;
-        ((ClassAdTime) timeVal).setValue(tim);
+        timeVal().setValue(tim);
     }
 
     public boolean sameAs(Value otherValue) {
@@ -454,24 +453,22 @@ public class Value {
                     is_same = true;
                     break;
                 case BOOLEAN_VALUE:
-                    is_same = (boolVal == otherValue.boolVal);
-                    break;
                 case INTEGER_VALUE:
-                    is_same = (longVal == otherValue.longVal);
+                    is_same = (primitive == otherValue.primitive);
                     break;
                 case REAL_VALUE:
-                    is_same = (doubleVal == otherValue.doubleVal);
+                    is_same = (getDoubleVal() == otherValue.getDoubleVal());
                     break;
                 case LIST_VALUE:
                 case SLIST_VALUE:
-                    is_same = ((ExprList) listVal).equals(otherValue.listVal);
+                    is_same = listVal.equals(otherValue.listVal);
                     break;
                 case CLASSAD_VALUE:
-                    is_same = ((ClassAd) classadVal).equals(otherValue.classadVal);
+                    is_same = classadVal.equals(otherValue.classadVal);
                     break;
                 case RELATIVE_TIME_VALUE:
                 case ABSOLUTE_TIME_VALUE:
-                    is_same = ((ClassAdTime) timeVal).equals(otherValue.timeVal);
+                    is_same = timeVal.equals(otherValue.timeVal);
                     break;
                 case STRING_VALUE:
                     is_same = stringVal.equals(otherValue.stringVal);
@@ -505,7 +502,7 @@ public class Value {
                 }
                 return unparsed_text.toString();
             case BOOLEAN_VALUE:
-                if (boolVal) {
+                if (primitive != 0) {
                     return "true";
                 } else {
                     return "false";
@@ -513,11 +510,11 @@ public class Value {
             case ERROR_VALUE:
                 return "error";
             case INTEGER_VALUE:
-                return String.valueOf(longVal);
+                return String.valueOf(primitive);
             case NULL_VALUE:
                 return "(null)";
             case REAL_VALUE:
-                return String.valueOf(doubleVal);
+                return String.valueOf(getDoubleVal());
             case STRING_VALUE:
                 return stringVal;
             case UNDEFINED_VALUE:
@@ -745,31 +742,24 @@ public class Value {
                 return;
 
             case BOOLEAN_VALUE:
-                boolVal = val.boolVal;
-                return;
-
             case INTEGER_VALUE:
-                longVal = val.longVal;
-                return;
-
             case REAL_VALUE:
-
-                doubleVal = val.doubleVal;
+                primitive = val.primitive;
                 return;
             case UNDEFINED_VALUE:
             case ERROR_VALUE:
                 return;
             case LIST_VALUE:
             case SLIST_VALUE:
-                listVal.copyFrom(val.listVal);
+                listVal().copyFrom(val.listVal);
                 return;
             case CLASSAD_VALUE:
-                ((ClassAd) classadVal).copyFrom(val.classadVal);
+                classadVal().copyFrom(val.classadVal);
                 return;
 
             case RELATIVE_TIME_VALUE:
             case ABSOLUTE_TIME_VALUE:
-                timeVal.setValue(val.timeVal);
+                timeVal().setValue(val.timeVal);
                 return;
             default:
                 setUndefinedValue();
@@ -832,7 +822,7 @@ public class Value {
 
     public boolean isSListValue(ExprList l) throws HyracksDataException {
         if (valueType == ValueType.SLIST_VALUE || valueType == ValueType.LIST_VALUE) {
-            l.setValue((ExprList) listVal);
+            l.setValue(listVal);
             return true;
         } else {
             return false;
@@ -843,27 +833,50 @@ public class Value {
         return valueType;
     }
 
+    // The integer, the boolean as 0 or 1, or the real truncated
     public long getLongVal() {
-        return longVal;
+        return valueType == ValueType.REAL_VALUE ? (long) Double.longBitsToDouble(primitive) : primitive;
     }
 
+    // The real, or the integer or the boolean converted
     public double getDoubleVal() {
-        return doubleVal;
+        return valueType == ValueType.REAL_VALUE ? Double.longBitsToDouble(primitive) : (double) primitive;
     }
 
     public boolean getBoolVal() {
-        return boolVal;
+        return primitive != 0;
     }
 
     public ClassAdTime getTimeVal() {
-        return timeVal;
+        return timeVal();
     }
 
     public ClassAd getClassadVal() {
-        return classadVal;
+        return classadVal();
     }
 
     public ExprList getListVal() {
+        return listVal();
+    }
+
+    private ClassAdTime timeVal() {
+        if (timeVal == null) {
+            timeVal = new ClassAdTime();
+        }
+        return timeVal;
+    }
+
+    private ClassAd classadVal() {
+        if (classadVal == null) {
+            classadVal = new ClassAd();
+        }
+        return classadVal;
+    }
+
+    private ExprList listVal() {
+        if (listVal == null) {
+            listVal = new ExprList();
+        }
         return listVal;
     }
 
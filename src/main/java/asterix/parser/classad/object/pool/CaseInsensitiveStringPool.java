@@ -18,30 +18,11 @@
  */
 package asterix.parser.classad.object.pool;
 
-import java.util.Stack;
-
 import asterix.parser.classad.object.pool.Pool;
 import asterix.parser.classad.CaseInsensitiveString;
 
 public class CaseInsensitiveStringPool extends Pool<CaseInsensitiveString> {
 
-    protected Stack<CaseInsensitiveString> stock = new Stack<CaseInsensitiveString>();
-    public CaseInsensitiveString get() {
-        if (!stock.isEmpty()) {
-            return stock.pop();
-        } else {
-            return newInstance();
-
-        }
-    }
-
-    public void reset() {
-    }
-
-    public void put(CaseInsensitiveString aString) {
-        stock.push(aString);
-    }
-
     @Override
     public CaseInsensitiveString newInstance() {
         return new CaseInsensitiveString();
@@ -49,5 +30,6 @@ public class CaseInsensitiveStringPool extends Pool<CaseInsensitiveString> {
 
     @Override
     protected void reset(CaseInsensitiveString obj) {
+        obj.set(null);
     }
 }
@@ -21,12 +21,44 @@ package asterix.parser.classad.object.pool;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Objects handed out while a record is parsed, and taken back all at once by
+ * reset() when the next record starts. A pool belongs to one parser and is
+ * not thread-safe: parsers that run concurrently each have their own pools.
+ * A record that needs more objects than the pool retains still gets them,
+ * but no more than maxRetained are kept after it, and every trimWindow
+ * resets the pool is trimmed to the most objects any record of the window
+ * used, so that one outlier record doesn't hold memory for good.
+ */
 public abstract class Pool<T> {
+    public static final int DEFAULT_MAX_RETAINED = 4096;
+    public static final int DEFAULT_TRIM_WINDOW = 1024;
+
     protected List<T> inUse = new ArrayList<T>();
     protected int pointer = 0;
+    private final int maxRetained;
+    private final int trimWindow;
+    // statistics
+    private int highWaterMark = 0;
+    private long allocated = 0;
+    private long trimmed = 0;
+    // the most objects used by a record since the last trim
+    private int windowPeak = 0;
+    private int resets = 0;
+
+    protected Pool() {
+        this(DEFAULT_MAX_RETAINED, DEFAULT_TRIM_WINDOW);
+    }
+
+    protected Pool(int maxRetained, int trimWindow) {
+        this.maxRetained = maxRetained;
+        this.trimWindow = trimWindow;
+    }
+
     public T get() {
-        if (pointer>=inUse.size()) {
+        if (pointer >= inUse.size()) {
             inUse.add(newInstance());
+            allocated++;
         }
         T t = inUse.get(pointer);
         pointer++;
@@ -37,8 +69,50 @@ public abstract class Pool<T> {
     public abstract T newInstance();
 
     public void reset() {
+        if (pointer > highWaterMark) {
+            highWaterMark = pointer;
+        }
+        if (pointer > windowPeak) {
+            windowPeak = pointer;
+        }
         pointer = 0;
+        if (inUse.size() > maxRetained) {
+            trim(maxRetained);
+        } else if (++resets >= trimWindow) {
+            if (inUse.size() > windowPeak) {
+                trim(windowPeak);
+            }
+        } else {
+            return;
+        }
+        resets = 0;
+        windowPeak = 0;
+    }
+
+    // Drops the retained objects past the first size
+    private void trim(int size) {
+        trimmed += inUse.size() - size;
+        // a new list, as the array of the old one keeps its capacity
+        inUse = new ArrayList<T>(inUse.subList(0, size));
     }
 
     protected abstract void reset(T obj);
+
+    // The most objects handed out for one record
+    public int getHighWaterMark() {
+        return Math.max(highWaterMark, pointer);
+    }
+
+    // The number of objects kept for the next records
+    public int getRetained() {
+        return inUse.size();
+    }
+
+    public long getAllocated() {
+        return allocated;
+    }
+
+    public long getTrimmed() {
+        return trimmed;
+    }
 }
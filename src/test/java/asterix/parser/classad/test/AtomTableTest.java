@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import asterix.parser.classad.test.AtomTableTest;
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.Value;
+import org.apache.commons.lang3.mutable.MutableBoolean;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class AtomTableTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public AtomTableTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(AtomTableTest.class);
+    }
+
+    /**
+     * Attribute names are interned once per spelling; lookups ignore case and
+     * ads keep the spelling they were given
+     */
+    public void testAttributeAtoms() throws Exception {
+        CaseInsensitiveString atom = AtomTable.intern("JobStatus");
+        assertSame(atom, AtomTable.intern("JobStatus".toCharArray(), 9));
+        assertNotSame(atom, AtomTable.intern("jobstatus"));
+        assertEquals(atom, AtomTable.intern("jobstatus"));
+        assertEquals(atom, new CaseInsensitiveString("JOBSTATUS"));
+        assertEquals(atom.hashCode(), new CaseInsensitiveString("JOBSTATUS").hashCode());
+        assertNull(AtomTable.find("NeverUsedAnywhere_" + System.nanoTime()));
+
+        ClassAd ad = parse("[ JobStatus = 2; Running = jobstatus == 2 ]");
+        assertNotNull(ad.lookup("JOBSTATUS"));
+        assertTrue(ad.getAttrList().containsKey(atom));
+        Set<String> names = new HashSet<String>();
+        for (CaseInsensitiveString name : ad.getAttrList().keySet()) {
+            names.add(name.get());
+        }
+        assertTrue(names.contains("JobStatus"));
+        Value value = new Value();
+        MutableBoolean running = new MutableBoolean(false);
+        assertTrue(ad.evaluateAttr("running", value));
+        assertTrue(value.isBooleanValue(running));
+        assertTrue(running.booleanValue());
+        assertTrue(ad.delete("JOBSTATUS"));
+        assertNull(ad.lookup("JobStatus"));
+    }
+
+    /**
+     * Names that nothing refers to any more are dropped, and their ids are
+     * given out again, but not the ids of the names in use
+     */
+    public void testDroppedNames() throws Exception {
+        CaseInsensitiveString atom = AtomTable.intern("JobStatus");
+        List<CaseInsensitiveString> atoms = new ArrayList<CaseInsensitiveString>();
+        for (int i = 0; i < 1000; i++) {
+            atoms.add(AtomTable.intern("DroppedName" + i));
+        }
+        assertTrue(AtomTable.size() >= 1000);
+        int id = AtomTable.intern("droppedname7").getId();
+        assertEquals(atoms.get(7).getId(), id);
+        atoms.clear();
+        for (int i = 0; i < 100 && AtomTable.find("DROPPEDNAME7") != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(AtomTable.find("DroppedName7"));
+        assertSame(atom, AtomTable.intern("JobStatus"));
+        assertEquals(atom.getId(), AtomTable.intern("JOBSTATUS").getId());
+    }
+
+    /**
+     * Threads that intern and find names at the same time must agree on the
+     * ids, and must not find names that no thread interned
+     */
+    public void testConcurrentLookups() throws Exception {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        final CaseInsensitiveString[] shared = new CaseInsensitiveString[200];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = AtomTable.intern("SharedName" + i);
+        }
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        List<CaseInsensitiveString> own = new ArrayList<CaseInsensitiveString>();
+                        for (int round = 0; round < 2000; round++) {
+                            String name = "Thread" + thread + "Name" + round;
+                            assertNull(AtomTable.find(name));
+                            own.add(AtomTable.intern(name));
+                            assertSame(own.get(round), AtomTable.find(name));
+                            CaseInsensitiveString atom = shared[round % shared.length];
+                            assertEquals(atom.getId(), AtomTable.find(atom.get().toUpperCase()).getId());
+                            assertNull(AtomTable.find("NeverInterned" + round));
+                        }
+                        for (int round = 0; round < own.size(); round++) {
+                            assertEquals(own.get(round).getId(),
+                                    AtomTable.find(own.get(round).get().toLowerCase()).getId());
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
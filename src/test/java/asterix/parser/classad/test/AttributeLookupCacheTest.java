@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import asterix.parser.classad.test.AttributeLookupCacheTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.Value;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class AttributeLookupCacheTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public AttributeLookupCacheTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(AttributeLookupCacheTest.class);
+    }
+
+    /**
+     * Ads of one shape find a reference in the slot cached for it, until a
+     * name that shadows it changes the shape
+     */
+    public void testAttributeLookupCache() throws Exception {
+        ExprTree tree = new ClassAdParser().parseExpression("Memory * 2 + Cpus", true);
+        EvalState state = new EvalState();
+        Value val = new Value();
+        ClassAd[] ads = new ClassAd[3];
+        for (int i = 0; i < ads.length; i++) {
+            ads[i] = parse("[ Cpus = " + i + "; Memory = " + (i * 10) + " ]");
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < ads.length; i++) {
+                state.setScopes(ads[i]);
+                assertTrue(tree.publicEvaluate(state, val));
+                assertEquals(i * 21, val.getLongVal());
+                assertSame(ads[i], state.getCurAd());
+            }
+        }
+        ads[1].insertAttr("memory", 100);
+        state.setScopes(ads[1]);
+        assertTrue(tree.publicEvaluate(state, val));
+        assertEquals(201, val.getLongVal());
+        assertTrue(ads[1].delete("Cpus"));
+        state.setScopes(ads[1]);
+        assertTrue(tree.publicEvaluate(state, val));
+        assertTrue(val.isUndefinedValue());
+    }
+
+    /**
+     * Names found in a parent scope, and shadowed there later; special names
+     * still end the lookup
+     */
+    public void testParentScopes() throws Exception {
+        ClassAd outer = parse("[ Cpus = 4; inner = [ Memory = 8; x = Memory * 2 + Cpus ] ]");
+        ClassAd inner = (ClassAd) outer.lookup("inner");
+        for (int round = 0; round < 2; round++) {
+            assertEquals(20, evaluateLong(inner, "x"));
+        }
+        inner.insertAttr("Cpus", 1);
+        assertEquals(17, evaluateLong(inner, "x"));
+        assertTrue(inner.delete("Cpus"));
+        outer.insertAttr("Cpus", 6);
+        assertEquals(22, evaluateLong(inner, "x"));
+
+        ExprTree parent = new ClassAdParser().parseExpression("parent.Cpus", true);
+        EvalState state = new EvalState();
+        state.setScopes(inner);
+        Value val = new Value();
+        assertTrue(parent.publicEvaluate(state, val));
+        assertEquals(6, val.getLongVal());
+    }
+}
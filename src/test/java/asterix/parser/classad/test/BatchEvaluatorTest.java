@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.readResource;
+
+import asterix.parser.classad.test.BatchEvaluatorTest;
+import asterix.parser.classad.BatchEvaluator;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdBatch;
+import asterix.parser.classad.ClassAdColumn;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Value;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class BatchEvaluatorTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public BatchEvaluatorTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(BatchEvaluatorTest.class);
+    }
+
+    /**
+     * An expression evaluated over a batch must have in each row the value it
+     * has in the ad of the row, including undefined and error values
+     */
+    public void testBatchEvaluation() throws Exception {
+        ClassAdBatch batch = new ClassAdBatch();
+        for (ClassAd ad : parseAll(readResource("/jobads.txt"))) {
+            batch.add(ad);
+        }
+        // rows of every type for each attribute
+        String[] values = { "1", "-3", "2.5", "0.0", "true", "false", "\"x\"", "undefined", "error", "{ 1 }",
+                "[ y = 1 ]" };
+        for (String a : values) {
+            for (String b : values) {
+                batch.add(parse("[ a = " + a + "; b = " + b + "; c = a ]"));
+            }
+        }
+        ClassAdParser parser = new ClassAdParser();
+        BatchEvaluator evaluator = new BatchEvaluator();
+        String[] exprs = { "RequestMemory > 1000 && JobStatus == 4", "ResidentSetSize / 1024 + RemoteUserCpu * 2",
+                "ImageSize_RAW % 7 - -ExitCode", "Owner == \"xguo23\" || NiceUser", "!WantRemoteIO ? 1 : 2.0",
+                "a + b", "a - b", "a * b", "a / b", "a % b", "a < b", "a <= b", "a == b", "a != b", "a >= b",
+                "a > b", "a =?= b", "a =!= b", "a && b", "a || b", "!a", "-a", "+a", "a ? b : c", "a | b",
+                "(a)", "strcat(b, \"z\") == \"xz\"", "size(a)", "{ a, b }[1]", "1 / 0", "10K", "MY.a" };
+        for (String exprText : exprs) {
+            ExprTree tree = parser.parseExpression(exprText, true);
+            ClassAdColumn column = evaluator.evaluate(tree, batch);
+            assertEquals(batch.size(), column.size());
+            Value expected = new Value();
+            Value actual = new Value();
+            for (int i = 0; i < batch.size(); i++) {
+                if (!batch.getAd(i).evaluateExpr(new ExprTreeHolder(tree), expected)) {
+                    expected.setErrorValue();
+                }
+                column.getValue(i, actual);
+                // 0.0 / 0.0 is not the same as itself
+                assertTrue(exprText + " in " + batch.getAd(i), expected.sameAs(actual) || (expected.isRealValue()
+                        && actual.isRealValue() && Double.isNaN(expected.getDoubleVal() + actual.getDoubleVal())));
+            }
+        }
+        ClassAdColumn owners = batch.getColumn("Owner");
+        assertTrue(owners.getDictionarySize() < batch.size() / 2);
+        assertTrue(evaluator.evaluate(parser.parseExpression("JobStatus == 4", true), batch).isTrue(0));
+    }
+}
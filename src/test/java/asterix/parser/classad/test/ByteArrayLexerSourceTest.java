@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.readResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import asterix.parser.classad.test.ByteArrayLexerSourceTest;
+import asterix.parser.classad.ByteArrayLexerSource;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ByteArrayLexerSourceTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ByteArrayLexerSourceTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ByteArrayLexerSourceTest.class);
+    }
+
+    /**
+     * Ads lexed from UTF-8 bytes must be the same as ads lexed from the decoded string
+     */
+    public void testByteArrayLexerSource() throws Exception {
+        String text = readResource("/jobads.txt");
+        List<ClassAd> expected = parseAll(text);
+        ClassAdParser parser = new ClassAdParser();
+        ByteArrayLexerSource byteSource = new ByteArrayLexerSource(text.getBytes(StandardCharsets.UTF_8));
+        ClassAd fromBytes = new ClassAd();
+        for (ClassAd ad : expected) {
+            assertTrue(parser.parseClassAd(byteSource, fromBytes, false));
+            assertTrue(ad.sameAs(fromBytes));
+        }
+        assertFalse(parser.parseClassAd(byteSource, fromBytes, false));
+        assertTrue(expected.size() > 0);
+
+        text = "[ a = \"gr\u00fc\u00dfe \u20ac \ud83d\ude00\"; b = a =?= \"x\" ]";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.parseClassAd(bytes, 0, bytes.length, fromBytes, true));
+        assertTrue(ClassAdFixtures.parse(text).sameAs(fromBytes));
+    }
+}
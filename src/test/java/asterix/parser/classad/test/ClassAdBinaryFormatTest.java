@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.readResource;
+import static asterix.parser.classad.test.ClassAdFixtures.unparse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import asterix.parser.classad.test.ClassAdBinaryFormatTest;
+import asterix.parser.classad.BinaryClassAd;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdBinaryReader;
+import asterix.parser.classad.ClassAdBinaryWriter;
+import asterix.parser.classad.Value;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ClassAdBinaryFormatTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ClassAdBinaryFormatTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ClassAdBinaryFormatTest.class);
+    }
+
+    /**
+     * An ad read back from the binary format must unparse as the ad written,
+     * and an attribute evaluated in place must have the value it has in the ad
+     */
+    public void testBinaryFormat() throws Exception {
+        ClassAdBinaryWriter writer = new ClassAdBinaryWriter();
+        List<ClassAd> ads = parseAll(readResource("/jobads.txt"));
+        assertTrue(ads.size() > 0);
+        for (ClassAd ad : ads) {
+            byte[] bytes = writer.write(ad);
+            assertEquals(unparse(ad), unparse(new ClassAdBinaryReader(ByteBuffer.wrap(bytes)).readClassAd()));
+            BinaryClassAd binaryAd = new BinaryClassAd(ByteBuffer.wrap(bytes));
+            assertEquals(ad.size(), binaryAd.size());
+            for (String name : new String[] { "MemoryUsage", "Requirements", "JobStatus", "NoSuchAttribute" }) {
+                Value expected = new Value();
+                Value actual = new Value();
+                assertTrue(ad.evaluateAttr(name, expected));
+                assertTrue(binaryAd.evaluateAttr(name, actual));
+                assertTrue(name, expected.sameAs(actual));
+            }
+        }
+    }
+
+    /**
+     * Every kind of node is written, including factors, times and nested
+     * ads and lists
+     */
+    public void testExpressionNodes() throws Exception {
+        ClassAd ad = parse("[ a = 10K; b = -2.5e3; c = absTime(\"2015-09-22T10:00:00-05:00\");"
+                + " d = relTime(\"1+02:03:04\"); e = [ f = { 1, \"x\", undefined, error }; g = .a ];"
+                + " h = e.f[0] == 1 ? strcat(\"a\", 'b') : !(a < -1); i = false || true ]");
+        byte[] bytes = new ClassAdBinaryWriter().write(ad);
+        assertEquals(unparse(ad), unparse(new ClassAdBinaryReader(ByteBuffer.wrap(bytes)).readClassAd()));
+        BinaryClassAd binaryAd = new BinaryClassAd(ByteBuffer.wrap(bytes));
+        assertEquals(unparse(ad.lookup("H")), unparse(binaryAd.lookup("H")));
+        assertNull(binaryAd.lookup("z"));
+        // 'b' is a reference to b
+        Value val = new Value();
+        assertTrue(binaryAd.evaluateAttr("h", val));
+        assertEquals("a-2.500000000000000E+03", val.getStringVal());
+        assertEquals(unparse(ad), unparse(binaryAd.toClassAd()));
+    }
+
+    public void testNotBinary() throws Exception {
+        try {
+            new BinaryClassAd(ByteBuffer.wrap("[ a = 1 ]".getBytes(StandardCharsets.UTF_8)));
+            fail("text is not a binary ClassAd");
+        } catch (HyracksDataException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import asterix.parser.classad.AMutableCharArrayString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ClassAdUnParser;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.StringLexerSource;
+import asterix.parser.classad.Value;
+import org.apache.asterix.om.types.ARecordType;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+import junit.framework.Assert;
+
+/**
+ * The ads, records and files the ClassAd tests parse and compare
+ */
+public final class ClassAdFixtures {
+    private ClassAdFixtures() {
+    }
+
+    public static File resource(String name) {
+        return new File(ClassAdFixtures.class.getResource(name).getPath());
+    }
+
+    public static String readResource(String name) throws IOException {
+        return new String(Files.readAllBytes(resource(name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the ads of the text, parsed one after the other by one parser
+     */
+    public static List<ClassAd> parseAll(String text) throws IOException {
+        ClassAdParser parser = new ClassAdParser();
+        StringLexerSource source = new StringLexerSource(text);
+        List<ClassAd> ads = new ArrayList<ClassAd>();
+        ClassAd ad = new ClassAd();
+        while (parser.parseClassAd(source, ad, false)) {
+            ads.add((ClassAd) ad.copy());
+        }
+        return ads;
+    }
+
+    /**
+     * @return the ad of the text, parsed by a parser of its own
+     */
+    public static ClassAd parse(String text) throws IOException {
+        ClassAd ad = new ClassAd();
+        Assert.assertTrue(text, new ClassAdParser().parseClassAd(text, ad, true));
+        return ad;
+    }
+
+    public static void assertSameAds(List<ClassAd> expected, List<ClassAd> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertTrue("ad " + i, expected.get(i).sameAs(actual.get(i)));
+        }
+    }
+
+    /**
+     * @return the value of the attribute, which must evaluate to an integer
+     */
+    public static long evaluateLong(ClassAd ad, String name) throws HyracksDataException {
+        Value val = new Value();
+        Assert.assertTrue(name, ad.evaluateAttr(name, val));
+        Assert.assertTrue(name, val.isIntegerValue());
+        return val.getLongVal();
+    }
+
+    public static byte[] write(ClassAdParser parser, String record) throws Exception {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertTrue(parser.parse(bytes, 0, bytes.length, new DataOutputStream(out)));
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the records written for the ads of the file, by a parser
+     *         configured to transcode or not
+     */
+    public static List<byte[]> writeAll(File file, ARecordType type, boolean transcode) throws Exception {
+        ClassAdParser parser = new ClassAdParser(type);
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(ClassAdParser.KEY_TRANSCODE, String.valueOf(transcode));
+        parser.configure(config);
+        parser.initialize(new FileInputStream(file), type, true);
+        List<byte[]> records = new ArrayList<byte[]>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (parser.parse(new DataOutputStream(bytes))) {
+            records.add(bytes.toByteArray());
+            bytes.reset();
+        }
+        return records;
+    }
+
+    public static String unparse(ExprTree tree) throws HyracksDataException {
+        AMutableCharArrayString buffer = new AMutableCharArrayString();
+        new ClassAdUnParser().unparse(buffer, tree);
+        return buffer.toString();
+    }
+}
@@ -57,4 +57,22 @@ public class ClassAdFunctionalTest extends TestCase {
         }
         assertTrue(true);
     }
+
+    /**
+     * Runs the functional tests again, evaluating every expression both with
+     * the interpreter and compiled by ExprCompiler.
+     */
+    public void testCompiledEvaluation() throws Exception {
+        String[] args = { "", getClass().getResource("/functional_tests.txt").getPath() };
+        FunctionalTester.compareCompiled = true;
+        FunctionalTester.compiledComparisons = 0;
+        FunctionalTester.compiledMismatches = 0;
+        try {
+            FunctionalTester.test(args.length, args);
+        } finally {
+            FunctionalTester.compareCompiled = false;
+        }
+        assertTrue(FunctionalTester.compiledComparisons > 0);
+        assertEquals(0, FunctionalTester.compiledMismatches);
+    }
 }
@@ -18,13 +18,49 @@
  */
 package asterix.parser.classad.test;
 
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.readResource;
+import static asterix.parser.classad.test.ClassAdFixtures.resource;
+import static asterix.parser.classad.test.ClassAdFixtures.write;
+import static asterix.parser.classad.test.ClassAdFixtures.writeAll;
+
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
 
 import asterix.parser.classad.test.ClassAdParserTest;
+import asterix.parser.classad.AMutableCharArrayString;
 import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ClassAdSchemaInference;
+import asterix.parser.classad.ClassAdUnParser;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.LazyExprTree;
+import asterix.parser.classad.ParseErrorStats;
+import asterix.parser.classad.ParseErrorStats.ErrorKind;
+import asterix.parser.classad.StringLexerSource;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.object.pool.Pool;
+import asterix.parser.classad.object.pool.ValuePool;
+import org.apache.asterix.om.io.IAsterixRecord;
+import org.apache.asterix.om.types.ARecordType;
+import org.apache.asterix.om.types.BuiltinType;
+import org.apache.asterix.om.types.IAType;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -80,4 +116,369 @@ public class ClassAdParserTest extends TestCase {
         }
         assertTrue(true);
     }
+
+    /**
+     * Lazily parsed ads must be the same as eagerly parsed ads, whether an
+     * attribute is reached by lookup, evaluation or iteration
+     */
+    public void testLazyParsing() throws Exception {
+        String text = readResource("/jobads.txt");
+        ClassAdParser parser = new ClassAdParser();
+        ClassAdParser lazyParser = new ClassAdParser();
+        lazyParser.setLazy(true);
+        ClassAd eager = new ClassAd();
+        ClassAd lazy = new ClassAd();
+        StringLexerSource eagerSource = new StringLexerSource(text);
+        StringLexerSource lazySource = new StringLexerSource(text);
+        int count = 0;
+        while (parser.parseClassAd(eagerSource, eager, false)) {
+            assertTrue(lazyParser.parseClassAd(lazySource, lazy, false));
+            assertEquals(eager.size(), lazy.size());
+            ExprTree tree = lazy.lookup("ClusterId");
+            assertFalse(tree instanceof LazyExprTree);
+            assertTrue(tree.sameAs(eager.lookup("ClusterId")));
+            Value eagerValue = new Value();
+            Value lazyValue = new Value();
+            assertTrue(eager.evaluateAttr("Requirements", eagerValue));
+            assertTrue(lazy.evaluateAttr("Requirements", lazyValue));
+            assertTrue(eagerValue.sameAs(lazyValue));
+            // copies keep the unparsed values
+            assertTrue(eager.sameAs(lazy.copy()));
+            for (ExprTree value : lazy.getAttrList().values()) {
+                assertFalse(value instanceof LazyExprTree);
+            }
+            assertTrue(eager.sameAs(lazy));
+            count++;
+        }
+        assertFalse(lazyParser.parseClassAd(lazySource, lazy, false));
+        assertTrue(count > 0);
+
+        // values are delimited by the first ';' or ']' outside of brackets, strings and comments
+        assertTrue(parser.parseClassAd("[ a = [ b = \"];\" ]; c = { 1, (2) } /* ; */; d = 'x;y' + 1 // ]\n ]",
+                eager, true));
+        assertTrue(lazyParser.parseClassAd("[ a = [ b = \"];\" ]; c = { 1, (2) } /* ; */; d = 'x;y' + 1 // ]\n ]",
+                lazy, true));
+        assertEquals(3, lazy.size());
+        assertTrue(eager.sameAs(lazy));
+    }
+
+    /**
+     * The objects of the parser pools are taken again for every record; the
+     * trees built from them before must not reach into the new trees
+     */
+    public void testPoolReuse() throws Exception {
+        ClassAdParser parser = new ClassAdParser();
+        for (String text : new String[] { "[ a = (x + y) * z; b = (x + y).w ]",
+                "[ a = (p + q) * r; b = (p + q).v; c = (s - t) / u ]" }) {
+            ClassAd ad = new ClassAd();
+            parser.reset();
+            assertTrue(parser.parseClassAd(text, ad, true));
+            ClassAd expected = new ClassAd();
+            assertTrue(new ClassAdParser().parseClassAd(text, expected, true));
+            assertEquals(expected.toString(), ad.toString());
+        }
+    }
+
+    /**
+     * A tolerant parser skips malformed records, counts them by the kind of
+     * error and goes on with the next record
+     */
+    public void testTolerantParsing() throws Exception {
+        String[] records = { "[ a = 1; b = \"x\" ]", "[ a = 1 b = 2 ]", "[ a = (1 + 2; b = 3 ]", "[ a = 1; b = 2 ",
+                "[ a = 1; b = `2 ]", "[ a = 2.5; b = a + 1 ]" };
+        boolean[] good = { true, false, false, false, false, true };
+        ClassAdParser parser = new ClassAdParser();
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(ClassAdParser.KEY_TOLERANT, "true");
+        parser.configure(config);
+        DataOutputStream out = new DataOutputStream(new ByteArrayOutputStream());
+        for (int i = 0; i < records.length; i++) {
+            byte[] bytes = records[i].getBytes(StandardCharsets.UTF_8);
+            assertEquals(good[i], parser.parse(bytes, 0, bytes.length, out));
+        }
+        ParseErrorStats stats = parser.getErrorStats();
+        assertEquals(records.length, stats.getRecordCount());
+        assertEquals(4, stats.getSkippedCount());
+        assertEquals(2, stats.getSkippedCount(ErrorKind.SYNTAX));
+        assertEquals(1, stats.getSkippedCount(ErrorKind.TRUNCATED));
+        assertEquals(1, stats.getSkippedCount(ErrorKind.LEXICAL));
+        assertEquals(4, stats.getSamples().size());
+        assertEquals(1, stats.getSamples().get(0).getRecord());
+
+        parser.setTolerant(false);
+        byte[] bytes = records[1].getBytes(StandardCharsets.UTF_8);
+        try {
+            parser.parse(bytes, 0, bytes.length, out);
+            fail("a malformed record must be rejected");
+        } catch (HyracksDataException e) {
+            // expected
+        }
+
+        String oldFormat = "a = 1\nb = 2\n\nnot a line\nb = 3\n\na = 4\n";
+        parser = new ClassAdParser();
+        config.put(ClassAdParser.KEY_OLD_FORMAT, "true");
+        parser.configure(config);
+        parser.initialize(new ByteArrayInputStream(oldFormat.getBytes(StandardCharsets.UTF_8)), null, true);
+        int count = 0;
+        while (parser.parse(out)) {
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(3, parser.getErrorStats().getRecordCount());
+        assertEquals(1, parser.getErrorStats().getSkippedCount(ErrorKind.BAD_LINE));
+    }
+
+    /**
+     * A transcoding parser must write the same records as one that parses
+     * each ad first, including for expressions that refer to literals and
+     * for ads that set an attribute twice
+     */
+    public void testTranscoding() throws Exception {
+        File file = resource("/jobads.txt");
+        ClassAdParser parser = new ClassAdParser();
+        parser.configure(new HashMap<String, String>());
+        parser.initialize(new FileInputStream(file), null, true);
+        ClassAdSchemaInference inference = new ClassAdSchemaInference();
+        inference.sample(parser, Integer.MAX_VALUE);
+        // closed fields are written in the order of the type
+        ARecordType type = inference.getRecordType("JobAd");
+        List<byte[]> expected = writeAll(file, type, false);
+        List<byte[]> actual = writeAll(file, type, true);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("record " + i, Arrays.equals(expected.get(i), actual.get(i)));
+        }
+
+        // the text of b is the only open field
+        type = new ARecordType("Ad", new String[] { "a", "b", "c" },
+                new IAType[] { BuiltinType.AINT64, BuiltinType.AINT64, BuiltinType.ASTRING }, true);
+        String[] records = { "[ a = 2; b = a * 3; c = \"x\" ]", "[ b = A + 1; a = 5; c = \"x\"; a = 7 ]" };
+        ClassAdParser plain = new ClassAdParser(type);
+        plain.configure(new HashMap<String, String>());
+        ClassAdParser transcoding = new ClassAdParser(type);
+        transcoding.configure(new HashMap<String, String>());
+        transcoding.setTranscoding(true);
+        for (String record : records) {
+            byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream transcodedOut = new ByteArrayOutputStream();
+            assertTrue(plain.parse(bytes, 0, bytes.length, new DataOutputStream(plainOut)));
+            assertTrue(transcoding.parse(bytes, 0, bytes.length, new DataOutputStream(transcodedOut)));
+            assertTrue(record, Arrays.equals(plainOut.toByteArray(), transcodedOut.toByteArray()));
+        }
+    }
+
+    /**
+     * Projected out attributes are not written, but the projected ones can
+     * still refer to them, by any case of their names, in the record they
+     * were read in only
+     */
+    public void testProjection() throws Exception {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(ClassAdParser.KEY_KEEP_EXPR, "false");
+        ClassAdParser plain = new ClassAdParser();
+        plain.configure(config);
+        config.put(ClassAdParser.KEY_PROJECTION, " A , c");
+        for (boolean transcode : new boolean[] { false, true }) {
+            ClassAdParser projecting = new ClassAdParser();
+            projecting.configure(config);
+            projecting.setTranscoding(transcode);
+            assertTrue(Arrays.equals(write(plain, "[ C = 1; a = 6 ]"),
+                    write(projecting, "[ C = 1; a = B * 2; bb = \"x\"; b = 3 ]")));
+            // b was in the record before, not in this one
+            assertTrue(Arrays.equals(write(plain, "[ a = b * 2 ]"), write(projecting, "[ a = b * 2 ]")));
+            assertTrue(Arrays.equals(write(plain, "[ a = 4 ]"), write(projecting, "[ a = b * 2; B = 2 ]")));
+        }
+    }
+
+    /**
+     * Old format ads, read from a stream or from records, must be written as
+     * the ads built line by line with ClassAd.insert(String), whatever the
+     * line terminators and the text after the values
+     */
+    public void testOldFormat() throws Exception {
+        String[] ads = { "A = 1\r\nb = a + 1 \r\n  c = \"x y\"  trailing\r\nd = strcat(\"p\", \"q\") junk",
+                "e = 2.5\nF = {1, 2}\r\nG = 3", "g = undefined\r\nh = a.b" };
+        String text = "\r\n" + String.join("\r\n\r\n\n", ads);
+        ClassAdParser plain = new ClassAdParser();
+        plain.configure(new HashMap<String, String>());
+        List<byte[]> expected = new ArrayList<byte[]>();
+        for (String lines : ads) {
+            ClassAd ad = new ClassAd();
+            BufferedReader reader = new BufferedReader(new StringReader(lines));
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                assertTrue(line, ad.insert(line));
+            }
+            // the values of old format ads are literals
+            AMutableCharArrayString buffer = new AMutableCharArrayString();
+            new ClassAdUnParser().unparse(buffer, ad);
+            expected.add(write(plain, buffer.toString()));
+        }
+
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(ClassAdParser.KEY_OLD_FORMAT, "true");
+        ClassAdParser parser = new ClassAdParser();
+        parser.configure(config);
+        parser.initialize(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), null, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : expected) {
+            assertTrue(parser.parse(new DataOutputStream(out)));
+            assertTrue(Arrays.equals(record, out.toByteArray()));
+            out.reset();
+        }
+        assertFalse(parser.parse(new DataOutputStream(out)));
+
+        // a record holds all the lines of an ad
+        for (int i = 0; i < ads.length; i++) {
+            final char[] chars = (ads[i] + "\r\n").toCharArray();
+            IAsterixRecord record = new IAsterixRecord() {
+                @Override
+                public char[] getRecordCharBuffer() {
+                    return chars;
+                }
+
+                @Override
+                public int getSize() {
+                    return chars.length;
+                }
+            };
+            assertTrue(parser.parse(record, new DataOutputStream(out)));
+            assertTrue(Arrays.equals(expected.get(i), out.toByteArray()));
+            out.reset();
+        }
+    }
+
+    /**
+     * The plan of a record type is compiled once and must keep converting
+     * and rejecting values the way the type says, for every record
+     */
+    public void testRecordPlan() throws Exception {
+        ARecordType type = new ARecordType("Ad", new String[] { "a", "b" },
+                new IAType[] { BuiltinType.ADOUBLE, BuiltinType.AINT32 }, false);
+        ClassAdParser parser = new ClassAdParser(type);
+        parser.configure(new HashMap<String, String>());
+        byte[] first = write(parser, "[ a = 1; b = 2.5 ]");
+        assertTrue(Arrays.equals(first, write(parser, "[ b = 2.5; a = 1 ]")));
+        assertFalse(Arrays.equals(first, write(parser, "[ a = 1; b = 3.5 ]")));
+        for (String record : new String[] { "[ a = \"x\"; b = 1.0 ]", "[ a = 1; b = 1.0; c = 1 ]",
+                "[ a = 1; b = 1.0; c = 1 ]", "[ a = 1 ]" }) {
+            try {
+                write(parser, record);
+                fail(record + " must be rejected");
+            } catch (HyracksDataException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Parsers in different threads share the atom table and the shapes of
+     * the ads: the ads each one builds must be the ads a parser alone builds,
+     * also for names that only one of the threads uses
+     */
+    public void testConcurrentAdParsers() throws Exception {
+        final String text = readResource("/jobads.txt");
+        final List<ClassAd> expected = parseAll(text);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[4];
+        final CyclicBarrier start = new CyclicBarrier(threads.length);
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        ClassAdParser parser = new ClassAdParser();
+                        Value val = new Value();
+                        for (int round = 0; round < 3; round++) {
+                            StringLexerSource source = new StringLexerSource(text);
+                            for (ClassAd expectedAd : expected) {
+                                ClassAd ad = new ClassAd();
+                                assertTrue(parser.parseClassAd(source, ad, false));
+                                assertTrue(expectedAd.sameAs(ad));
+                                assertNull(ad.lookup("Thread" + thread + "Only"));
+                                assertTrue(ad.evaluateAttr("NoSuchAttribute", val));
+                                assertTrue(val.isUndefinedValue());
+                            }
+                            for (int j = 0; j < 100; j++) {
+                                String name = "Thread" + thread + "Round" + round + "Attr" + j;
+                                ClassAd ad = new ClassAd();
+                                assertTrue(parser.parseClassAd("[ Owner = \"t\"; " + name + " = " + j
+                                        + "; Sum = " + name.toUpperCase() + " + 1 ]", ad, true));
+                                assertEquals(j + 1, evaluateLong(ad, "sum"));
+                                assertNotNull(ad.lookup(name.toLowerCase()));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    /**
+     * Parsers in different threads must not share state: each must write
+     * what a parser alone writes. A pool must give back what an outlier
+     * record made it allocate.
+     */
+    public void testConcurrentParsers() throws Exception {
+        final File file = resource("/jobads.txt");
+        final List<byte[]> expected = writeAll(file, null, false);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < 3; round++) {
+                            List<byte[]> actual = writeAll(file, null, false);
+                            assertEquals(expected.size(), actual.size());
+                            for (int j = 0; j < expected.size(); j++) {
+                                assertTrue(Arrays.equals(expected.get(j), actual.get(j)));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        ValuePool pool = new ValuePool();
+        for (int i = 0; i < Pool.DEFAULT_MAX_RETAINED * 2; i++) {
+            pool.get();
+        }
+        pool.reset();
+        assertEquals(Pool.DEFAULT_MAX_RETAINED * 2, pool.getHighWaterMark());
+        assertEquals(Pool.DEFAULT_MAX_RETAINED, pool.getRetained());
+        for (int i = 0; i < Pool.DEFAULT_TRIM_WINDOW; i++) {
+            pool.get();
+            pool.get();
+            pool.reset();
+        }
+        assertEquals(2, pool.getRetained());
+        assertEquals(Pool.DEFAULT_MAX_RETAINED * 2 + 0L, pool.getAllocated());
+
+        ClassAdParser parser = new ClassAdParser();
+        parser.configure(new HashMap<String, String>());
+        write(parser, "[ a = 1; b = a + 1 ]");
+        assertTrue(parser.getPoolHighWaterMarks().get("ValuePool") > 0);
+    }
 }
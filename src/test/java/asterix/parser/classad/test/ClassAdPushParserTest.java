@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.assertSameAds;
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import asterix.parser.classad.test.ClassAdPushParserTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdPushParser;
+import asterix.parser.classad.ClassAdSpliterator;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ClassAdPushParserTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ClassAdPushParserTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ClassAdPushParserTest.class);
+    }
+
+    /**
+     * Ads pushed in fragments of any size must be the same as ads parsed from
+     * the whole file, whether bytes or chars are pushed
+     */
+    public void testPushParser() throws Exception {
+        byte[] bytes = Files.readAllBytes(resource("/jobads.txt").toPath());
+        char[] chars = new String(bytes, StandardCharsets.UTF_8).toCharArray();
+        List<ClassAd> expected = parseAll(new String(chars));
+        Random random = new Random(7);
+        assertSameAds(expected, feedAll(new ClassAdPushParser(false), bytes, random));
+        ClassAdPushParser pushParser = new ClassAdPushParser(false);
+        List<ClassAd> fromChars = new ArrayList<ClassAd>();
+        for (int i = 0; i < chars.length;) {
+            int n = Math.min(chars.length - i, 1 + random.nextInt(300));
+            fromChars.addAll(pushParser.feed(chars, i, n));
+            i += n;
+        }
+        fromChars.addAll(pushParser.finish());
+        assertSameAds(expected, fromChars);
+        assertEquals(0, pushParser.getBufferedSize());
+
+        File file = resource("/jobads.old");
+        List<ClassAd> fromOld = feedAll(new ClassAdPushParser(true), Files.readAllBytes(file.toPath()), random);
+        try (Stream<ClassAd> stream = ClassAdSpliterator.stream(file, true, true, 4096)) {
+            assertSameAds(stream.collect(Collectors.toList()), fromOld);
+        }
+
+        pushParser = new ClassAdPushParser(false, 64);
+        bytes = "[ a = \"a string that is a good deal longer than the limit of this parser\" ]".getBytes(StandardCharsets.UTF_8);
+        try {
+            pushParser.feed(bytes, 0, bytes.length);
+            fail("a record longer than the limit must be rejected");
+        } catch (HyracksDataException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A malformed record between two good ones must not lose the good ones
+     * nor the records after it, whether it is in one fragment or buffered
+     */
+    public void testPushParserBadRecord() throws Exception {
+        String text = "[ a = 1 ] [ b = ) ] [ c = 3 ]";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ClassAdPushParser pushParser = new ClassAdPushParser(false);
+        try {
+            pushParser.feed(bytes, 0, bytes.length);
+            fail("a malformed record must be reported");
+        } catch (ClassAdPushParser.RecordException e) {
+            assertEquals(2, e.getAds().size());
+            assertNotNull(e.getAds().get(0).lookup("a"));
+            assertNotNull(e.getAds().get(1).lookup("c"));
+        }
+        assertEquals(0, pushParser.getBufferedSize());
+        byte[] next = "[ d = 4 ]".getBytes(StandardCharsets.UTF_8);
+        assertEquals(1, pushParser.feed(next, 0, next.length).size());
+
+        // one byte at a time, the bad record is buffered
+        bytes = (text + " [ d = 4 ]").getBytes(StandardCharsets.UTF_8);
+        pushParser = new ClassAdPushParser(false);
+        List<ClassAd> ads = new ArrayList<ClassAd>();
+        int errors = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            try {
+                ads.addAll(pushParser.feed(bytes, i, 1));
+            } catch (ClassAdPushParser.RecordException e) {
+                ads.addAll(e.getAds());
+                errors++;
+            }
+        }
+        ads.addAll(pushParser.finish());
+        assertEquals(1, errors);
+        assertEquals(3, ads.size());
+        assertNotNull(ads.get(1).lookup("c"));
+        assertNotNull(ads.get(2).lookup("d"));
+
+        // in tolerant mode the record is counted instead
+        pushParser = new ClassAdPushParser(false);
+        pushParser.setTolerant(true);
+        char[] chars = text.toCharArray();
+        ads = new ArrayList<ClassAd>(pushParser.feed(chars, 0, 12));
+        ads.addAll(pushParser.feed(chars, 12, chars.length - 12));
+        ads.addAll(pushParser.finish());
+        assertEquals(2, ads.size());
+        assertEquals(3, pushParser.getErrorStats().getRecordCount());
+        assertEquals(1, pushParser.getErrorStats().getSkippedCount());
+    }
+
+    private static List<ClassAd> feedAll(ClassAdPushParser pushParser, byte[] bytes, Random random)
+            throws IOException {
+        List<ClassAd> ads = new ArrayList<ClassAd>();
+        for (int i = 0; i < bytes.length;) {
+            int n = Math.min(bytes.length - i, 1 + random.nextInt(300));
+            ads.addAll(pushParser.feed(bytes, i, n));
+            i += n;
+        }
+        ads.addAll(pushParser.finish());
+        return ads;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+import static asterix.parser.classad.test.ClassAdFixtures.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.HashMap;
+
+import asterix.parser.classad.test.ClassAdSchemaInferenceTest;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ClassAdSchemaInference;
+import org.apache.asterix.om.types.ARecordType;
+import org.apache.asterix.om.types.ATypeTag;
+import org.apache.asterix.om.types.AUnionType;
+import org.apache.asterix.om.types.AUnorderedListType;
+import org.apache.asterix.om.types.IAType;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ClassAdSchemaInferenceTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ClassAdSchemaInferenceTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ClassAdSchemaInferenceTest.class);
+    }
+
+    /**
+     * The record type inferred from a file must have the types of the values
+     * the parser writes, and the parser must write every ad of the sample
+     * with it
+     */
+    public void testSchemaInference() throws Exception {
+        File file = resource("/jobads.txt");
+        ClassAdParser parser = new ClassAdParser();
+        parser.configure(new HashMap<String, String>());
+        parser.initialize(new FileInputStream(file), null, true);
+        ClassAdSchemaInference inference = new ClassAdSchemaInference();
+        int count = inference.sample(parser, Integer.MAX_VALUE);
+        assertTrue(count > 0);
+        assertEquals(count, inference.getAdCount());
+        assertTrue(inference.getConflictingFields().isEmpty());
+        ARecordType type = inference.getRecordType("JobAd");
+        assertFalse(type.isOpen());
+        assertEquals(ATypeTag.INT64, fieldType(type, "JobStatus").getTypeTag());
+        assertEquals(ATypeTag.DOUBLE, fieldType(type, "RemoteUserCpu").getTypeTag());
+        assertEquals(ATypeTag.BOOLEAN, fieldType(type, "WantRemoteIO").getTypeTag());
+        assertEquals(ATypeTag.STRING, fieldType(type, "Owner").getTypeTag());
+
+        parser = new ClassAdParser(type);
+        parser.configure(new HashMap<String, String>());
+        parser.initialize(new FileInputStream(file), type, true);
+        DataOutputStream out = new DataOutputStream(new ByteArrayOutputStream());
+        int written = 0;
+        while (parser.parse(out)) {
+            written++;
+        }
+        assertEquals(count, written);
+    }
+
+    /**
+     * A field that is an integer in one ad and a real in another is a double;
+     * one that is missing from an ad is nullable; one with types that don't
+     * mix is left to the open part of the record
+     */
+    public void testMixedTypes() throws Exception {
+        ClassAdSchemaInference inference = new ClassAdSchemaInference();
+        inference.add(parse("[ a = 1; b = \"x\"; c = 1 ]"));
+        inference.add(parse("[ a = 2.5; c = true ]"));
+        assertEquals(2, inference.getAdCount());
+        assertEquals(1, inference.getConflictingFields().size());
+        assertEquals("c", inference.getConflictingFields().get(0));
+        ARecordType type = inference.getRecordType("Ad");
+        assertTrue(type.isOpen());
+        assertEquals(2, type.getFieldNames().length);
+        assertEquals(ATypeTag.DOUBLE, fieldType(type, "a").getTypeTag());
+        IAType b = fieldType(type, "b");
+        assertEquals(ATypeTag.UNION, b.getTypeTag());
+        assertEquals(ATypeTag.STRING, ((AUnionType) b).getUnionList().get(1).getTypeTag());
+    }
+
+    /**
+     * The fields of a nested record after a record nested in it are evaluated
+     * in their own record; list items are counted once
+     */
+    public void testNestedRecords() throws Exception {
+        ClassAdSchemaInference inference = new ClassAdSchemaInference();
+        inference.add(parse("[ o = [ n = [ e = \"s\" ]; e = x + 2; x = 1 ]; l = { 1, 2 } ]"));
+        inference.add(parse("[ o = [ n = [ e = \"t\" ]; e = x * 2; x = 3 ]; l = { 3 } ]"));
+        assertTrue(inference.getConflictingFields().isEmpty());
+        ARecordType type = inference.getRecordType("Ad");
+        ARecordType o = (ARecordType) fieldType(type, "o");
+        assertEquals(ATypeTag.INT64, fieldType(o, "e").getTypeTag());
+        assertEquals(ATypeTag.INT64, fieldType(o, "x").getTypeTag());
+        assertEquals(ATypeTag.RECORD, fieldType(o, "n").getTypeTag());
+        AUnorderedListType l = (AUnorderedListType) fieldType(type, "l");
+        assertEquals(ATypeTag.INT64, l.getItemType().getTypeTag());
+    }
+
+    private static IAType fieldType(ARecordType type, String name) {
+        String[] names = type.getFieldNames();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return type.getFieldTypes()[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import asterix.parser.classad.test.ClassAdShapeTest;
+import asterix.parser.classad.AtomTable;
+import asterix.parser.classad.CaseInsensitiveString;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdAttrMap;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ClassAdShape;
+import asterix.parser.classad.ExprTree;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ClassAdShapeTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ClassAdShapeTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ClassAdShapeTest.class);
+    }
+
+    /**
+     * Ads with the same names in the same order share a shape; names are
+     * looked up ignoring case and iterated in insertion order
+     */
+    public void testClassAdShapes() throws Exception {
+        ClassAdParser parser = new ClassAdParser();
+        ClassAd first = new ClassAd();
+        ClassAd second = new ClassAd();
+        assertTrue(parser.parseClassAd("[ Owner = \"a\"; JobStatus = 2; ImageSize = 10 ]", first, true));
+        assertTrue(parser.parseClassAd("[ Owner = \"b\"; JobStatus = 4; ImageSize = 20 ]", second, true));
+        ClassAdShape shape = shapeOf(first);
+        assertSame(shape, shapeOf(second));
+        assertEquals(1, shape.slotOf(AtomTable.intern("jobstatus")));
+        assertEquals(20, evaluateLong(second, "IMAGESIZE"));
+        List<String> names = new ArrayList<String>();
+        for (CaseInsensitiveString name : second.getAttrList().keySet()) {
+            names.add(name.get());
+        }
+        assertEquals(Arrays.asList("Owner", "JobStatus", "ImageSize"), names);
+
+        // deleting a name moves the ad to the shape of the names left
+        assertTrue(second.delete("jobstatus"));
+        assertNull(second.lookup("JobStatus"));
+        assertEquals(20, evaluateLong(second, "ImageSize"));
+        assertSame(shapeOf(parse("[ Owner = \"c\"; ImageSize = 30 ]")), shapeOf(second));
+        assertEquals(2, evaluateLong(first, "JobStatus"));
+    }
+
+    /**
+     * Large ads, and removal while iterating
+     */
+    public void testLargeAds() throws Exception {
+        ClassAd big = new ClassAd();
+        for (int i = 0; i < 40; i++) {
+            big.insertAttr("attr" + i, i);
+        }
+        Iterator<Map.Entry<CaseInsensitiveString, ExprTree>> it = big.getAttrList().entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().get().endsWith("5")) {
+                it.remove();
+            }
+        }
+        assertEquals(36, big.size());
+        assertNull(big.lookup("attr25"));
+        assertEquals(39, evaluateLong(big, "ATTR39"));
+    }
+
+    /**
+     * The values of a chained parent are still found, and a cleared ad is
+     * back to the empty shape
+     */
+    public void testChainedAds() throws Exception {
+        ClassAd parent = parse("[ Owner = \"a\"; JobStatus = 2; ImageSize = 10 ]");
+        ClassAd ad = parse("[ Owner = \"c\"; ImageSize = 30 ]");
+        ad.chainToAd(parent);
+        assertEquals(2, evaluateLong(ad, "JobStatus"));
+        ad.clear();
+        assertEquals(0, ad.getAttrList().size());
+        assertSame(ClassAdShape.EMPTY, shapeOf(ad));
+    }
+
+    /**
+     * The shapes of ads with names no other ad has are dropped with the ads
+     */
+    public void testDroppedShapes() throws Exception {
+        ClassAd ad = parse("[ Owner = \"a\"; JobStatus = 2; ImageSize = 10 ]");
+        ClassAdShape shape = shapeOf(ad);
+        int transitions = shape.transitionCount();
+        for (int i = 0; i < 10; i++) {
+            // the pooled trees of a parser refer to the last ads it parsed,
+            // so each ad is parsed by a parser of its own
+            parse("[ Owner = \"d\"; JobStatus = 1; ImageSize = 5; Odd" + i + " = 1 ]");
+        }
+        assertEquals(transitions + 10, shape.transitionCount());
+        for (int i = 0; i < 100 && shape.transitionCount() > transitions; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(transitions, shape.transitionCount());
+        ClassAdShape odd = shape.add(AtomTable.intern("Odd1"));
+        assertSame(odd, shape.add(AtomTable.intern("Odd1")));
+        assertEquals(transitions + 1, shape.transitionCount());
+    }
+
+    private static ClassAdShape shapeOf(ClassAd ad) {
+        return ((ClassAdAttrMap) ad.getAttrList()).getShape();
+    }
+}
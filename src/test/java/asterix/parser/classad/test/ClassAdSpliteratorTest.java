@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.assertSameAds;
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.readResource;
+import static asterix.parser.classad.test.ClassAdFixtures.resource;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import asterix.parser.classad.test.ClassAdSpliteratorTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdFileSplitter;
+import asterix.parser.classad.ClassAdSpliterator;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ClassAdSpliteratorTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ClassAdSpliteratorTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ClassAdSpliteratorTest.class);
+    }
+
+    /**
+     * A file parsed in parallel chunks must give the same ads as a sequential
+     * parse, in file order when the stream is ordered
+     */
+    public void testClassAdSpliterator() throws Exception {
+        File file = resource("/jobads.txt");
+        List<ClassAd> expected = parseAll(readResource("/jobads.txt"));
+        try (Stream<ClassAd> stream = ClassAdSpliterator.stream(file, false, true, 4096)) {
+            assertSameAds(expected, stream.collect(Collectors.toList()));
+        }
+        try (Stream<ClassAd> stream = ClassAdSpliterator.stream(file, false, false, 4096)) {
+            assertEquals(expected.size(), stream.count());
+        }
+    }
+
+    /**
+     * Old format ads are the ads built line by line with insert(String)
+     */
+    public void testOldFormatChunks() throws Exception {
+        File file = resource("/jobads.old");
+        List<ClassAd> expected = new ArrayList<ClassAd>();
+        ClassAd ad = null;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().length() == 0) {
+                ad = null;
+            } else {
+                if (ad == null) {
+                    ad = new ClassAd();
+                    expected.add(ad);
+                }
+                assertTrue(ad.insert(line));
+            }
+        }
+        try (Stream<ClassAd> stream = ClassAdSpliterator.stream(file, true, true, 4096)) {
+            assertSameAds(expected, stream.collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * A stray top-level ']' is skipped, and the records after it still end
+     * chunks
+     */
+    public void testMalformedSplit() throws Exception {
+        StringBuilder text = new StringBuilder("] ]\n");
+        for (int i = 0; i < 20; i++) {
+            text.append("[ a = ").append(i).append("; b = \"]\" ]\n");
+        }
+        File file = File.createTempFile("malformed", ".txt");
+        try {
+            Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+            long[] boundaries;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                boundaries = ClassAdFileSplitter.split(raf.getChannel(), false, 32);
+            }
+            assertTrue(boundaries.length > 2);
+            for (int i = 1; i < boundaries.length - 1; i++) {
+                assertEquals(']', text.charAt((int) boundaries[i] - 1));
+                assertEquals('\n', text.charAt((int) boundaries[i]));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
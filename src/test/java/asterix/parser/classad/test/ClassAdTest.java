@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import asterix.parser.classad.test.ClassAdTest;
+import asterix.parser.classad.ClassAd;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ClassAdTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ClassAdTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ClassAdTest.class);
+    }
+
+    /**
+     * An ad parses the values given to insert(String) with a parser it
+     * creates then
+     */
+    public void testInsertedValues() throws Exception {
+        ClassAd ad = new ClassAd();
+        assertTrue(ad.insert("a = 2"));
+        assertTrue(ad.insert("'quoted name' = a + 1"));
+        assertEquals(2, evaluateLong(ad, "a"));
+        assertEquals(3, evaluateLong(ad, "quoted name"));
+    }
+
+    /**
+     * The parent scope of an inserted expression is the ad itself, and a
+     * lookup in a parent scope leaves the ads as they are
+     */
+    public void testParentScopes() throws Exception {
+        ClassAd outer = parse("[ x = 5; inner = [ y = x + 1; z = y * 2 ]; w = inner.z ]");
+        assertSame(outer, outer.lookup("w").getParentScope());
+        ClassAd inner = (ClassAd) outer.lookup("inner");
+        assertSame(inner, inner.lookup("z").getParentScope());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(12, evaluateLong(outer, "w"));
+            assertEquals(12, evaluateLong(inner, "z"));
+        }
+        assertEquals(3, outer.size());
+        assertEquals(2, inner.size());
+        assertNull(inner.lookup("x"));
+        assertSame(outer, inner.getParentScope());
+    }
+}
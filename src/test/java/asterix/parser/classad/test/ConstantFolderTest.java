@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.write;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import asterix.parser.classad.test.ConstantFolderTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdFunc;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprList;
+import asterix.parser.classad.ExprTree.NodeKind;
+import asterix.parser.classad.FunctionCall;
+import asterix.parser.classad.Value;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ConstantFolderTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ConstantFolderTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ConstantFolderTest.class);
+    }
+
+    /**
+     * Constant operations and calls of pure builtins are folded to literals
+     * at parse time; references, impure functions and errors are kept
+     */
+    public void testConstantFolding() throws Exception {
+        ClassAdParser parser = foldingParser();
+        assertTrue(parser.isFoldingConstants());
+        ClassAd ad = new ClassAd();
+        assertTrue(parser.parseClassAd("[ x = 3; s = strcat(\"a\", \"b\"); p = pow(2, 10); m = 1024 * 4;"
+                + " f = toUpper(substr(\"classad\", 5)) == \"AD\"; r = x + 1 * 2; t = time() + 2 * 3;"
+                + " n = random(10); e = 1 / 0 ]", ad, true));
+        Value val = new Value();
+        assertEquals(NodeKind.LITERAL_NODE, ad.lookup("s").getKind());
+        assertTrue(ad.evaluateAttr("s", val));
+        assertEquals("ab", val.getStringVal());
+        assertEquals(NodeKind.LITERAL_NODE, ad.lookup("p").getKind());
+        assertEquals(1024, evaluateLong(ad, "p"));
+        assertEquals(NodeKind.LITERAL_NODE, ad.lookup("m").getKind());
+        assertEquals(4096, evaluateLong(ad, "m"));
+        assertEquals(NodeKind.LITERAL_NODE, ad.lookup("f").getKind());
+        assertTrue(ad.evaluateAttr("f", val));
+        assertTrue(val.getBoolVal());
+        // only the constant operand of a reference is folded
+        assertEquals(NodeKind.OP_NODE, ad.lookup("r").getKind());
+        assertEquals("x + 2", ad.lookup("r").toString());
+        assertEquals(5, evaluateLong(ad, "r"));
+        // functions that don't only depend on their arguments are kept
+        assertEquals("time() + 6", ad.lookup("t").toString());
+        assertEquals(NodeKind.FN_CALL_NODE, ad.lookup("n").getKind());
+        // errors are left to evaluation
+        assertEquals(NodeKind.OP_NODE, ad.lookup("e").getKind());
+    }
+
+    /**
+     * Folding flattens the expression: the operands of an operator keep their
+     * order, the elements of lists are folded, and functions that are not
+     * builtins are kept
+     */
+    public void testFlattenedFolding() throws Exception {
+        FunctionCall.registerFunction("foldertestcount", new ClassAdFunc() {
+            private int count;
+
+            @Override
+            public boolean call(String name, ExprList argList, EvalState state, Value val) {
+                val.setIntegerValue(++count);
+                return true;
+            }
+        });
+        ClassAd ad = new ClassAd();
+        assertTrue(foldingParser().parseClassAd("[ x = 3; d = x - 1 * 2; g = 10 > x + 0 * 1; l = { 1 + 1, 2 * 3 };"
+                + " c = foldertestcount(1 + 1); n = -(2 + 2) ]", ad, true));
+        assertEquals("x - 2", ad.lookup("d").toString());
+        assertEquals(1, evaluateLong(ad, "d"));
+        Value val = new Value();
+        assertTrue(ad.evaluateAttr("g", val));
+        assertTrue(val.getBoolVal());
+        ExprList list = (ExprList) ad.lookup("l");
+        assertEquals(NodeKind.LITERAL_NODE, list.get(0).getKind());
+        assertEquals(NodeKind.LITERAL_NODE, list.get(1).getKind());
+        assertTrue(ad.evaluateExpr("l[0] + l[1]", val));
+        assertEquals(8, val.getLongVal());
+        assertEquals(NodeKind.FN_CALL_NODE, ad.lookup("c").getKind());
+        assertEquals(1, evaluateLong(ad, "c"));
+        assertEquals(2, evaluateLong(ad, "c"));
+        assertEquals(NodeKind.LITERAL_NODE, ad.lookup("n").getKind());
+        assertEquals(-4, evaluateLong(ad, "n"));
+    }
+
+    /**
+     * The text of the expressions is kept as it was parsed; as before,
+     * literal operations keep no text
+     */
+    public void testRecordText() throws Exception {
+        String record = new String(write(foldingParser(), "[ s = strcat(\"a\", \"b\"); r = 1 + 2 ]"),
+                StandardCharsets.ISO_8859_1);
+        assertTrue(record.contains("expr=strcat(\"a\", \"b\")"));
+        assertFalse(record.contains("rExpr"));
+    }
+
+    /**
+     * Folding is off by default
+     */
+    public void testOffByDefault() throws Exception {
+        ClassAdParser parser = new ClassAdParser();
+        assertFalse(parser.isFoldingConstants());
+        ClassAd ad = new ClassAd();
+        assertTrue(parser.parseClassAd("[ m = 1024 * 4 ]", ad, true));
+        assertEquals(NodeKind.OP_NODE, ad.lookup("m").getKind());
+    }
+
+    private static ClassAdParser foldingParser() {
+        ClassAdParser parser = new ClassAdParser();
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(ClassAdParser.KEY_FOLD_CONSTANTS, "true");
+        parser.configure(config);
+        return parser;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+import static asterix.parser.classad.test.ClassAdFixtures.write;
+
+import java.nio.charset.StandardCharsets;
+
+import asterix.parser.classad.test.EvalCacheTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.Value;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class EvalCacheTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public EvalCacheTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(EvalCacheTest.class);
+    }
+
+    /**
+     * While an ad caches values, each attribute is evaluated once, cycles
+     * fail, and a change of the ad drops the values cached before
+     */
+    public void testCachedValues() throws Exception {
+        // each attribute refers twice to the one before it, so evaluating the
+        // last one without the cache would take 2^40 evaluations
+        StringBuilder text = new StringBuilder("[ a0 = 1");
+        for (int i = 1; i <= 40; i++) {
+            text.append("; a").append(i).append(" = a").append(i - 1).append(" + a").append(i - 1);
+        }
+        text.append("; x = y + 1; y = x + 1; z = x; w = W + 1; v = A2 + a2; n = [ m = a3 * 2 ] ]");
+        ClassAd ad = parse(text.toString());
+        Value val = new Value();
+        ad.startCachingValues();
+        try {
+            assertTrue(ad.evaluateAttr("a40", val));
+            assertEquals(1L << 40, val.getLongVal());
+            assertEquals(8, evaluateLong(ad, "a3"));
+            assertEquals(16, evaluateLong((ClassAd) ad.lookup("n"), "m"));
+            // a cycle fails, however it is reached
+            assertFalse(ad.evaluateAttr("z", val));
+            assertFalse(ad.evaluateAttr("x", val));
+            assertFalse(ad.evaluateAttr("y", val));
+            // names that differ in case only are the same attribute
+            assertFalse(ad.evaluateAttr("w", val));
+            assertEquals(8, evaluateLong(ad, "v"));
+        } finally {
+            ad.stopCachingValues();
+        }
+        // values cached before don't outlive a change of the ad
+        ad.insertAttr("a0", 2);
+        ad.startCachingValues();
+        try {
+            assertEquals(16, evaluateLong(ad, "a3"));
+        } finally {
+            ad.stopCachingValues();
+        }
+        assertFalse(ad.evaluateAttr("x", val));
+    }
+
+    /**
+     * Records are written with the cache
+     */
+    public void testRecords() throws Exception {
+        String record = new String(write(new ClassAdParser(), "[ a = 1; b = a + 1; c = b * b + b ]"),
+                StandardCharsets.ISO_8859_1);
+        assertTrue(record.contains("expr=b * b + b"));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import asterix.parser.classad.test.EvalStateTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.Value;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class EvalStateTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public EvalStateTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(EvalStateTest.class);
+    }
+
+    /**
+     * The scratch values of an evaluation are given back when its frame is
+     * popped and taken again by the next one
+     */
+    public void testEvaluationScratch() throws Exception {
+        ClassAd ad = parse("[ a = 2; b = a * 3; c = { 1, 6, [ d = 4 ] }; e = c[0] + c[1] - 2 ]");
+        ExprTree tree = new ClassAdParser().parseExpression("b + e * 2 > a && (c[1] == 6 ? e : b) == 5", true);
+        EvalState state = new EvalState();
+        state.setScopes(ad);
+        Value val = new Value();
+        assertTrue(tree.publicEvaluate(state, val));
+        assertTrue(val.isBooleanValue() && val.getBoolVal());
+
+        state.pushFrame();
+        Value first = state.newValue();
+        state.popFrame();
+        assertTrue(tree.publicEvaluate(state, val));
+        assertTrue(val.isBooleanValue() && val.getBoolVal());
+        state.pushFrame();
+        assertSame(first, state.newValue());
+        assertTrue(state.newValue() != first);
+        state.popFrame();
+    }
+
+    /**
+     * An ad reuses its state, also for evaluations nested in its own
+     */
+    public void testReusedState() throws Exception {
+        ClassAd ad = parse("[ a = 2; b = a * 3; c = { 1, 6, [ d = 4 ] }; e = c[0] + c[1] - 2 ]");
+        Value val = new Value();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(5, evaluateLong(ad, "e"));
+            assertTrue(ad.evaluateExpr("eval(\"e + b\")", val));
+            assertEquals(11, val.getLongVal());
+        }
+    }
+
+    /**
+     * A state has no scopes until they are set, and reset drops them instead
+     * of clearing the ads they were
+     */
+    public void testScopes() throws Exception {
+        ClassAd ad = parse("[ a = 2; x = { [ b = 3 ], [ b = 1 ] } ]");
+        EvalState state = new EvalState();
+        assertNull(state.getRootAd());
+        assertNull(state.getCurAd());
+        state.setScopes(ad);
+        assertSame(ad, state.getCurAd());
+        state.reset();
+        assertNull(state.getCurAd());
+        assertEquals(2, ad.size());
+
+        // a select over a list gives the same list every time it is evaluated
+        ExprTree tree = new ClassAdParser().parseExpression("x.b", true);
+        Value val = new Value();
+        for (int i = 0; i < 3; i++) {
+            state.setScopes(ad);
+            assertTrue(tree.publicEvaluate(state, val));
+            assertTrue(val.isListValue());
+            assertEquals(2, val.getListVal().size());
+            state.reset();
+        }
+    }
+
+    /**
+     * Evaluations left by an exception don't use up the recursion depth of
+     * the next ones
+     */
+    public void testFailedEvaluations() throws Exception {
+        ClassAd ad = parse("[ f = g; g = regexp(\"(\", \"x\"); h = k + 1; k = 4 ]");
+        Value val = new Value();
+        for (int i = 0; i < ExprTree.MAX_CLASSAD_RECURSION + 1; i++) {
+            try {
+                ad.evaluateAttr("f", val);
+                fail("the pattern is not valid");
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+        assertEquals(5, evaluateLong(ad, "h"));
+    }
+
+    /**
+     * Threads that evaluate one ad at the same time must not share the state
+     * the ad keeps for its evaluations
+     */
+    public void testConcurrentEvaluations() throws Exception {
+        final ClassAd ad = parse("[ a = 2; b = a * 3; c = { 1, 6, [ d = 4 ] }; e = c[0] + c[1] - 2;"
+                + " f = strcat(\"x\", b, e); g = size(f) + c[2].d ]");
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+        final CyclicBarrier start = new CyclicBarrier(threads.length);
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        Value val = new Value();
+                        for (int round = 0; round < 5000; round++) {
+                            assertEquals(5, evaluateLong(ad, "e"));
+                            assertTrue(ad.evaluateAttr("f", val));
+                            assertEquals("x65", val.getStringVal());
+                            assertEquals(7, evaluateLong(ad, "g"));
+                            assertTrue(ad.evaluateExpr("eval(\"e + b\")", val));
+                            assertEquals(11, val.getLongVal());
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
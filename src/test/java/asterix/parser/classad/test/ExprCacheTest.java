@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import asterix.parser.classad.test.ExprCacheTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.ExprCache;
+import org.apache.commons.lang3.mutable.MutableBoolean;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ExprCacheTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ExprCacheTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ExprCacheTest.class);
+    }
+
+    /**
+     * With expression caching on, ads with the same value for an attribute
+     * share one tree, which is still evaluated in the scope of each ad
+     */
+    public void testExpressionCache() throws Exception {
+        ClassAdParser parser = cachingParser();
+        ExprCache cache = parser.getExprCache();
+        assertNotNull(cache);
+        ClassAd big = new ClassAd();
+        ClassAd small = new ClassAd();
+        assertTrue(parser.parseClassAd("[ Requirements = Memory > 1024; Memory = 2048; Iwd = \"/tmp\" ]", big, true));
+        assertTrue(parser.parseClassAd("[ requirements = Memory > 1024; Memory = 512; Iwd = \"/tmp\" ]", small,
+                true));
+        assertSame(big.lookup("Requirements").self(), small.lookup("Requirements").self());
+        assertSame(big.lookup("Iwd").self(), small.lookup("Iwd").self());
+        assertEquals(2, cache.size());
+
+        // parsers don't share values through their caches
+        ClassAdParser other = cachingParser();
+        ClassAd third = new ClassAd();
+        assertTrue(other.parseClassAd("[ Requirements = Memory > 1024; Memory = 4096 ]", third, true));
+        assertNotSame(big.lookup("Requirements").self(), third.lookup("Requirements").self());
+        assertEquals(2, cache.size());
+        assertEquals(1, other.getExprCache().size());
+        // nor does a parser without one
+        ClassAd plain = parse("[ Requirements = Memory > 1024 ]");
+        assertNotSame(big.lookup("Requirements").self(), plain.lookup("Requirements").self());
+
+        MutableBoolean result = new MutableBoolean(false);
+        assertTrue(big.evaluateAttrBool("Requirements", result));
+        assertTrue(result.booleanValue());
+        assertTrue(small.evaluateAttrBool("Requirements", result));
+        assertFalse(result.booleanValue());
+
+        ClassAd copy = (ClassAd) big.copy();
+        assertTrue(copy.sameAs(big));
+        big.clear();
+        copy.clear();
+        assertEquals(2, cache.size());
+        assertTrue(small.delete("Iwd"));
+        assertEquals(1, cache.size());
+        small.clear();
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * The values of ads that are dropped without clear() are released once
+     * the ads are collected
+     */
+    public void testDroppedAds() throws Exception {
+        ClassAdParser parser = cachingParser();
+        ExprCache cache = parser.getExprCache();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(parser.parseClassAd("[ Requirements = Memory > " + i + " ]", new ClassAd(), true));
+        }
+        assertEquals(10, cache.size());
+        for (int i = 0; i < 100 && !cache.isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(10);
+            cache.expungeDropped();
+        }
+        assertEquals(0, cache.size());
+    }
+
+    private static ClassAdParser cachingParser() {
+        ClassAdParser parser = new ClassAdParser();
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(ClassAdParser.KEY_EXPR_CACHE, "true");
+        parser.configure(config);
+        return parser;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import asterix.parser.classad.test.ExprCompilerTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.CompiledExpr;
+import asterix.parser.classad.ExprCompiler;
+import asterix.parser.classad.ExprTree;
+import asterix.parser.classad.ExprTreeHolder;
+import asterix.parser.classad.Value;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ExprCompilerTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ExprCompilerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ExprCompilerTest.class);
+    }
+
+    /**
+     * Calls of strict builtins are compiled with their arguments; calls of the
+     * other builtins, and arguments that are not compiled, fall back to the
+     * interpreter. Either way the value is the interpreter's.
+     */
+    public void testCallFallback() throws Exception {
+        ClassAd ad = parse("[ a = \"x\"; b = 2.6; c = { 1, 2, 3 }; d = [ e = \"y\" ] ]");
+        String[] compiled = { "strcmp(a, \"x\")", "stricmp(toUpper(a), strcat(a, \"\"))", "member(b, c)",
+                "size(c) + floor(b)", "int(b) == round(b) - 1", "isUndefined(z)", "regexp(\"^x\", a)",
+                "substr(strcat(a, b), 0, 2)", "pow(b, 2) > 6" };
+        String[] fallback = { "ifThenElse(b > 2, a, \"z\")", "eval(\"b * 2\")", "unparse(b)",
+                "strcmp(d.e, \"y\")", "anyCompare(\"<\", c, 2)", "random(3) >= 0" };
+        ClassAdParser parser = new ClassAdParser();
+        for (String text : compiled) {
+            assertFalse(text, compile(ad, parser.parseExpression(text, true)).hasFallback());
+        }
+        for (String text : fallback) {
+            assertTrue(text, compile(ad, parser.parseExpression(text, true)).hasFallback());
+        }
+    }
+
+    // Compiles tree, and checks that it evaluates in ad as the interpreter does
+    private static CompiledExpr compile(ClassAd ad, ExprTree tree) throws Exception {
+        CompiledExpr expr = ExprCompiler.compile(tree);
+        for (int i = 0; i < 2; i++) {
+            Value interpreted = new Value();
+            Value value = new Value();
+            assertTrue(ad.evaluateExpr(new ExprTreeHolder(tree), interpreted));
+            assertTrue(expr.evaluate(ad, value));
+            assertTrue(interpreted + " != " + value, interpreted.sameAs(value));
+        }
+        return expr;
+    }
+}
@@ -33,6 +33,7 @@ import asterix.parser.classad.AMutableCharArrayString;
 import asterix.parser.classad.ClassAd;
 import asterix.parser.classad.ClassAdParser;
 import asterix.parser.classad.ClassAdUnParser;
+import asterix.parser.classad.ExprCompiler;
 import asterix.parser.classad.ExprList;
 import asterix.parser.classad.ExprTree;
 import asterix.parser.classad.ExprTreeHolder;
@@ -48,6 +49,11 @@ public class FunctionalTester {
     public static Map<String, Variable> variables = new HashMap<String, FunctionalTester.Variable>();
     public static boolean haveCachedLine = false;
     public static String cachedLine = "";
+    // When set, evaluate_expr also evaluates each expression compiled by
+    // ExprCompiler and counts the results that differ from the interpreter's
+    public static boolean compareCompiled = false;
+    public static int compiledComparisons = 0;
+    public static int compiledMismatches = 0;
 
     public static class Variable {
         public String name;
@@ -1087,10 +1093,35 @@ public class FunctionalTester {
         boolean success = false;;
         classad.insert("internal___", tree);
         success = classad.evaluateAttr("internal___", value);
+        if (compareCompiled) {
+            compare_compiled(classad, success, value);
+        }
         classad.remove("internal___");
         return success;
     }
 
+    public static void compare_compiled(ClassAd classad, boolean success, Value value) throws HyracksDataException {
+        ExprTree tree = classad.lookup("internal___");
+        if (tree == null) {
+            // the expression could not be inserted
+            return;
+        }
+        Value compiledValue = new Value();
+        boolean compiledSuccess = ExprCompiler.compile(tree).evaluate(classad, compiledValue);
+        compiledComparisons++;
+        boolean same = compiledSuccess == success;
+        if (same && success && !value.sameAs(compiledValue)) {
+            // NaN is not the same as itself
+            same = value.isRealValue() && compiledValue.isRealValue() && Double.isNaN(value.getDoubleVal())
+                    && Double.isNaN(compiledValue.getDoubleVal());
+        }
+        if (!same) {
+            compiledMismatches++;
+            System.out.println("# Compiled evaluation differs: " + value + " (" + success + "), compiled "
+                    + compiledValue + " (" + compiledSuccess + ")");
+        }
+    }
+
     /*********************************************************************
      * Function: shorten_line
      * Purpose:
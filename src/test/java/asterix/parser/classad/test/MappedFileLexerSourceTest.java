@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.parseAll;
+import static asterix.parser.classad.test.ClassAdFixtures.readResource;
+import static asterix.parser.classad.test.ClassAdFixtures.resource;
+
+import java.io.File;
+import java.util.List;
+
+import asterix.parser.classad.test.MappedFileLexerSourceTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.MappedFileLexerSource;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MappedFileLexerSourceTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public MappedFileLexerSourceTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(MappedFileLexerSourceTest.class);
+    }
+
+    /**
+     * Ads lexed from a mapped file must be the same as ads lexed from the
+     * decoded string, even when the window is much smaller than the file;
+     * lazy values are cut out of the window by getString
+     */
+    public void testMappedFileLexerSource() throws Exception {
+        File file = resource("/jobads.txt");
+        List<ClassAd> expected = parseAll(readResource("/jobads.txt"));
+        assertTrue(expected.size() > 0);
+        ClassAdParser lazyParser = new ClassAdParser();
+        lazyParser.setLazy(true);
+        for (ClassAdParser parser : new ClassAdParser[] { new ClassAdParser(), lazyParser }) {
+            MappedFileLexerSource fileSource = new MappedFileLexerSource(file, 4096);
+            ClassAd fromFile = new ClassAd();
+            for (ClassAd ad : expected) {
+                assertTrue(parser.parseClassAd(fileSource, fromFile, false));
+                assertTrue(ad.sameAs(fromFile));
+            }
+            assertFalse(parser.parseClassAd(fileSource, fromFile, false));
+            fileSource.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import static asterix.parser.classad.test.ClassAdFixtures.evaluateLong;
+import static asterix.parser.classad.test.ClassAdFixtures.parse;
+
+import java.util.Random;
+
+import asterix.parser.classad.test.UtilTest;
+import asterix.parser.classad.ClassAd;
+import asterix.parser.classad.Util;
+import asterix.parser.classad.Value;
+import org.apache.asterix.om.base.AMutableDouble;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class UtilTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public UtilTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(UtilTest.class);
+    }
+
+    /**
+     * Numbers parsed without a String must be bit for bit the same as the
+     * JDK's
+     */
+    public void testNumberParsing() throws Exception {
+        String[] reals = { "0.0", "-0.0", "2.179100000000000E+04", "1.5", ".5", "-.25", "1e22", "1e23", "3e37",
+                "1.7976931348623157E308", "4.9E-324", "1e-400", "1e400", "123456789012345678901234567890.5",
+                "0.1", "0.30000000000000004", "9007199254740993.0", "00012.5000", "1E0", "7.0e-10" };
+        for (String real : reals) {
+            assertEquals(real, Double.doubleToRawLongBits(Double.parseDouble(real)),
+                    Double.doubleToRawLongBits(Util.parseDouble(real.toCharArray(), real.length())));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String real;
+            switch (i % 3) {
+                case 0:
+                    real = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+                    break;
+                case 1:
+                    real = String.format("%.15E", random.nextDouble() * 1e5);
+                    break;
+                default:
+                    real = random.nextInt(100000) + "." + random.nextInt(1000) + "e" + (random.nextInt(80) - 40);
+            }
+            assertEquals(real, Double.doubleToRawLongBits(Double.parseDouble(real)),
+                    Double.doubleToRawLongBits(Util.parseDouble(real.toCharArray(), real.length())));
+        }
+        String[] integers = { "0", "-7", "017", "123456789012345678", "-9223372036854775808" };
+        for (String integer : integers) {
+            assertEquals(Long.parseLong(integer), Util.parseLong(integer.toCharArray(), integer.length()));
+        }
+    }
+
+    /**
+     * The lexer parses the literals of an ad with them
+     */
+    public void testLexedNumbers() throws Exception {
+        ClassAd ad = parse("[ a = 2.179100000000000E+04; b = -42; c = 1.5K ]");
+        Value value = new Value();
+        AMutableDouble real = new AMutableDouble(0);
+        assertTrue(ad.evaluateAttr("a", value));
+        assertTrue(value.isRealValue(real));
+        assertEquals(21791.0, real.getDoubleValue());
+        assertEquals(-42, evaluateLong(ad, "b"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package asterix.parser.classad.test;
+
+import asterix.parser.classad.test.ValueTest;
+import asterix.parser.classad.ClassAdParser;
+import asterix.parser.classad.EvalState;
+import asterix.parser.classad.ExprList;
+import asterix.parser.classad.Value;
+import asterix.parser.classad.Value.ValueType;
+import org.apache.asterix.om.base.AMutableDouble;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ValueTest extends TestCase {
+    /**
+     * Create the test case
+     *
+     * @param testName
+     *            name of the test case
+     */
+    public ValueTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ValueTest.class);
+    }
+
+    /**
+     * Numbers and booleans are kept in the one primitive slot of a value
+     */
+    public void testPrimitives() throws Exception {
+        Value val = new Value();
+        val.setIntegerValue(-42);
+        assertEquals(-42, val.getLongVal());
+        assertEquals(-42.0, val.getDoubleVal());
+        val.setRealValue(2.75);
+        assertEquals(2.75, val.getDoubleVal());
+        assertEquals(2, val.getLongVal());
+        val.setRealValue(-0.0);
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(val.getDoubleVal()));
+        val.setBooleanValue(true);
+        assertTrue(val.getBoolVal());
+        AMutableDouble real = new AMutableDouble(0);
+        assertTrue(val.isNumber(real));
+        assertEquals(1.0, real.getDoubleValue());
+    }
+
+    /**
+     * The payload of a type is kept while other types are set and copied
+     * into when a value of the type is set again; a copy doesn't share it
+     */
+    public void testPayloads() throws Exception {
+        Value val = new Value();
+        ClassAdParser parser = new ClassAdParser();
+        EvalState state = new EvalState();
+        parser.parseExpression("{ 1, 2, 3 }", true).publicEvaluate(state, val);
+        ExprList list = val.getListVal();
+        assertEquals(3, list.size());
+        val.setIntegerValue(7);
+        parser.parseExpression("{ 4, 5 }", true).publicEvaluate(state, val);
+        assertSame(list, val.getListVal());
+        assertEquals(2, val.getListVal().size());
+
+        Value copy = new Value(val);
+        assertTrue(copy.sameAs(val));
+        assertTrue(copy.getListVal() != val.getListVal());
+        val.setRealValue(1.5);
+        copy.setValue(val);
+        assertTrue(copy.sameAs(val));
+        assertSame(list, val.getListVal());
+
+        parser.parseExpression("[ x = 1; y = \"y\" ]", true).publicEvaluate(state, val);
+        assertEquals(ValueType.CLASSAD_VALUE, val.getValueType());
+        copy.copyFrom(val);
+        assertTrue(copy.getClassadVal() != val.getClassadVal());
+        assertTrue(copy.sameAs(val));
+        val.setRelativeTimeValue(90);
+        assertEquals(ValueType.RELATIVE_TIME_VALUE, val.getValueType());
+        assertEquals(90, val.getTimeVal().getRelativeTime());
+    }
+}